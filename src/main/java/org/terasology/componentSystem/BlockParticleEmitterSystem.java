@@ -32,6 +32,7 @@ import org.terasology.components.BlockParticleEffectComponent;
 import org.terasology.components.BlockParticleEffectComponent.Particle;
 import org.terasology.components.world.LocationComponent;
 import org.terasology.entitySystem.EntityManager;
+import org.terasology.entitySystem.EntityQuery;
 import org.terasology.entitySystem.EntityRef;
 import org.terasology.entitySystem.RegisterComponentSystem;
 import org.terasology.game.CoreRegistry;
@@ -54,6 +55,7 @@ public class BlockParticleEmitterSystem implements RenderSystem {
     private static final float TEX_SIZE = TeraBlock.TEXTURE_OFFSET / 4f;
 
     private EntityManager entityManager;
+    private EntityQuery particleEffectEntities;
     private WorldProvider worldProvider;
     // TODO: lose dependency on worldRenderer?
     private WorldRenderer worldRenderer;
@@ -63,6 +65,7 @@ public class BlockParticleEmitterSystem implements RenderSystem {
 
     public void initialise() {
         entityManager = CoreRegistry.get(EntityManager.class);
+        particleEffectEntities = entityManager.registerQuery(BlockParticleEffectComponent.class, LocationComponent.class);
         worldProvider = CoreRegistry.get(WorldProvider.class);
         worldRenderer = CoreRegistry.get(WorldRenderer.class);
         displayLists = new TObjectIntHashMap();
@@ -73,7 +76,7 @@ public class BlockParticleEmitterSystem implements RenderSystem {
     }
 
     public void update(float delta) {
-        for (EntityRef entity : entityManager.iteratorEntities(BlockParticleEffectComponent.class, LocationComponent.class)) {
+        for (EntityRef entity : particleEffectEntities) {
             BlockParticleEffectComponent particleEffect = entity.getComponent(BlockParticleEffectComponent.class);
             Iterator<Particle> iterator = particleEffect.particles.iterator();
             while (iterator.hasNext()) {
@@ -139,7 +142,7 @@ public class BlockParticleEmitterSystem implements RenderSystem {
 
         Vector3d cameraPosition = worldRenderer.getActiveCamera().getPosition();
 
-        for (EntityRef entity : entityManager.iteratorEntities(BlockParticleEffectComponent.class, LocationComponent.class)) {
+        for (EntityRef entity : particleEffectEntities) {
             LocationComponent location = entity.getComponent(LocationComponent.class);
             Vector3f worldPos = location.getWorldPosition();
 
@@ -16,6 +16,13 @@
 
 package org.terasology.componentSystem.controllers;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import org.lwjgl.input.Keyboard;
 import org.terasology.components.LocalPlayerComponent;
 import org.terasology.entitySystem.EntityRef;
@@ -26,9 +33,14 @@ import org.terasology.events.DamageEvent;
 import org.terasology.events.input.KeyDownEvent;
 import org.terasology.events.input.KeyEvent;
 import org.terasology.game.CoreRegistry;
+import org.terasology.game.TerasologyEngine;
 import org.terasology.logic.manager.Config;
 import org.terasology.logic.manager.GUIManager;
+import org.terasology.logic.manager.PathManager;
 import org.terasology.logic.world.WorldProvider;
+import org.terasology.performanceMonitor.PerformanceMonitor;
+import org.terasology.performanceMonitor.TraceFormat;
+import org.terasology.rendering.cameras.CameraPath;
 import org.terasology.rendering.gui.menus.UIMetrics;
 import org.terasology.rendering.world.WorldRenderer;
 
@@ -39,6 +51,8 @@ import org.terasology.rendering.world.WorldRenderer;
 @RegisterComponentSystem
 public class DebugControlSystem implements EventHandlerSystem {
 
+    private Logger logger = Logger.getLogger(getClass().getName());
+
     private UIMetrics metrics;
     private WorldProvider world;
     private WorldRenderer worldRenderer;
@@ -102,6 +116,14 @@ public class DebugControlSystem implements EventHandlerSystem {
                 case Keyboard.KEY_K:
                     entity.send(new DamageEvent(9999, null));
                     break;
+                case Keyboard.KEY_T:
+                    togglePerformanceTrace();
+                    event.consume();
+                    break;
+                case Keyboard.KEY_B:
+                    toggleCameraRecording();
+                    event.consume();
+                    break;
                 case Keyboard.KEY_H:
                     GUIManager.getInstance().getWindowById("engine:hud").setVisible(!GUIManager.getInstance().getWindowById("engine:hud").isVisible());
                     event.consume();
@@ -125,6 +147,30 @@ public class DebugControlSystem implements EventHandlerSystem {
         }
     }
 
+    private void togglePerformanceTrace() {
+        if (PerformanceMonitor.isTracing()) {
+            PerformanceMonitor.stopTrace();
+        } else {
+            CoreRegistry.get(TerasologyEngine.class).startPerformanceTrace(TraceFormat.ChromeTrace);
+        }
+    }
+
+    private void toggleCameraRecording() {
+        if (!worldRenderer.isRecordingCamera()) {
+            worldRenderer.startCameraRecording();
+            return;
+        }
+        CameraPath path = worldRenderer.stopCameraRecording();
+        SimpleDateFormat sdf = new SimpleDateFormat("yyMMddHHmmssSSS");
+        File file = new File(PathManager.getInstance().getDataPath(), "camera-" + sdf.format(new Date()) + ".path");
+        try {
+            path.save(file);
+            logger.log(Level.INFO, "Saved camera path to " + file);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to save camera path", e);
+        }
+    }
+
     private void toggleViewingDistance() {
         Config.getInstance().setViewingDistanceById((Config.getInstance().getActiveViewingDistanceId() + 1) % 4);
     }
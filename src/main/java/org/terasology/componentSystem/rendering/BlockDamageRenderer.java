@@ -5,6 +5,7 @@ import org.terasology.componentSystem.RenderSystem;
 import org.terasology.components.HealthComponent;
 import org.terasology.components.world.BlockComponent;
 import org.terasology.entitySystem.EntityManager;
+import org.terasology.entitySystem.EntityQuery;
 import org.terasology.entitySystem.EntityRef;
 import org.terasology.entitySystem.RegisterComponentSystem;
 import org.terasology.game.CoreRegistry;
@@ -30,6 +31,7 @@ import static org.lwjgl.opengl.GL11.*;
 public class BlockDamageRenderer implements RenderSystem {
 
     private EntityManager entityManager;
+    private EntityQuery damagedBlockEntities;
     private WorldProvider worldProvider;
     private Mesh overlayMesh;
     private Texture effectsTexture;
@@ -37,6 +39,7 @@ public class BlockDamageRenderer implements RenderSystem {
     @Override
     public void initialise() {
         this.entityManager = CoreRegistry.get(EntityManager.class);
+        this.damagedBlockEntities = entityManager.registerQuery(HealthComponent.class, BlockComponent.class);
         this.worldProvider = CoreRegistry.get(WorldProvider.class);
         this.effectsTexture = AssetManager.loadTexture("engine:effects");
         Vector2f texPos = new Vector2f(0.0f, 0.0f);
@@ -61,7 +64,7 @@ public class BlockDamageRenderer implements RenderSystem {
         glBlendFunc(GL_DST_COLOR, GL_ZERO);
         Vector3d cameraPosition = CoreRegistry.get(WorldRenderer.class).getActiveCamera().getPosition();
 
-        for (EntityRef entity : entityManager.iteratorEntities(HealthComponent.class, BlockComponent.class)) {
+        for (EntityRef entity : damagedBlockEntities) {
             HealthComponent health = entity.getComponent(HealthComponent.class);
             if (health.currentHealth == health.maxHealth) continue;
 
@@ -5,6 +5,7 @@ import org.terasology.components.AABBCollisionComponent;
 import org.terasology.components.rendering.MeshComponent;
 import org.terasology.components.world.LocationComponent;
 import org.terasology.entitySystem.EntityManager;
+import org.terasology.entitySystem.EntityQuery;
 import org.terasology.entitySystem.EntityRef;
 import org.terasology.entitySystem.RegisterComponentSystem;
 import org.terasology.game.CoreRegistry;
@@ -33,12 +34,14 @@ import static org.lwjgl.opengl.GL11.*;
 @RegisterComponentSystem(headedOnly = true)
 public class MeshRenderer implements RenderSystem {
     private EntityManager manager;
+    private EntityQuery meshEntities;
     private Mesh mesh;
     private WorldRenderer worldRenderer;
 
     @Override
     public void initialise() {
         manager = CoreRegistry.get(EntityManager.class);
+        meshEntities = manager.registerQuery(MeshComponent.class, AABBCollisionComponent.class, LocationComponent.class);
         worldRenderer = CoreRegistry.get(WorldRenderer.class);
 
         Tessellator tessellator = new Tessellator();
@@ -55,7 +58,7 @@ public class MeshRenderer implements RenderSystem {
     public void renderTransparent() {
 
         Vector3d cameraPosition = worldRenderer.getActiveCamera().getPosition();
-        for (EntityRef entity : manager.iteratorEntities(MeshComponent.class, AABBCollisionComponent.class, LocationComponent.class)) {
+        for (EntityRef entity : meshEntities) {
             // TODO: Probably don't need this collision component, there should be some sort of AABB built into the mesh
             MeshComponent meshComp = entity.getComponent(MeshComponent.class);
             if (meshComp.renderType == MeshComponent.RenderType.Normal) continue;
@@ -95,7 +98,7 @@ public class MeshRenderer implements RenderSystem {
     public void renderOpaque() {
         boolean carryingTorch = CoreRegistry.get(LocalPlayer.class).isCarryingTorch();
         Vector3d cameraPosition = worldRenderer.getActiveCamera().getPosition();
-        for (EntityRef entity : manager.iteratorEntities(MeshComponent.class, AABBCollisionComponent.class, LocationComponent.class)) {
+        for (EntityRef entity : meshEntities) {
             // TODO: Probably don't need this collision component, there should be some sort of AABB built into the mesh
             MeshComponent meshComp = entity.getComponent(MeshComponent.class);
             if (meshComp.renderType != MeshComponent.RenderType.Normal || meshComp.mesh == null) continue;
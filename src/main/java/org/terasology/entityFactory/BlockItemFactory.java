@@ -33,10 +33,6 @@ public class BlockItemFactory {
     }
 
     private EntityRef newInstance(BlockFamily blockFamily, int quantity, EntityRef placedEntity) {
-        EntityRef entity = entityManager.create();
-        if (blockFamily.getArchetypeBlock().getLuminance() > 0) {
-            entity.addComponent(new LightComponent());
-        }
         ItemComponent item = new ItemComponent();
         item.name = blockFamily.getTitle();
         item.consumedOnUse = true;
@@ -45,7 +41,6 @@ public class BlockItemFactory {
             item.stackCount = (byte) quantity;
         }
         item.usage = ItemComponent.UsageType.ON_BLOCK;
-        entity.addComponent(item);
 
         BlockItemComponent blockItem = new BlockItemComponent(blockFamily);
 
@@ -56,9 +51,10 @@ public class BlockItemFactory {
             blockItem.placedEntity = placedEntity;
         }
 
-        entity.addComponent(blockItem);
-
-        return entity;
+        if (blockFamily.getArchetypeBlock().getLuminance() > 0) {
+            return entityManager.create(new LightComponent(), item, blockItem);
+        }
+        return entityManager.create(item, blockItem);
     }
 
 }
@@ -0,0 +1,45 @@
+package org.terasology.entitySystem;
+
+/**
+ * A cursor over the entities that have a given component type. A cursor is positioned before the first entity, and
+ * each call to next() moves it to the next entity:
+ * <pre>
+ * ComponentCursor&lt;LocationComponent&gt; cursor = entityManager.componentCursor(LocationComponent.class);
+ * while (cursor.next()) {
+ *     LocationComponent location = cursor.getComponent();
+ *     ...
+ * }
+ * </pre>
+ * Cursors are reused by the entity manager once they have been run to the end or closed, so iterating with a cursor
+ * does not allocate. Components of the iterated type must not be added to or removed from entities while the cursor
+ * is in use; use iterateComponents if that is required.
+ */
+public interface ComponentCursor<T extends Component> {
+
+    /**
+     * Moves to the next entity
+     *
+     * @return Whether there was another entity. Once this returns false the cursor is released.
+     */
+    boolean next();
+
+    /**
+     * @return The id of the current entity
+     */
+    int getEntityId();
+
+    /**
+     * @return The current entity
+     */
+    EntityRef getEntity();
+
+    /**
+     * @return The component of the current entity
+     */
+    T getComponent();
+
+    /**
+     * Releases the cursor before reaching the end, so it can be reused.
+     */
+    void close();
+}
@@ -30,6 +30,26 @@ public interface EntityManager {
      */
     EntityRef create(Prefab prefab);
 
+    /**
+     * Creates an entity with all the given components at once. Rather than an AddComponentEvent per component, a single
+     * AddComponentEvent is sent to the new entity once all its components are in place.
+     *
+     * @param components
+     * @return A new entity with the given components
+     */
+    EntityRef create(Component... components);
+
+    /**
+     * Creates an entity from a prefab template, plus additional components, all at once. Rather than an
+     * AddComponentEvent per component, a single AddComponentEvent is sent to the new entity once all its components
+     * are in place.
+     *
+     * @param template   The template to instantiate, or null for none
+     * @param components Additional components, replacing any of the same type from the template
+     * @return A new entity based on the template
+     */
+    EntityRef create(PrefabTemplate template, Component... components);
+
     /**
      * @param componentClass
      * @return The number of entities with this component class
@@ -42,6 +62,22 @@ public interface EntityManager {
 
     <T extends Component> Iterable<Map.Entry<EntityRef, T>> iterateComponents(Class<T> componentClass);
 
+    /**
+     * @param componentClass
+     * @return A cursor over all entities with the given component class, which iterates without allocating
+     */
+    <T extends Component> ComponentCursor<T> componentCursor(Class<T> componentClass);
+
+    /**
+     * Registers a query for the entities that have all of the given components. Unlike iteratorEntities, the matching
+     * entities are maintained as components change, so this is the preferred way for systems to iterate over the same
+     * set of components every frame. Registering the same set of components again returns the same query.
+     *
+     * @param componentClasses At least one component class
+     * @return The query
+     */
+    EntityQuery registerQuery(Class<? extends Component>... componentClasses);
+
 
     /**
      * @return The event system being used by the entity manager
@@ -0,0 +1,17 @@
+package org.terasology.entitySystem;
+
+/**
+ * A registered query for the entities that have all of a set of components. The entity manager keeps the matching
+ * entities up to date as components are added and removed, so iterating a query only costs the matching entities.
+ * <p/>
+ * Iteration works on a snapshot of the matching entities taken when the iteration starts. Entities that stop matching
+ * during the iteration are skipped, and entities that start matching are not visited until the next iteration.
+ */
+public interface EntityQuery extends Iterable<EntityRef> {
+
+    /**
+     * @return The number of entities currently matching the query
+     */
+    int size();
+
+}
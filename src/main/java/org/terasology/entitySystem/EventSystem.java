@@ -41,6 +41,16 @@ public interface EventSystem {
      */
     <T extends Event> void registerEventReceiver(EventReceiver<T> eventReceiver, Class<T> eventClass, int priority, Class<? extends Component>... componentTypes);
 
+    /**
+     * Registers a receiver for events broadcast with {@link #queueBroadcast(Event)}. Broadcast receivers are not sent
+     * events for entities, and entity handlers are not sent broadcast events.
+     *
+     * @param eventReceiver
+     * @param eventClass
+     * @param <T>
+     */
+    <T extends Event> void registerBroadcastReceiver(EventReceiver<T> eventReceiver, Class<T> eventClass);
+
     /**
      * Sends an event to all handlers for an entity's components
      *
@@ -57,4 +67,48 @@ public interface EventSystem {
      * @param component
      */
     void send(EntityRef entity, Event event, Component component);
+
+    /**
+     * Queues an event to be sent to all handlers for an entity's components when queued events are next processed.
+     * May be called from any thread.
+     *
+     * @param entity
+     * @param event
+     */
+    void queue(EntityRef entity, Event event);
+
+    /**
+     * Queues an event to be sent to the handlers for a specific component of an entity when queued events are next
+     * processed. May be called from any thread.
+     *
+     * @param entity
+     * @param event
+     * @param component
+     */
+    void queue(EntityRef entity, Event event, Component component);
+
+    /**
+     * Queues an event that is not about any one entity, to be sent to the broadcast receivers of its type when queued
+     * events are next processed. Receivers are passed EntityRef.NULL as the entity. May be called from any thread.
+     *
+     * @param event
+     */
+    void queueBroadcast(Event event);
+
+    /**
+     * Sends all events queued so far, in the order they were queued. Must be called from the main thread. Events
+     * queued while processing are sent on the next call.
+     */
+    void processQueuedEvents();
+
+    /**
+     * Sets whether {@link org.terasology.entitySystem.event.ChangedComponentEvent}s are queued rather than sent
+     * immediately. Queued changes to the same component of an entity are coalesced, so handlers receive one event per
+     * processing pass however often the component was saved.
+     *
+     * @param defer
+     */
+    void setDeferComponentChanges(boolean defer);
+
+    boolean isDeferringComponentChanges();
 }
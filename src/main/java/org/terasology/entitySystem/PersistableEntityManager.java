@@ -1,6 +1,9 @@
 package org.terasology.entitySystem;
 
 import gnu.trove.list.TIntList;
+import gnu.trove.set.TIntSet;
+
+import java.util.Collection;
 
 /**
  * @author Immortius <immortius@gmail.com>
@@ -9,9 +12,58 @@ public interface PersistableEntityManager extends EntityManager {
 
     EntityRef createEntityRefWithId(int id);
 
+    /**
+     * Creates the entity with the given id from the given components, without sending any events. Used when loading
+     * entities, where the events are sent once everything is loaded.
+     *
+     * @param id
+     * @param components
+     * @return The new entity, or EntityRef.NULL if the id is not available
+     */
+    EntityRef createEntityWithId(int id, Collection<Component> components);
+
+    /**
+     * Creates the entity with the given id from the given components and serialized components, without sending any
+     * events. Entity managers may keep the serialized components as they are until each is first accessed, or
+     * deserialize them straight away.
+     *
+     * @param id
+     * @param components
+     * @param serializedComponents
+     * @return The new entity, or EntityRef.NULL if the id is not available
+     */
+    EntityRef createEntityWithId(int id, Collection<Component> components, Collection<? extends SerializedComponent> serializedComponents);
+
+    /**
+     * Gathers the components of an entity for saving, without deserializing the components that are still held in
+     * their serialized form.
+     *
+     * @param entityId
+     * @param components           Receives the entity's components
+     * @param serializedComponents Receives the entity's components that have not been deserialized yet
+     */
+    void collectComponents(int entityId, Collection<Component> components, Collection<SerializedComponent> serializedComponents);
+
     int getNextId();
 
+    /**
+     * Sets the next id to allocate. Storage is reserved for all ids below it, so handles for them can be created
+     * from other threads while loading.
+     *
+     * @param id
+     */
     void setNextId(int id);
 
     TIntList getFreedIds();
+
+    /**
+     * Returns the ids of the entities that have been destroyed, or have had components added, removed or saved,
+     * since the last call, and starts tracking changes afresh. Entities created by loading are not included.
+     * <p/>
+     * Changes are tracked without synchronization, so this and any change to an entity must be made on the main
+     * thread.
+     *
+     * @return The ids of the changed entities
+     */
+    TIntSet takeChangedEntities();
 }
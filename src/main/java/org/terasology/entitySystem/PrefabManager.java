@@ -18,4 +18,10 @@ public interface PrefabManager {
 
     public void removePrefab(String name);
 
+    /**
+     * @param prefab
+     * @return The compiled template of the prefab, reflecting its current components
+     */
+    public PrefabTemplate getTemplate(Prefab prefab);
+
 }
@@ -0,0 +1,73 @@
+package org.terasology.entitySystem;
+
+import com.google.common.collect.Lists;
+import org.terasology.entitySystem.metadata.ComponentLibrary;
+import org.terasology.entitySystem.metadata.ComponentMetadata;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A prefab compiled for instantiation: the component types of the prefab and their metadata are resolved once, so
+ * creating an entity from the template only copies the component values. Templates are obtained from
+ * {@link PrefabManager#getTemplate(Prefab)}, and instantiated with {@link EntityManager#create(PrefabTemplate, Component...)}.
+ * <p/>
+ * The last component of every template is the {@link EntityInfoComponent} naming the prefab.
+ */
+public final class PrefabTemplate {
+    private static final Logger logger = Logger.getLogger(PrefabTemplate.class.getName());
+
+    private final Prefab prefab;
+    private final Component[] components;
+    private final ComponentMetadata[] metadata;
+    private final Class<? extends Component>[] componentTypes;
+
+    public PrefabTemplate(Prefab prefab, ComponentLibrary componentLibrary) {
+        this.prefab = prefab;
+        List<Component> componentList = Lists.newArrayList();
+        List<ComponentMetadata> metadataList = Lists.newArrayList();
+        for (Component component : prefab.listComponents()) {
+            if (component instanceof EntityInfoComponent) {
+                continue;
+            }
+            ComponentMetadata componentMetadata = componentLibrary.getMetadata(component);
+            if (componentMetadata == null) {
+                logger.log(Level.WARNING, "Prefab " + prefab.getName() + " has unregistered component type " + component.getClass());
+                continue;
+            }
+            componentList.add(component);
+            metadataList.add(componentMetadata);
+        }
+        this.components = componentList.toArray(new Component[componentList.size()]);
+        this.metadata = metadataList.toArray(new ComponentMetadata[metadataList.size()]);
+        this.componentTypes = new Class[components.length + 1];
+        for (int i = 0; i < components.length; ++i) {
+            componentTypes[i] = components[i].getClass();
+        }
+        componentTypes[components.length] = EntityInfoComponent.class;
+    }
+
+    public Prefab getPrefab() {
+        return prefab;
+    }
+
+    public int getComponentCount() {
+        return componentTypes.length;
+    }
+
+    public Class<? extends Component> getComponentType(int index) {
+        return componentTypes[index];
+    }
+
+    /**
+     * @param index
+     * @return A new copy of the component at the given index, for a new entity
+     */
+    public Component createComponent(int index) {
+        if (index == components.length) {
+            return new EntityInfoComponent(prefab.getName());
+        }
+        return (Component) metadata[index].clone(components[index]);
+    }
+}
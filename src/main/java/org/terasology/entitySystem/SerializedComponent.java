@@ -0,0 +1,20 @@
+package org.terasology.entitySystem;
+
+/**
+ * A component held in its serialized form, which is only deserialized when it is first needed. Entity managers that
+ * support them hold loaded components like this until they are accessed.
+ */
+public interface SerializedComponent {
+
+    /**
+     * @return The type of the component
+     */
+    Class<? extends Component> getType();
+
+    /**
+     * Deserializes the component. Each call produces a new instance. This may be called from any thread.
+     *
+     * @return The component, never null
+     */
+    Component deserialize();
+}
@@ -0,0 +1,145 @@
+package org.terasology.entitySystem.archetype;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.terasology.entitySystem.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Storage for all entities sharing the exact same set of component types. Components are held in dense column arrays,
+ * one column per component type, with one row per entity.
+ * <p/>
+ * Removing an entity moves the last row into its place, so rows are not stable across removals.
+ */
+class Archetype {
+    public static final int NO_ROW = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Set<Class<? extends Component>> componentTypes;
+    private final TObjectIntMap<Class<? extends Component>> columnLookup = new TObjectIntHashMap<Class<? extends Component>>(8, 0.5f, NO_ROW);
+    private final Class<? extends Component>[] columnTypes;
+    private final Component[][] columns;
+    private int[] entityIds = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /* Cached transitions to the archetypes with one component type more or less */
+    private final Map<Class<? extends Component>, Archetype> addTransitions = Maps.newHashMap();
+    private final Map<Class<? extends Component>, Archetype> removeTransitions = Maps.newHashMap();
+
+    public Archetype(Set<Class<? extends Component>> componentTypes) {
+        this.componentTypes = ImmutableSet.copyOf(componentTypes);
+        this.columnTypes = this.componentTypes.toArray(new Class[this.componentTypes.size()]);
+        this.columns = new Component[columnTypes.length][INITIAL_CAPACITY];
+        for (int i = 0; i < columnTypes.length; ++i) {
+            columnLookup.put(columnTypes[i], i);
+        }
+    }
+
+    public Set<Class<? extends Component>> getComponentTypes() {
+        return componentTypes;
+    }
+
+    public boolean contains(Class<? extends Component> componentType) {
+        return columnLookup.containsKey(componentType);
+    }
+
+    public int getColumnCount() {
+        return columnTypes.length;
+    }
+
+    /**
+     * @return The column holding the given component type, or NO_ROW if this archetype does not have it
+     */
+    public int getColumn(Class<? extends Component> componentType) {
+        return columnLookup.get(componentType);
+    }
+
+    public Class<? extends Component> getColumnType(int column) {
+        return columnTypes[column];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getEntityId(int row) {
+        return entityIds[row];
+    }
+
+    public Component get(int row, int column) {
+        return columns[column][row];
+    }
+
+    public Component set(int row, int column, Component component) {
+        Component old = columns[column][row];
+        columns[column][row] = component;
+        return old;
+    }
+
+    /**
+     * Appends a row for the given entity. All the components of the row are initially null.
+     *
+     * @return The row of the entity
+     */
+    public int add(int entityId) {
+        if (size == entityIds.length) {
+            int newCapacity = size * 2;
+            entityIds = Arrays.copyOf(entityIds, newCapacity);
+            for (int i = 0; i < columns.length; ++i) {
+                columns[i] = Arrays.copyOf(columns[i], newCapacity);
+            }
+        }
+        entityIds[size] = entityId;
+        return size++;
+    }
+
+    /**
+     * Removes a row, filling the gap with the last row.
+     *
+     * @return The id of the entity that was moved into the removed row, or NO_ROW if no entity was moved
+     */
+    public int remove(int row) {
+        int last = --size;
+        int movedEntity = NO_ROW;
+        if (row != last) {
+            entityIds[row] = entityIds[last];
+            for (Component[] column : columns) {
+                column[row] = column[last];
+            }
+            movedEntity = entityIds[row];
+        }
+        for (Component[] column : columns) {
+            column[last] = null;
+        }
+        return movedEntity;
+    }
+
+    public void clear() {
+        for (Component[] column : columns) {
+            Arrays.fill(column, 0, size, null);
+        }
+        size = 0;
+    }
+
+    public Archetype getAddTransition(Class<? extends Component> componentType) {
+        return addTransitions.get(componentType);
+    }
+
+    public void setAddTransition(Class<? extends Component> componentType, Archetype archetype) {
+        addTransitions.put(componentType, archetype);
+    }
+
+    public Archetype getRemoveTransition(Class<? extends Component> componentType) {
+        return removeTransitions.get(componentType);
+    }
+
+    public void setRemoveTransition(Class<? extends Component> componentType, Archetype archetype) {
+        removeTransitions.put(componentType, archetype);
+    }
+}
@@ -0,0 +1,103 @@
+package org.terasology.entitySystem.archetype;
+
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.ComponentCursor;
+import org.terasology.entitySystem.EntityRef;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+/**
+ * Cursor walking the rows of each archetype holding a component type. Reused by the ArchetypeEntityManager for any
+ * component type.
+ */
+class ArchetypeComponentCursor<T extends Component> implements ComponentCursor<T> {
+    private final ArchetypeEntityManager entityManager;
+
+    private Class<T> componentClass;
+    private List<Archetype> archetypes;
+    private int archetypeIndex;
+    private Archetype archetype;
+    private int column;
+    private int expectedSize;
+    private int row;
+    private int entityId;
+    private T component;
+    private boolean closed;
+
+    public ArchetypeComponentCursor(ArchetypeEntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    void reset(Class<T> componentClass, List<Archetype> archetypes) {
+        this.componentClass = componentClass;
+        this.archetypes = archetypes;
+        closed = false;
+        archetypeIndex = -1;
+        archetype = null;
+        entityId = ArchetypeEntityManager.NULL_ID;
+        component = null;
+    }
+
+    @Override
+    public boolean next() {
+        if (archetypes == null) {
+            close();
+            return false;
+        }
+        if (archetype != null) {
+            if (archetype.size() != expectedSize) {
+                throw new ConcurrentModificationException("Components were added or removed during cursor iteration");
+            }
+            if (++row < expectedSize) {
+                return select();
+            }
+        }
+        while (++archetypeIndex < archetypes.size()) {
+            archetype = archetypes.get(archetypeIndex);
+            expectedSize = archetype.size();
+            if (expectedSize > 0) {
+                column = archetype.getColumn(componentClass);
+                row = 0;
+                return select();
+            }
+        }
+        close();
+        return false;
+    }
+
+    private boolean select() {
+        entityId = archetype.getEntityId(row);
+        component = componentClass.cast(archetype.get(row, column));
+        return true;
+    }
+
+    @Override
+    public int getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public EntityRef getEntity() {
+        return entityManager.createEntityRef(entityId);
+    }
+
+    @Override
+    public T getComponent() {
+        return component;
+    }
+
+    @Override
+    public void close() {
+        // next() closes the cursor once it runs out, so a later close() must not release it a second time
+        if (closed) {
+            return;
+        }
+        closed = true;
+        componentClass = null;
+        archetypes = null;
+        archetype = null;
+        component = null;
+        entityManager.releaseCursor(this);
+    }
+}
@@ -0,0 +1,630 @@
+package org.terasology.entitySystem.archetype;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import org.terasology.entitySystem.*;
+import org.terasology.entitySystem.common.NullIterator;
+import org.terasology.entitySystem.event.AddComponentEvent;
+import org.terasology.entitySystem.event.ChangedComponentEvent;
+import org.terasology.entitySystem.event.RemovedComponentEvent;
+import org.terasology.entitySystem.metadata.ComponentLibrary;
+import org.terasology.entitySystem.metadata.extension.EntityRefTypeHandler;
+import org.terasology.entitySystem.metadata.extension.PrefabTypeHandler;
+import org.terasology.entitySystem.pojo.PojoEntityManager;
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Entity manager that groups entities by archetype - the exact set of component types they have - and stores the
+ * components of each archetype in dense arrays. Iterating over the entities with a set of components only touches
+ * the archetypes that contain all of them, and walks their arrays in order.
+ * <p/>
+ * Adding or removing a component moves the entity to another archetype. Transitions between archetypes are cached,
+ * so this costs a hash lookup and a row copy.
+ * <p/>
+ * Entities without components are not held by any archetype, as with the PojoEntityManager.
+ */
+public class ArchetypeEntityManager implements EntityManager, PersistableEntityManager {
+    public static final int NULL_ID = PojoEntityManager.NULL_ID;
+
+    private static final int INITIAL_ENTITY_CAPACITY = 1024;
+
+    private static Logger logger = Logger.getLogger(ArchetypeEntityManager.class.getName());
+
+    private int nextEntityId = 1;
+    private TIntList freedIds = new TIntArrayList();
+    /* Entities changed since the last call to takeChangedEntities. Not synchronized: entities are only changed on the
+     * main thread */
+    private TIntSet changedEntities = new TIntHashSet();
+
+    /* The archetype, row, current generation and handle of each entity, indexed by entity id */
+    private Archetype[] entityArchetypes = new Archetype[INITIAL_ENTITY_CAPACITY];
+    private int[] entityRows = new int[INITIAL_ENTITY_CAPACITY];
+    private int[] generations = new int[INITIAL_ENTITY_CAPACITY];
+    private ArchetypeEntityRef[] entityRefs = new ArchetypeEntityRef[INITIAL_ENTITY_CAPACITY];
+
+    private Map<Set<Class<? extends Component>>, Archetype> archetypes = Maps.newHashMap();
+    private Map<Class<? extends Component>, List<Archetype>> archetypesByComponent = Maps.newHashMap();
+    private Map<Set<Class<? extends Component>>, ArchetypeEntityQuery> queries = Maps.newHashMap();
+    /* Kept per thread, so a cursor is never shared with another thread */
+    private final ThreadLocal<ArchetypeComponentCursor<?>> idleCursor = new ThreadLocal<ArchetypeComponentCursor<?>>();
+
+    private EventSystem eventSystem;
+    private PrefabManager prefabManager;
+    private ComponentLibrary componentLibrary;
+
+    public ArchetypeEntityManager(ComponentLibrary componentLibrary, PrefabManager prefabManager) {
+        this.componentLibrary = componentLibrary;
+        this.prefabManager = prefabManager;
+        componentLibrary.registerTypeHandler(EntityRef.class, new EntityRefTypeHandler(this));
+        componentLibrary.registerTypeHandler(Prefab.class, new PrefabTypeHandler(prefabManager));
+    }
+
+    @Override
+    public void clear() {
+        for (Archetype archetype : archetypes.values()) {
+            archetype.clear();
+        }
+        Arrays.fill(entityArchetypes, null);
+        nextEntityId = 1;
+        freedIds.clear();
+        changedEntities.clear();
+        // Move all ids to a new generation, so handles from before the clear no longer exist
+        for (int i = 0; i < generations.length; ++i) {
+            generations[i]++;
+        }
+        Arrays.fill(entityRefs, null);
+    }
+
+    @Override
+    public EntityRef create() {
+        if (!freedIds.isEmpty()) {
+            return createEntityRef(freedIds.removeAt(freedIds.size() - 1));
+        }
+        if (nextEntityId == NULL_ID) nextEntityId++;
+        return createEntityRef(nextEntityId++);
+    }
+
+    @Override
+    public EntityRef create(String prefabName) {
+        if (prefabName != null && !prefabName.isEmpty()) {
+            Prefab prefab = prefabManager.getPrefab(prefabName);
+            if (prefab == null) {
+                logger.log(Level.WARNING, "Unable to instantiate unknown prefab: \"" + prefabName + "\"");
+                return EntityRef.NULL;
+            }
+            return create(prefab);
+        }
+        return create();
+    }
+
+    @Override
+    public EntityRef create(Prefab prefab) {
+        if (prefab != null) {
+            return create(prefabManager.getTemplate(prefab));
+        }
+        return create();
+    }
+
+    @Override
+    public EntityRef create(Component... components) {
+        return create(null, components);
+    }
+
+    @Override
+    public EntityRef create(PrefabTemplate template, Component... components) {
+        EntityRef result = create();
+        int entityId = result.getId();
+
+        // Find the final archetype through the cached transitions, so the entity is only placed once
+        Archetype archetype = null;
+        if (template != null) {
+            for (int i = 0; i < template.getComponentCount(); ++i) {
+                archetype = getAddTransition(archetype, template.getComponentType(i));
+            }
+        }
+        for (Component component : components) {
+            if (archetype == null || !archetype.contains(component.getClass())) {
+                archetype = getAddTransition(archetype, component.getClass());
+            }
+        }
+        if (archetype == null) {
+            return result;
+        }
+
+        int row = moveEntity(entityId, null, archetype);
+        if (template != null) {
+            for (int i = 0; i < template.getComponentCount(); ++i) {
+                archetype.set(row, archetype.getColumn(template.getComponentType(i)), template.createComponent(i));
+            }
+        }
+        for (Component component : components) {
+            archetype.set(row, archetype.getColumn(component.getClass()), component);
+        }
+        changedEntities.add(entityId);
+        if (eventSystem != null) {
+            eventSystem.send(result, AddComponentEvent.newInstance());
+        }
+        return result;
+    }
+
+    @Override
+    public int getComponentCount(Class<? extends Component> componentClass) {
+        int count = 0;
+        List<Archetype> list = archetypesByComponent.get(componentClass);
+        if (list != null) {
+            for (Archetype archetype : list) {
+                count += archetype.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public ComponentLibrary getComponentLibrary() {
+        return componentLibrary;
+    }
+
+    @Override
+    public EventSystem getEventSystem() {
+        return eventSystem;
+    }
+
+    @Override
+    public void setEventSystem(EventSystem eventSystem) {
+        this.eventSystem = eventSystem;
+    }
+
+    @Override
+    public PrefabManager getPrefabManager() {
+        return prefabManager;
+    }
+
+    @Override
+    public <T extends Component> Iterable<Map.Entry<EntityRef, T>> iterateComponents(Class<T> componentClass) {
+        List<Archetype> list = archetypesByComponent.get(componentClass);
+        if (list == null) {
+            return NullIterator.newInstance();
+        }
+        List<Map.Entry<EntityRef, T>> result = new ArrayList<Map.Entry<EntityRef, T>>(getComponentCount(componentClass));
+        for (Archetype archetype : list) {
+            int column = archetype.getColumn(componentClass);
+            for (int row = 0; row < archetype.size(); ++row) {
+                result.add(new EntityEntry<T>(createEntityRef(archetype.getEntityId(row)), componentClass.cast(archetype.get(row, column))));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public <T extends Component> ComponentCursor<T> componentCursor(Class<T> componentClass) {
+        ArchetypeComponentCursor<T> cursor = takeIdleCursor();
+        if (cursor == null) {
+            cursor = new ArchetypeComponentCursor<T>(this);
+        }
+        cursor.reset(componentClass, archetypesByComponent.get(componentClass));
+        return cursor;
+    }
+
+    /**
+     * A closed cursor holds nothing of the component type it was used for, and is given its new type when reset, so
+     * it can be reused for any type.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Component> ArchetypeComponentCursor<T> takeIdleCursor() {
+        ArchetypeComponentCursor<T> cursor = (ArchetypeComponentCursor<T>) idleCursor.get();
+        idleCursor.set(null);
+        return cursor;
+    }
+
+    void releaseCursor(ArchetypeComponentCursor<?> cursor) {
+        idleCursor.set(cursor);
+    }
+
+    @Override
+    public EntityQuery registerQuery(Class<? extends Component>... componentClasses) {
+        if (componentClasses.length == 0) {
+            throw new IllegalArgumentException("Queries require at least one component class");
+        }
+        Set<Class<? extends Component>> key = Sets.newHashSet(componentClasses);
+        ArchetypeEntityQuery query = queries.get(key);
+        if (query == null) {
+            query = new ArchetypeEntityQuery(this, componentClasses);
+            for (Archetype archetype : archetypes.values()) {
+                if (query.isMatch(archetype)) {
+                    query.addArchetype(archetype);
+                }
+            }
+            queries.put(key, query);
+        }
+        return query;
+    }
+
+    public Iterable<EntityRef> iteratorEntities() {
+        TIntList idList = new TIntArrayList();
+        for (Archetype archetype : archetypes.values()) {
+            addEntityIds(archetype, idList);
+        }
+        return new EntityIterable(idList);
+    }
+
+    public Iterable<EntityRef> iteratorEntities(Class<? extends Component>... componentClasses) {
+        if (componentClasses.length == 0) {
+            return iteratorEntities();
+        }
+        List<Archetype> primeList = archetypesByComponent.get(componentClasses[0]);
+        if (primeList == null) {
+            return NullIterator.newInstance();
+        }
+
+        TIntList idList = new TIntArrayList();
+        for (Archetype archetype : primeList) {
+            boolean discard = false;
+            for (int i = 1; i < componentClasses.length; ++i) {
+                if (!archetype.contains(componentClasses[i])) {
+                    discard = true;
+                    break;
+                }
+            }
+            if (!discard) {
+                addEntityIds(archetype, idList);
+            }
+        }
+        return new EntityIterable(idList);
+    }
+
+    private void addEntityIds(Archetype archetype, TIntList idList) {
+        for (int row = 0; row < archetype.size(); ++row) {
+            idList.add(archetype.getEntityId(row));
+        }
+    }
+
+    boolean hasComponent(int entityId, Class<? extends Component> componentClass) {
+        Archetype archetype = getArchetype(entityId);
+        return archetype != null && archetype.contains(componentClass);
+    }
+
+    Iterable<Component> iterateComponents(int entityId) {
+        Archetype archetype = getArchetype(entityId);
+        if (archetype == null) {
+            return NullIterator.newInstance();
+        }
+        int row = entityRows[entityId];
+        List<Component> components = Lists.newArrayListWithCapacity(archetype.getColumnCount());
+        for (int column = 0; column < archetype.getColumnCount(); ++column) {
+            components.add(archetype.get(row, column));
+        }
+        return components;
+    }
+
+    void destroy(int entityId) {
+        EntityRef ref = createEntityRef(entityId);
+        if (eventSystem != null) {
+            eventSystem.send(ref, RemovedComponentEvent.newInstance());
+        }
+        freedIds.add(entityId);
+        changedEntities.add(entityId);
+        if (entityId < generations.length) {
+            generations[entityId]++;
+            entityRefs[entityId] = null;
+        }
+        Archetype archetype = getArchetype(entityId);
+        if (archetype != null) {
+            removeRow(archetype, entityRows[entityId]);
+            entityArchetypes[entityId] = null;
+        }
+    }
+
+    <T extends Component> T getComponent(int entityId, Class<T> componentClass) {
+        Archetype archetype = getArchetype(entityId);
+        if (archetype != null) {
+            int column = archetype.getColumn(componentClass);
+            if (column != Archetype.NO_ROW) {
+                return componentClass.cast(archetype.get(entityRows[entityId], column));
+            }
+        }
+        return null;
+    }
+
+    <T extends Component> T addComponent(int entityId, T component) {
+        Class<? extends Component> componentClass = component.getClass();
+        Archetype archetype = getArchetype(entityId);
+        Component oldComponent = null;
+        if (archetype != null && archetype.contains(componentClass)) {
+            oldComponent = archetype.set(entityRows[entityId], archetype.getColumn(componentClass), component);
+        } else {
+            Archetype target = getAddTransition(archetype, componentClass);
+            int row = moveEntity(entityId, archetype, target);
+            target.set(row, target.getColumn(componentClass), component);
+        }
+        changedEntities.add(entityId);
+        if (eventSystem != null) {
+            if (oldComponent == null) {
+                eventSystem.send(createEntityRef(entityId), AddComponentEvent.newInstance(), component);
+            } else {
+                eventSystem.send(createEntityRef(entityId), ChangedComponentEvent.newInstance(), component);
+            }
+        }
+        return component;
+    }
+
+    void removeComponent(int entityId, Class<? extends Component> componentClass) {
+        Component component = getComponent(entityId, componentClass);
+        if (component != null) {
+            if (eventSystem != null) {
+                eventSystem.send(createEntityRef(entityId), RemovedComponentEvent.newInstance(), component);
+            }
+            // The event handlers may have changed the entity
+            Archetype archetype = getArchetype(entityId);
+            if (archetype != null && archetype.contains(componentClass)) {
+                moveEntity(entityId, archetype, getRemoveTransition(archetype, componentClass));
+                changedEntities.add(entityId);
+            }
+        }
+    }
+
+    void saveComponent(int entityId, Component component) {
+        changedEntities.add(entityId);
+        if (eventSystem != null) {
+            eventSystem.send(createEntityRef(entityId), ChangedComponentEvent.newInstance(), component);
+        }
+    }
+
+    Archetype getArchetype(int entityId) {
+        return (entityId > NULL_ID && entityId < entityArchetypes.length) ? entityArchetypes[entityId] : null;
+    }
+
+    /**
+     * Moves an entity between archetypes, carrying over the components they share.
+     *
+     * @param from The current archetype of the entity, or null if it has no components
+     * @param to   The new archetype of the entity, or null if it will have no components
+     * @return The row of the entity in its new archetype
+     */
+    private int moveEntity(int entityId, Archetype from, Archetype to) {
+        int newRow = Archetype.NO_ROW;
+        if (to != null) {
+            newRow = to.add(entityId);
+        }
+        if (from != null) {
+            int oldRow = entityRows[entityId];
+            if (to != null) {
+                for (int column = 0; column < from.getColumnCount(); ++column) {
+                    int newColumn = to.getColumn(from.getColumnType(column));
+                    if (newColumn != Archetype.NO_ROW) {
+                        to.set(newRow, newColumn, from.get(oldRow, column));
+                    }
+                }
+            }
+            removeRow(from, oldRow);
+        }
+        ensureEntityCapacity(entityId);
+        entityArchetypes[entityId] = to;
+        entityRows[entityId] = newRow;
+        return newRow;
+    }
+
+    private void removeRow(Archetype archetype, int row) {
+        int movedEntity = archetype.remove(row);
+        if (movedEntity != Archetype.NO_ROW) {
+            entityRows[movedEntity] = row;
+        }
+    }
+
+    private synchronized void ensureEntityCapacity(int entityId) {
+        if (entityId >= entityArchetypes.length) {
+            int newCapacity = Math.max(entityId + 1, entityArchetypes.length * 2);
+            entityArchetypes = Arrays.copyOf(entityArchetypes, newCapacity);
+            entityRows = Arrays.copyOf(entityRows, newCapacity);
+            generations = Arrays.copyOf(generations, newCapacity);
+            entityRefs = Arrays.copyOf(entityRefs, newCapacity);
+        }
+    }
+
+    private Archetype getAddTransition(Archetype archetype, Class<? extends Component> componentClass) {
+        if (archetype == null) {
+            return getOrCreateArchetype(Collections.<Class<? extends Component>>singleton(componentClass));
+        }
+        Archetype result = archetype.getAddTransition(componentClass);
+        if (result == null) {
+            Set<Class<? extends Component>> componentTypes = Sets.newHashSet(archetype.getComponentTypes());
+            componentTypes.add(componentClass);
+            result = getOrCreateArchetype(componentTypes);
+            archetype.setAddTransition(componentClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The archetype without the given component type, or null if that would leave no components
+     */
+    private Archetype getRemoveTransition(Archetype archetype, Class<? extends Component> componentClass) {
+        if (archetype.getColumnCount() == 1) {
+            return null;
+        }
+        Archetype result = archetype.getRemoveTransition(componentClass);
+        if (result == null) {
+            Set<Class<? extends Component>> componentTypes = Sets.newHashSet(archetype.getComponentTypes());
+            componentTypes.remove(componentClass);
+            result = getOrCreateArchetype(componentTypes);
+            archetype.setRemoveTransition(componentClass, result);
+        }
+        return result;
+    }
+
+    private Archetype getOrCreateArchetype(Set<Class<? extends Component>> componentTypes) {
+        Archetype archetype = archetypes.get(componentTypes);
+        if (archetype == null) {
+            archetype = new Archetype(componentTypes);
+            archetypes.put(archetype.getComponentTypes(), archetype);
+            for (Class<? extends Component> componentType : archetype.getComponentTypes()) {
+                List<Archetype> list = archetypesByComponent.get(componentType);
+                if (list == null) {
+                    list = Lists.newArrayList();
+                    archetypesByComponent.put(componentType, list);
+                }
+                list.add(archetype);
+            }
+            for (ArchetypeEntityQuery query : queries.values()) {
+                if (query.isMatch(archetype)) {
+                    query.addArchetype(archetype);
+                }
+            }
+        }
+        return archetype;
+    }
+
+    public EntityRef createEntityRefWithId(int id) {
+        if (!freedIds.contains(id)) {
+            return createEntityRef(id);
+        }
+        return EntityRef.NULL;
+    }
+
+    @Override
+    public EntityRef createEntityWithId(int id, Collection<Component> components) {
+        EntityRef result = createEntityRefWithId(id);
+        if (!result.exists()) {
+            return EntityRef.NULL;
+        }
+        Archetype archetype = null;
+        for (Component component : components) {
+            if (archetype == null || !archetype.contains(component.getClass())) {
+                archetype = getAddTransition(archetype, component.getClass());
+            }
+        }
+        if (archetype != null) {
+            int row = moveEntity(id, null, archetype);
+            for (Component component : components) {
+                archetype.set(row, archetype.getColumn(component.getClass()), component);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Serialized components are deserialized straight away, as archetypes store every component in their columns.
+     */
+    @Override
+    public EntityRef createEntityWithId(int id, Collection<Component> components, Collection<? extends SerializedComponent> serializedComponents) {
+        if (serializedComponents.isEmpty()) {
+            return createEntityWithId(id, components);
+        }
+        List<Component> allComponents = Lists.newArrayList(components);
+        for (SerializedComponent serializedComponent : serializedComponents) {
+            allComponents.add(serializedComponent.deserialize());
+        }
+        return createEntityWithId(id, allComponents);
+    }
+
+    @Override
+    public void collectComponents(int entityId, Collection<Component> components, Collection<SerializedComponent> serializedComponents) {
+        for (Component component : iterateComponents(entityId)) {
+            components.add(component);
+        }
+    }
+
+    // Synchronized as handles are created by component deserialization on the loading threads
+    synchronized EntityRef createEntityRef(int entityId) {
+        if (entityId == NULL_ID) {
+            return EntityRef.NULL;
+        }
+        ensureEntityCapacity(entityId);
+        ArchetypeEntityRef ref = entityRefs[entityId];
+        if (ref == null) {
+            ref = new ArchetypeEntityRef(this, entityId, generations[entityId]);
+            entityRefs[entityId] = ref;
+        }
+        return ref;
+    }
+
+    /**
+     * @return Whether the given generation is the current generation of the id
+     */
+    boolean isCurrent(int entityId, int generation) {
+        return entityId > NULL_ID && entityId < generations.length && generations[entityId] == generation;
+    }
+
+    public int getNextId() {
+        return nextEntityId;
+    }
+
+    public void setNextId(int id) {
+        nextEntityId = id;
+        ensureEntityCapacity(id - 1);
+    }
+
+    public TIntList getFreedIds() {
+        return freedIds;
+    }
+
+    @Override
+    public TIntSet takeChangedEntities() {
+        TIntSet result = changedEntities;
+        changedEntities = new TIntHashSet();
+        return result;
+    }
+
+    private static class EntityEntry<T> implements Map.Entry<EntityRef, T> {
+        private EntityRef key;
+        private T value;
+
+        public EntityEntry(EntityRef ref, T value) {
+            this.key = ref;
+            this.value = value;
+        }
+
+        public EntityRef getKey() {
+            return key;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public T setValue(T value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class EntityIterable implements Iterable<EntityRef> {
+        private TIntList list;
+
+        public EntityIterable(TIntList list) {
+            this.list = list;
+        }
+
+        public Iterator<EntityRef> iterator() {
+            return new EntityIterator(list.iterator());
+        }
+    }
+
+    private class EntityIterator implements Iterator<EntityRef> {
+        private TIntIterator idIterator;
+
+        public EntityIterator(TIntIterator idIterator) {
+            this.idIterator = idIterator;
+        }
+
+        public boolean hasNext() {
+            return idIterator.hasNext();
+        }
+
+        public EntityRef next() {
+            return createEntityRef(idIterator.next());
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
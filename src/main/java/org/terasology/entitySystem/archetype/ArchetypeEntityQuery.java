@@ -0,0 +1,71 @@
+package org.terasology.entitySystem.archetype;
+
+import com.google.common.collect.Lists;
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.common.SnapshotEntityQuery;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An entity query holding the archetypes that contain all of its components. The ArchetypeEntityManager adds new
+ * archetypes as they are created, so iterating only visits the rows of matching archetypes.
+ */
+class ArchetypeEntityQuery extends SnapshotEntityQuery {
+    private final ArchetypeEntityManager entityManager;
+    private final Class<? extends Component>[] componentClasses;
+    private final List<Archetype> archetypes = Lists.newArrayList();
+
+    public ArchetypeEntityQuery(ArchetypeEntityManager entityManager, Class<? extends Component>... componentClasses) {
+        this.entityManager = entityManager;
+        this.componentClasses = Arrays.copyOf(componentClasses, componentClasses.length);
+    }
+
+    public boolean isMatch(Archetype archetype) {
+        if (archetype == null) {
+            return false;
+        }
+        for (Class<? extends Component> componentClass : componentClasses) {
+            if (!archetype.contains(componentClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void addArchetype(Archetype archetype) {
+        archetypes.add(archetype);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < archetypes.size(); ++i) {
+            size += archetypes.get(i).size();
+        }
+        return size;
+    }
+
+    @Override
+    protected int copyIds(int[] buffer) {
+        int count = 0;
+        for (int i = 0; i < archetypes.size(); ++i) {
+            Archetype archetype = archetypes.get(i);
+            for (int row = 0; row < archetype.size(); ++row) {
+                buffer[count++] = archetype.getEntityId(row);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    protected boolean matches(int entityId) {
+        return isMatch(entityManager.getArchetype(entityId));
+    }
+
+    @Override
+    protected EntityRef getEntity(int entityId) {
+        return entityManager.createEntityRef(entityId);
+    }
+}
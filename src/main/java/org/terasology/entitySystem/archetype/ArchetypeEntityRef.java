@@ -0,0 +1,116 @@
+package org.terasology.entitySystem.archetype;
+
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.Event;
+import org.terasology.entitySystem.common.NullIterator;
+
+/**
+ * A handle to an entity, made of its id and the generation of that id when the handle was created. Destroying an
+ * entity moves its id to the next generation, so handles to the destroyed entity stop existing even once the id has
+ * been reused.
+ */
+public class ArchetypeEntityRef extends EntityRef {
+    private final int id;
+    private final int generation;
+    private final ArchetypeEntityManager entityManager;
+
+    ArchetypeEntityRef(ArchetypeEntityManager manager, int id, int generation) {
+        this.id = id;
+        this.generation = generation;
+        this.entityManager = manager;
+    }
+
+    @Override
+    public int getId() {
+        return exists() ? id : ArchetypeEntityManager.NULL_ID;
+    }
+
+    @Override
+    public boolean exists() {
+        return entityManager.isCurrent(id, generation);
+    }
+
+    @Override
+    public <T extends Component> T getComponent(Class<T> componentClass) {
+        if (!exists()) {
+            return null;
+        }
+        return entityManager.getComponent(id, componentClass);
+    }
+
+    @Override
+    public <T extends Component> T addComponent(T component) {
+        if (!exists()) {
+            return component;
+        }
+        return entityManager.addComponent(id, component);
+    }
+
+    @Override
+    public void removeComponent(Class<? extends Component> componentClass) {
+        if (exists()) {
+            entityManager.removeComponent(id, componentClass);
+        }
+    }
+
+    @Override
+    public void saveComponent(Component component) {
+        if (exists()) {
+            entityManager.saveComponent(id, component);
+        }
+    }
+
+    @Override
+    public Iterable<Component> iterateComponents() {
+        if (!exists()) {
+            return NullIterator.newInstance();
+        }
+        return entityManager.iterateComponents(id);
+    }
+
+    @Override
+    public void destroy() {
+        if (exists()) {
+            entityManager.destroy(id);
+        }
+    }
+
+    @Override
+    public void send(Event event) {
+        if (exists()) {
+            entityManager.getEventSystem().send(this, event);
+        }
+    }
+
+    @Override
+    public boolean hasComponent(Class<? extends Component> component) {
+        return exists() && entityManager.hasComponent(id, component);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof EntityRef) {
+            if (!exists() && !((EntityRef) o).exists()) return true;
+        }
+        if (o instanceof ArchetypeEntityRef) {
+            ArchetypeEntityRef other = (ArchetypeEntityRef) o;
+            return id == other.id && generation == other.generation;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return !exists() ? 0 : id;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityRef{" +
+                "id=" + getId() +
+                ", generation=" + generation +
+                '}';
+    }
+}
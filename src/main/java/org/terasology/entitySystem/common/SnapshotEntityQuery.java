@@ -0,0 +1,95 @@
+package org.terasology.entitySystem.common;
+
+import org.terasology.entitySystem.EntityQuery;
+import org.terasology.entitySystem.EntityRef;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Base for entity queries that iterate over a snapshot of the ids of the matching entities. Iterators and their id
+ * buffers are reused once an iteration has completed, so iterating does not allocate once the buffers have grown to
+ * fit. The idle iterator is kept per thread, so a query iterated from another thread never shares it with the main thread.
+ */
+public abstract class SnapshotEntityQuery implements EntityQuery {
+    private final ThreadLocal<SnapshotIterator> idleIterator = new ThreadLocal<SnapshotIterator>();
+
+    /**
+     * Copies the ids of the matching entities into the given buffer, which has room for at least size() ids.
+     *
+     * @return The number of ids copied
+     */
+    protected abstract int copyIds(int[] buffer);
+
+    /**
+     * @return Whether the entity with the given id currently matches the query
+     */
+    protected abstract boolean matches(int entityId);
+
+    protected abstract EntityRef getEntity(int entityId);
+
+    public Iterator<EntityRef> iterator() {
+        SnapshotIterator result = idleIterator.get();
+        if (result != null) {
+            idleIterator.set(null);
+        } else {
+            result = new SnapshotIterator();
+        }
+        result.reset();
+        return result;
+    }
+
+    private class SnapshotIterator implements Iterator<EntityRef> {
+        private int[] ids = new int[16];
+        private int count;
+        private int index;
+        private int nextId;
+        private boolean hasNext;
+        /* Whether the iterator has been handed back for reuse since it was last reset */
+        private boolean released;
+
+        public void reset() {
+            released = false;
+            if (ids.length < size()) {
+                ids = new int[Math.max(size(), ids.length * 2)];
+            }
+            count = copyIds(ids);
+            index = 0;
+            advance();
+        }
+
+        private void advance() {
+            while (index < count) {
+                int id = ids[index++];
+                if (matches(id)) {
+                    nextId = id;
+                    hasNext = true;
+                    return;
+                }
+            }
+            hasNext = false;
+        }
+
+        public boolean hasNext() {
+            if (!hasNext && !released) {
+                // Completed, so this iterator can be reused. Only released once, as it may be reacquired straight away
+                released = true;
+                idleIterator.set(this);
+            }
+            return hasNext;
+        }
+
+        public EntityRef next() {
+            if (!hasNext) {
+                throw new NoSuchElementException();
+            }
+            int id = nextId;
+            advance();
+            return getEntity(id);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
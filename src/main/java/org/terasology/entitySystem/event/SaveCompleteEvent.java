@@ -0,0 +1,38 @@
+package org.terasology.entitySystem.event;
+
+import org.terasology.entitySystem.AbstractEvent;
+
+import java.io.File;
+
+/**
+ * Sent when a background save of the world has finished. It is broadcast rather than sent
+ * to an entity: register for it with EventSystem.registerBroadcastReceiver.
+ */
+public class SaveCompleteEvent extends AbstractEvent {
+    private File file;
+    private Exception error;
+
+    /**
+     * @param file  The file saved to
+     * @param error The reason the save failed, or null if it succeeded
+     */
+    public SaveCompleteEvent(File file, Exception error) {
+        this.file = file;
+        this.error = error;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * @return The reason the save failed, or null if it succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+}
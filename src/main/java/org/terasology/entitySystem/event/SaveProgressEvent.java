@@ -0,0 +1,40 @@
+package org.terasology.entitySystem.event;
+
+import org.terasology.entitySystem.AbstractEvent;
+
+import java.io.File;
+
+/**
+ * Sent while a world is being saved in the background. It is broadcast rather than sent
+ * to an entity: register for it with EventSystem.registerBroadcastReceiver.
+ */
+public class SaveProgressEvent extends AbstractEvent {
+    private File file;
+    private int entitiesSaved;
+    private int entityCount;
+
+    public SaveProgressEvent(File file, int entitiesSaved, int entityCount) {
+        this.file = file;
+        this.entitiesSaved = entitiesSaved;
+        this.entityCount = entityCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getEntitiesSaved() {
+        return entitiesSaved;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * @return The fraction of the entities saved so far, between 0 and 1
+     */
+    public float getProgress() {
+        return (entityCount > 0) ? (float) entitiesSaved / entityCount : 1.0f;
+    }
+}
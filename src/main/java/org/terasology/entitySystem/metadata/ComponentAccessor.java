@@ -0,0 +1,26 @@
+package org.terasology.entitySystem.metadata;
+
+import org.terasology.entitySystem.Component;
+
+/**
+ * Creates, copies and accesses the fields of a single component type without reflection. Implementations are
+ * generated at runtime by {@link ComponentAccessorFactory}, one per component type. Fields are identified by their
+ * index in the array of field metadata the accessor was generated for.
+ * <p/>
+ * This has to be public so that generated classes, which live in the package of the component, can implement it.
+ */
+public interface ComponentAccessor {
+
+    public Component newInstance();
+
+    public Object getValue(Component component, int field);
+
+    public void setValue(Component component, int field, Object value);
+
+    /**
+     * @param component The component to copy
+     * @param fields    The fields the accessor was generated for, used to copy field values
+     * @return A copy of the component
+     */
+    public Component copy(Component component, FieldMetadata[] fields);
+}
@@ -0,0 +1,187 @@
+package org.terasology.entitySystem.metadata;
+
+import com.google.common.collect.Sets;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import org.terasology.entitySystem.Component;
+
+import java.lang.reflect.Modifier;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates {@link ComponentAccessor} classes that read, write and copy the fields of a component type with plain
+ * field accesses and getter/setter calls.
+ * <p/>
+ * Accessors are only generated if every field can be reached that way, that is if each field either is not private or
+ * has a public getter and setter. Otherwise the component type keeps using reflection.
+ */
+class ComponentAccessorFactory {
+    /**
+     * Setting this system property to true disables accessor generation, so all component fields are accessed through
+     * reflection.
+     */
+    public static final String REFLECTED_ACCESS_PROPERTY = "terasology.components.reflectedAccess";
+
+    private static final String ACCESSOR_SUFFIX = "$$ComponentAccessor";
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    private final boolean enabled = !Boolean.getBoolean(REFLECTED_ACCESS_PROPERTY);
+    private ClassPool classPool;
+    private Set<ClassLoader> knownLoaders = Sets.newHashSet();
+    private int accessorCount;
+
+    /**
+     * @param componentClass The component type
+     * @param fields         The fields of the component type to access
+     * @return An accessor for the component type, or null if one could not be generated
+     */
+    public ComponentAccessor createAccessor(Class<? extends Component> componentClass, FieldMetadata[] fields) {
+        if (!enabled) {
+            return null;
+        }
+        for (FieldMetadata field : fields) {
+            if (!isAccessible(field)) {
+                logger.log(Level.FINE, "Using reflection for " + componentClass.getSimpleName() + ", field " + field.getName() + " is private");
+                return null;
+            }
+        }
+        try {
+            return generateAccessor(componentClass, fields);
+        } catch (NotFoundException e) {
+            logger.log(Level.WARNING, "Failed to generate accessor for " + componentClass + ", using reflection", e);
+        } catch (CannotCompileException e) {
+            logger.log(Level.WARNING, "Failed to generate accessor for " + componentClass + ", using reflection", e);
+        } catch (InstantiationException e) {
+            logger.log(Level.WARNING, "Failed to generate accessor for " + componentClass + ", using reflection", e);
+        } catch (IllegalAccessException e) {
+            logger.log(Level.WARNING, "Failed to generate accessor for " + componentClass + ", using reflection", e);
+        } catch (LinkageError e) {
+            // Also covers javassist being unavailable at runtime
+            logger.log(Level.WARNING, "Failed to generate accessor for " + componentClass + ", using reflection", e);
+        }
+        return null;
+    }
+
+    private boolean isAccessible(FieldMetadata field) {
+        boolean fieldAccessible = !Modifier.isPrivate(field.getField().getModifiers());
+        return (fieldAccessible || field.getGetter() != null) && (fieldAccessible || field.getSetter() != null);
+    }
+
+    private ComponentAccessor generateAccessor(Class<? extends Component> componentClass, FieldMetadata[] fields) throws NotFoundException, CannotCompileException, InstantiationException, IllegalAccessException {
+        ClassLoader loader = componentClass.getClassLoader();
+        if (classPool == null) {
+            classPool = new ClassPool(true);
+        }
+        if (loader != null && knownLoaders.add(loader)) {
+            classPool.appendClassPath(new LoaderClassPath(loader));
+        }
+
+        String componentName = componentClass.getName();
+        String componentType = Component.class.getName();
+        CtClass accessorClass = classPool.makeClass(componentName + ACCESSOR_SUFFIX + (accessorCount++));
+        try {
+            accessorClass.addInterface(classPool.get(ComponentAccessor.class.getName()));
+
+            accessorClass.addMethod(CtNewMethod.make(
+                    "public " + componentType + " newInstance() { return new " + componentName + "(); }", accessorClass));
+
+            StringBuilder getValue = new StringBuilder();
+            getValue.append("public Object getValue(").append(componentType).append(" component, int field) {");
+            getValue.append(componentName).append(" c = (").append(componentName).append(") component;");
+            getValue.append("switch (field) {");
+            for (int i = 0; i < fields.length; ++i) {
+                getValue.append("case ").append(i).append(": return ").append(box(fields[i], read(fields[i], "c"))).append(";");
+            }
+            getValue.append("default: break; }");
+            getValue.append("throw new IllegalArgumentException(\"Invalid field index \" + field);}");
+            accessorClass.addMethod(CtNewMethod.make(getValue.toString(), accessorClass));
+
+            StringBuilder setValue = new StringBuilder();
+            setValue.append("public void setValue(").append(componentType).append(" component, int field, Object value) {");
+            setValue.append(componentName).append(" c = (").append(componentName).append(") component;");
+            setValue.append("switch (field) {");
+            for (int i = 0; i < fields.length; ++i) {
+                setValue.append("case ").append(i).append(": ").append(write(fields[i], "c", unbox(fields[i], "value"))).append(" return;");
+            }
+            setValue.append("default: break; }");
+            setValue.append("throw new IllegalArgumentException(\"Invalid field index \" + field);}");
+            accessorClass.addMethod(CtNewMethod.make(setValue.toString(), accessorClass));
+
+            StringBuilder copy = new StringBuilder();
+            copy.append("public ").append(componentType).append(" copy(").append(componentType).append(" component, ")
+                    .append(FieldMetadata.class.getName()).append("[] fields) {");
+            copy.append(componentName).append(" source = (").append(componentName).append(") component;");
+            copy.append(componentName).append(" result = new ").append(componentName).append("();");
+            for (int i = 0; i < fields.length; ++i) {
+                String value = read(fields[i], "source");
+                if (!fields[i].getField().getType().isPrimitive()) {
+                    // Primitives are values already, everything else is copied by its type handler
+                    value = "(" + typeName(fields[i].getField().getType()) + ") fields[" + i + "].copy(" + value + ")";
+                }
+                copy.append(write(fields[i], "result", value));
+            }
+            copy.append("return result;}");
+            accessorClass.addMethod(CtNewMethod.make(copy.toString(), accessorClass));
+
+            Class<?> generated = accessorClass.toClass(loader, componentClass.getProtectionDomain());
+            return (ComponentAccessor) generated.newInstance();
+        } finally {
+            accessorClass.detach();
+        }
+    }
+
+    private String read(FieldMetadata field, String target) {
+        if (field.getGetter() != null) {
+            return target + "." + field.getGetter().getName() + "()";
+        }
+        return target + "." + field.getName();
+    }
+
+    private String write(FieldMetadata field, String target, String value) {
+        if (field.getSetter() != null) {
+            return target + "." + field.getSetter().getName() + "(" + value + ");";
+        }
+        return target + "." + field.getName() + " = " + value + ";";
+    }
+
+    private String box(FieldMetadata field, String value) {
+        Class<?> type = field.getField().getType();
+        if (type.isPrimitive()) {
+            return wrapperType(type).getName() + ".valueOf(" + value + ")";
+        }
+        return value;
+    }
+
+    private String unbox(FieldMetadata field, String value) {
+        Class<?> type = field.getField().getType();
+        if (type.isPrimitive()) {
+            return "((" + wrapperType(type).getName() + ") " + value + ")." + type.getName() + "Value()";
+        }
+        return "(" + typeName(type) + ") " + value;
+    }
+
+    private Class<?> wrapperType(Class<?> primitive) {
+        if (primitive == Boolean.TYPE) return Boolean.class;
+        if (primitive == Byte.TYPE) return Byte.class;
+        if (primitive == Character.TYPE) return Character.class;
+        if (primitive == Short.TYPE) return Short.class;
+        if (primitive == Integer.TYPE) return Integer.class;
+        if (primitive == Long.TYPE) return Long.class;
+        if (primitive == Float.TYPE) return Float.class;
+        return Double.class;
+    }
+
+    private String typeName(Class<?> type) {
+        if (type.isArray()) {
+            return typeName(type.getComponentType()) + "[]";
+        }
+        return type.getName();
+    }
+}
@@ -9,6 +9,11 @@ import org.terasology.entitySystem.Component;
  */
 public interface ComponentLibrary extends Iterable<ComponentMetadata> {
 
+    /**
+     * The id of component classes that have not been registered
+     */
+    int UNKNOWN_COMPONENT_ID = -1;
+
     /**
      * Registers a handler for a specific type.
      * <p/>
@@ -28,6 +33,20 @@ public interface ComponentLibrary extends Iterable<ComponentMetadata> {
      */
     <T extends Component> void registerComponentClass(Class<T> componentClass);
 
+    /**
+     * Registered component classes are assigned dense ids, starting from 0, so that sets of component classes can be
+     * held as bitsets. Ids never change once assigned.
+     *
+     * @param componentClass
+     * @return The id of the component class, or UNKNOWN_COMPONENT_ID if not registered
+     */
+    int getComponentId(Class<? extends Component> componentClass);
+
+    /**
+     * @return The number of assigned component ids. All ids are less than this.
+     */
+    int getComponentIdCount();
+
     /**
      * @param componentClass
      * @param <T>
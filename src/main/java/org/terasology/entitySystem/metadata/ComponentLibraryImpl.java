@@ -1,6 +1,10 @@
 package org.terasology.entitySystem.metadata;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.terasology.asset.Asset;
 import org.terasology.entitySystem.Component;
 import org.terasology.entitySystem.metadata.core.*;
 
@@ -21,7 +25,9 @@ public final class ComponentLibraryImpl implements ComponentLibrary {
     private Logger logger = Logger.getLogger(getClass().getName());
     private Map<Class<? extends Component>, ComponentMetadata> componentSerializationLookup = Maps.newHashMap();
     private Map<String, Class<? extends Component>> componentTypeLookup = Maps.newHashMap();
+    private TObjectIntMap<Class<? extends Component>> componentIds = new TObjectIntHashMap<Class<? extends Component>>(128, 0.5f, UNKNOWN_COMPONENT_ID);
     private Map<Class<?>, TypeHandler<?>> typeHandlers = Maps.newHashMap();
+    private ComponentAccessorFactory accessorFactory = new ComponentAccessorFactory();
 
     public ComponentLibraryImpl() {
         registerTypeHandler(Boolean.class, new BooleanTypeHandler());
@@ -53,7 +59,13 @@ public final class ComponentLibraryImpl implements ComponentLibrary {
             return;
         }
 
-        ComponentMetadata<T> info = new ComponentMetadata<T>(componentClass);
+        int id = componentIds.get(componentClass);
+        if (id == UNKNOWN_COMPONENT_ID) {
+            id = componentIds.size();
+            componentIds.put(componentClass, id);
+        }
+        ComponentMetadata<T> info = new ComponentMetadata<T>(componentClass, id);
+        List<FieldMetadata> fields = Lists.newArrayList();
         for (Field field : componentClass.getDeclaredFields()) {
             if (Modifier.isTransient(field.getModifiers()) || Modifier.isStatic(field.getModifiers()))
                 continue;
@@ -62,13 +74,33 @@ public final class ComponentLibraryImpl implements ComponentLibrary {
             if (typeHandler == null) {
                 logger.log(Level.SEVERE, "Unsupported field type in component type " + componentClass.getSimpleName() + ", " + field.getName() + " : " + field.getGenericType());
             } else {
-                info.addField(new FieldMetadata(field, componentClass, typeHandler));
+                FieldMetadata fieldMetadata = new FieldMetadata(field, componentClass, typeHandler);
+                info.addField(fieldMetadata);
+                fields.add(fieldMetadata);
+                if (referencesAssets(field.getGenericType(), 0)) {
+                    info.setReferencesAssets(true);
+                }
             }
         }
+        FieldMetadata[] accessorFields = fields.toArray(new FieldMetadata[fields.size()]);
+        ComponentAccessor accessor = accessorFactory.createAccessor(componentClass, accessorFields);
+        if (accessor != null) {
+            info.setAccessor(accessor, accessorFields);
+        }
         componentSerializationLookup.put(componentClass, info);
         componentTypeLookup.put(ComponentUtil.getComponentClassName(componentClass).toLowerCase(Locale.ENGLISH), componentClass);
     }
 
+    @Override
+    public int getComponentId(Class<? extends Component> componentClass) {
+        return componentIds.get(componentClass);
+    }
+
+    @Override
+    public int getComponentIdCount() {
+        return componentIds.size();
+    }
+
     public <T extends Component> ComponentMetadata<T> getMetadata(Class<T> componentClass) {
         return componentSerializationLookup.get(componentClass);
     }
@@ -98,6 +130,37 @@ public final class ComponentLibraryImpl implements ComponentLibrary {
         return componentSerializationLookup.values().iterator();
     }
 
+    /**
+     * @return Whether values of the given type can hold assets, directly or within lists, maps or mapped containers
+     */
+    private boolean referencesAssets(Type type, int depth) {
+        if (type instanceof ParameterizedType) {
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                if (referencesAssets(argument, depth)) {
+                    return true;
+                }
+            }
+            type = ((ParameterizedType) type).getRawType();
+        }
+        if (!(type instanceof Class)) {
+            return false;
+        }
+        Class typeClass = (Class) type;
+        if (Asset.class.isAssignableFrom(typeClass)) {
+            return true;
+        }
+        if (typeClass.isPrimitive() || typeClass.isEnum() || typeHandlers.containsKey(typeClass) || depth > MAX_SERIALIZATION_DEPTH) {
+            return false;
+        }
+        for (Field field : typeClass.getDeclaredFields()) {
+            if (!Modifier.isTransient(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())
+                    && referencesAssets(field.getGenericType(), depth + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // TODO: Refactor
     private TypeHandler getHandlerFor(Type type, int depth) {
         Class typeClass;
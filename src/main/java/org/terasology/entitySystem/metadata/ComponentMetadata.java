@@ -1,9 +1,11 @@
 package org.terasology.entitySystem.metadata;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.terasology.entitySystem.Component;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
@@ -16,29 +18,79 @@ public final class ComponentMetadata<T extends Component> {
     private static final Logger logger = Logger.getLogger(ComponentMetadata.class.getName());
 
     private Map<String, FieldMetadata> fields = Maps.newHashMap();
+    private List<FieldMetadata> fieldList = Lists.newArrayList();
     private Class<T> clazz;
+    private int id;
+    private ComponentAccessor accessor;
+    private FieldMetadata[] accessorFields;
+    private boolean referencesAssets;
 
-    public ComponentMetadata(Class<T> componentClass) {
+    public ComponentMetadata(Class<T> componentClass, int id) {
         this.clazz = componentClass;
+        this.id = id;
     }
 
     public Class<T> getType() {
         return clazz;
     }
 
+    /**
+     * @return The dense id assigned to this component type by the component library
+     */
+    public int getId() {
+        return id;
+    }
+
     public void addField(FieldMetadata fieldInfo) {
         fields.put(fieldInfo.getName().toLowerCase(Locale.ENGLISH), fieldInfo);
+        fieldList.add(fieldInfo);
     }
 
     public FieldMetadata getField(String name) {
         return fields.get(name.toLowerCase(Locale.ENGLISH));
     }
 
+    /**
+     * @return The fields, in the order they were added
+     */
     public Iterable<? extends FieldMetadata> iterateFields() {
-        return fields.values();
+        return fieldList;
+    }
+
+    public int getFieldCount() {
+        return fieldList.size();
+    }
+
+    /**
+     * @return Whether this component type has fields that can hold assets. Assets are only loaded on the main thread,
+     *         so components of this type must be deserialized there.
+     */
+    public boolean referencesAssets() {
+        return referencesAssets;
+    }
+
+    void setReferencesAssets(boolean referencesAssets) {
+        this.referencesAssets = referencesAssets;
+    }
+
+    /**
+     * Switches this component type, and all its fields, to a generated accessor
+     *
+     * @param accessor       The accessor
+     * @param accessorFields The fields of this component type, in the order of the accessor's field indices
+     */
+    void setAccessor(ComponentAccessor accessor, FieldMetadata[] accessorFields) {
+        this.accessor = accessor;
+        this.accessorFields = accessorFields;
+        for (int i = 0; i < accessorFields.length; ++i) {
+            accessorFields[i].setAccessor(accessor, i);
+        }
     }
 
     public T newInstance() {
+        if (accessor != null) {
+            return clazz.cast(accessor.newInstance());
+        }
         try {
             return clazz.newInstance();
         } catch (InstantiationException e) {
@@ -50,6 +102,9 @@ public final class ComponentMetadata<T extends Component> {
     }
 
     public T clone(T component) {
+        if (accessor != null) {
+            return clazz.cast(accessor.copy(component, accessorFields));
+        }
         try {
             T result = clazz.newInstance();
             for (FieldMetadata field : fields.values()) {
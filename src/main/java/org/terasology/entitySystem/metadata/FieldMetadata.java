@@ -1,5 +1,6 @@
 package org.terasology.entitySystem.metadata;
 
+import org.terasology.entitySystem.Component;
 import org.terasology.protobuf.EntityData;
 
 import java.lang.reflect.Field;
@@ -15,6 +16,8 @@ public final class FieldMetadata {
     private Method getter;
     private Method setter;
     private TypeHandler serializationHandler;
+    private ComponentAccessor accessor;
+    private int accessorIndex;
 
     public FieldMetadata(Field field, Class type, TypeHandler handler) {
         this.field = field;
@@ -40,6 +43,9 @@ public final class FieldMetadata {
     }
 
     public Object getValue(Object obj) throws IllegalAccessException, InvocationTargetException {
+        if (accessor != null) {
+            return accessor.getValue((Component) obj, accessorIndex);
+        }
         if (getter != null) {
             return getter.invoke(obj);
         }
@@ -47,13 +53,38 @@ public final class FieldMetadata {
     }
 
     public void setValue(Object target, Object value) throws IllegalAccessException, InvocationTargetException {
-        if (setter != null) {
+        if (accessor != null) {
+            accessor.setValue((Component) target, accessorIndex, value);
+        } else if (setter != null) {
             setter.invoke(target, value);
         } else {
             field.set(target, value);
         }
     }
 
+    Field getField() {
+        return field;
+    }
+
+    Method getGetter() {
+        return getter;
+    }
+
+    Method getSetter() {
+        return setter;
+    }
+
+    /**
+     * Switches this field to a generated accessor
+     *
+     * @param accessor The accessor of the component type owning this field
+     * @param index    The index of this field in the accessor
+     */
+    void setAccessor(ComponentAccessor accessor, int index) {
+        this.accessor = accessor;
+        this.accessorIndex = index;
+    }
+
     private Method findGetter(Class type, Field field) {
         Method result = findMethod(type, "get" + field.getName().substring(0, 1).toUpperCase(Locale.ENGLISH) + field.getName().substring(1));
         if (result != null && field.getType().equals(result.getReturnType())) {
@@ -0,0 +1,74 @@
+package org.terasology.entitySystem.persistence;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.terasology.entitySystem.metadata.ComponentMetadata;
+import org.terasology.entitySystem.metadata.ComponentUtil;
+import org.terasology.entitySystem.metadata.FieldMetadata;
+
+import java.util.List;
+
+/**
+ * An entry of the component type table of a save, which gives each component type and each of its fields a dense
+ * id. The index of the entry in the table is the type's id, and the index of a field in the entry is the field's id.
+ * <p/>
+ * Entries are written into the world's component classes as "Type(field,field,...)". Entries of older saves, which
+ * are just the type name, have no field table.
+ */
+final class ComponentTableEntry {
+    private static final char FIELDS_START = '(';
+    private static final char FIELDS_END = ')';
+    private static final char FIELD_SEPARATOR = ',';
+
+    private final String type;
+    private final List<String> fieldNames;
+
+    private ComponentTableEntry(String type, List<String> fieldNames) {
+        this.type = type;
+        this.fieldNames = fieldNames;
+    }
+
+    public static ComponentTableEntry create(ComponentMetadata<?> componentMetadata) {
+        List<String> fieldNames = Lists.newArrayListWithCapacity(componentMetadata.getFieldCount());
+        for (FieldMetadata field : componentMetadata.iterateFields()) {
+            fieldNames.add(field.getName());
+        }
+        return new ComponentTableEntry(ComponentUtil.getComponentClassName(componentMetadata.getType()), fieldNames);
+    }
+
+    public static ComponentTableEntry parse(String entry) {
+        int fieldsStart = entry.indexOf(FIELDS_START);
+        if (fieldsStart == -1 || entry.charAt(entry.length() - 1) != FIELDS_END) {
+            return new ComponentTableEntry(entry, ImmutableList.<String>of());
+        }
+        String fields = entry.substring(fieldsStart + 1, entry.length() - 1);
+        List<String> fieldNames = fields.isEmpty() ? ImmutableList.<String>of() : Lists.newArrayList(Splitter.on(FIELD_SEPARATOR).split(fields));
+        return new ComponentTableEntry(entry.substring(0, fieldsStart), fieldNames);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @param fieldId
+     * @return The name of the field with the given id, or null if the entry has no such field
+     */
+    public String getFieldName(int fieldId) {
+        if (fieldId < 0 || fieldId >= fieldNames.size()) {
+            return null;
+        }
+        return fieldNames.get(fieldId);
+    }
+
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    @Override
+    public String toString() {
+        return type + FIELDS_START + Joiner.on(FIELD_SEPARATOR).join(fieldNames) + FIELDS_END;
+    }
+}
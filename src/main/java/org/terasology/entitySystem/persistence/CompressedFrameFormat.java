@@ -0,0 +1,394 @@
+package org.terasology.entitySystem.persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A container that splits a stream of bytes into independently deflated frames, so that they can be decompressed in
+ * parallel.
+ * <p/>
+ * The file starts with a magic number, followed by the frames. Each frame is its compressed length, its original
+ * length and its deflated bytes. A frame with a compressed length of zero ends the frames, and is followed by the
+ * frame index - the offset of each frame - the number of frames and the magic number again. The frames can be read
+ * one after another from any stream, or found through the index in a memory-mapped file.
+ */
+final class CompressedFrameFormat {
+    private static final int MAGIC = 0x54434631; // "TCF1"
+    private static final int FRAME_SIZE = 1 << 18;
+    /* How many frames each worker may have decompressed ahead of the reader */
+    private static final int FRAMES_PER_THREAD = 2;
+    private static final int TRAILER_SIZE = 8;
+
+    private CompressedFrameFormat() {
+    }
+
+    /**
+     * @param out
+     * @return A stream that writes compressed frames to out. Finishing or closing it writes the frame index.
+     * @throws IOException
+     */
+    public static FrameOutputStream newOutputStream(OutputStream out) throws IOException {
+        return new FrameOutputStream(out);
+    }
+
+    /**
+     * @param in
+     * @return A stream of the decompressed frames of in, decompressed one at a time as they are read
+     * @throws IOException
+     */
+    public static InputStream newInputStream(InputStream in) throws IOException {
+        return new SequentialFrameInputStream(in);
+    }
+
+    /**
+     * @param file
+     * @return A stream of the decompressed frames of the file, which is memory-mapped and decompressed ahead of the
+     *         reader on worker threads
+     * @throws IOException
+     */
+    public static InputStream newMappedInputStream(File file) throws IOException {
+        FileInputStream fileIn = new FileInputStream(file);
+        try {
+            FileChannel channel = fileIn.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Too large to map: " + file);
+            }
+            return new MappedFrameInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // The mapping remains valid once the channel is closed
+            // JAVA7: Replace with improved resource handling
+            fileIn.close();
+        }
+    }
+
+    static class FrameOutputStream extends FilterOutputStream {
+        private final DataOutputStream dataOut;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] buffer = new byte[FRAME_SIZE];
+        private byte[] compressed = new byte[FRAME_SIZE + FRAME_SIZE / 8];
+        private int bufferSize;
+        private long offset;
+        private long[] frameOffsets = new long[16];
+        private int frameCount;
+        private boolean finished;
+
+        public FrameOutputStream(OutputStream out) throws IOException {
+            super(out);
+            dataOut = new DataOutputStream(out);
+            dataOut.writeInt(MAGIC);
+            offset = 4;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (bufferSize == FRAME_SIZE) {
+                writeFrame();
+            }
+            buffer[bufferSize++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (bufferSize == FRAME_SIZE) {
+                    writeFrame();
+                }
+                int count = Math.min(len, FRAME_SIZE - bufferSize);
+                System.arraycopy(b, off, buffer, bufferSize, count);
+                bufferSize += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        private void writeFrame() throws IOException {
+            deflater.reset();
+            deflater.setInput(buffer, 0, bufferSize);
+            deflater.finish();
+            int compressedSize = 0;
+            while (!deflater.finished()) {
+                if (compressedSize == compressed.length) {
+                    byte[] larger = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, larger, 0, compressedSize);
+                    compressed = larger;
+                }
+                compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+            }
+
+            if (frameCount == frameOffsets.length) {
+                long[] larger = new long[frameOffsets.length * 2];
+                System.arraycopy(frameOffsets, 0, larger, 0, frameCount);
+                frameOffsets = larger;
+            }
+            frameOffsets[frameCount++] = offset;
+            dataOut.writeInt(compressedSize);
+            dataOut.writeInt(bufferSize);
+            dataOut.write(compressed, 0, compressedSize);
+            offset += 8 + compressedSize;
+            bufferSize = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Frames are only written when full, so that flushing does not fragment them
+            dataOut.flush();
+        }
+
+        /**
+         * Writes the last frame and the frame index, without closing the underlying stream
+         *
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                if (bufferSize > 0) {
+                    writeFrame();
+                }
+                dataOut.writeInt(0);
+                for (int i = 0; i < frameCount; ++i) {
+                    dataOut.writeLong(frameOffsets[i]);
+                }
+                dataOut.writeInt(frameCount);
+                dataOut.writeInt(MAGIC);
+                dataOut.flush();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Presents a sequence of decompressed frames as a single stream
+     */
+    private abstract static class FrameInputStream extends InputStream {
+        private byte[] frame = new byte[0];
+        private int position;
+
+        /**
+         * @return The next decompressed frame, or null if there are no more
+         */
+        protected abstract byte[] nextFrame() throws IOException;
+
+        private boolean fill() throws IOException {
+            while (position == frame.length) {
+                byte[] next = nextFrame();
+                if (next == null) {
+                    return false;
+                }
+                frame = next;
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return frame[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, frame.length - position);
+            System.arraycopy(frame, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return frame.length - position;
+        }
+
+        protected static byte[] inflate(byte[] compressed, int length) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                byte[] result = new byte[length];
+                int size = 0;
+                while (size < length && !inflater.finished()) {
+                    int count = inflater.inflate(result, size, length - size);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    size += count;
+                }
+                if (size != length) {
+                    throw new EOFException("Truncated frame");
+                }
+                return result;
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt frame", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    private static class SequentialFrameInputStream extends FrameInputStream {
+        private final DataInputStream in;
+        private boolean finished;
+
+        public SequentialFrameInputStream(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Not a compressed save");
+            }
+        }
+
+        @Override
+        protected byte[] nextFrame() throws IOException {
+            if (finished) {
+                return null;
+            }
+            int compressedSize = in.readInt();
+            if (compressedSize == 0) {
+                finished = true;
+                return null;
+            }
+            int size = in.readInt();
+            byte[] compressed = new byte[compressedSize];
+            in.readFully(compressed);
+            return inflate(compressed, size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class MappedFrameInputStream extends FrameInputStream {
+        private final MappedByteBuffer file;
+        private final long[] frameOffsets;
+        private final ExecutorService executor;
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        private final int maxPending;
+        private int nextFrame;
+
+        public MappedFrameInputStream(MappedByteBuffer file) throws IOException {
+            this.file = file;
+            int size = file.capacity();
+            if (size < 4 + 4 + TRAILER_SIZE || file.getInt(0) != MAGIC || file.getInt(size - 4) != MAGIC) {
+                throw new IOException("Not a compressed save");
+            }
+            int frameCount = file.getInt(size - TRAILER_SIZE);
+            int indexStart = size - TRAILER_SIZE - frameCount * 8;
+            if (frameCount < 0 || indexStart < 4) {
+                throw new IOException("Corrupt frame index");
+            }
+            frameOffsets = new long[frameCount];
+            for (int i = 0; i < frameCount; ++i) {
+                frameOffsets[i] = file.getLong(indexStart + i * 8);
+                if (frameOffsets[i] < 4 || frameOffsets[i] > indexStart - 8) {
+                    throw new IOException("Corrupt frame index");
+                }
+            }
+
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            executor = Executors.newFixedThreadPool(threads, new InflaterThreadFactory());
+            maxPending = threads * FRAMES_PER_THREAD;
+        }
+
+        @Override
+        protected byte[] nextFrame() throws IOException {
+            while (pending.size() < maxPending && nextFrame < frameOffsets.length) {
+                final int offset = (int) frameOffsets[nextFrame++];
+                pending.addLast(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return readFrame(offset);
+                    }
+                }));
+            }
+            if (pending.isEmpty()) {
+                return null;
+            }
+            try {
+                return pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to decompress frame", e.getCause());
+            }
+        }
+
+        private byte[] readFrame(int offset) throws IOException {
+            // Each worker reads through its own view of the mapping, as buffer positions are not thread safe
+            ByteBuffer view = file.duplicate();
+            int compressedSize = view.getInt(offset);
+            int size = view.getInt(offset + 4);
+            if (compressedSize <= 0 || size < 0 || offset + 8 + compressedSize > view.capacity()) {
+                throw new IOException("Corrupt frame at " + offset);
+            }
+            byte[] compressed = new byte[compressedSize];
+            view.position(offset + 8);
+            view.get(compressed);
+            return inflate(compressed, size);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+            pending.clear();
+        }
+    }
+
+    private static class InflaterThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Save Inflater-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
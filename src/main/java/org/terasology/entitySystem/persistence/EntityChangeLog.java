@@ -0,0 +1,215 @@
+package org.terasology.entitySystem.persistence;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnknownFieldSet;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import org.terasology.protobuf.EntityData;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The merged contents of an incremental save: a file of length-delimited world messages, each recording the entities
+ * changed since the previous one. Later segments replace the entities of earlier ones, and the id information of the
+ * last segment is the current one.
+ * <p/>
+ * The change log is applied over the full save it was written against: entities it changed or destroyed are skipped
+ * when reading the full save, and its own entities are loaded in their place. The full save's header and each segment
+ * carry the id of the checkpoint they belong to, so that changes left over from an older save are never applied to a
+ * newer one.
+ */
+public class EntityChangeLog {
+    /**
+     * The checkpoint id of saves written before checkpoints were introduced
+     */
+    public static final long NO_CHECKPOINT = 0;
+
+    private static final Logger logger = Logger.getLogger(EntityChangeLog.class.getName());
+    /* EntityData has no field for the checkpoint id, so it is kept as an unknown field, which older readers skip */
+    private static final int CHECKPOINT_FIELD_NUMBER = 1000;
+
+    private int segmentCount;
+    private long validLength;
+    private int staleSegmentCount;
+    private int nextEntityId;
+    private List<Integer> freedIdList = Lists.newArrayList();
+    private TIntSet freedIds = new TIntHashSet();
+    private TIntObjectMap<EntityData.Entity> entities = new TIntObjectHashMap<EntityData.Entity>();
+
+    /**
+     * Reads a change log. A segment cut short by an interrupted save ends the log; see {@link #getValidLength()}.
+     * Segments of another checkpoint than the full save's are skipped.
+     *
+     * @param file
+     * @param checkpoint The checkpoint id of the full save
+     * @return The merged change log
+     * @throws IOException
+     */
+    public static EntityChangeLog read(File file, long checkpoint) throws IOException {
+        EntityChangeLog result = new EntityChangeLog();
+        CountingInputStream in = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            EntityData.World segment;
+            while ((segment = readSegment(in, file)) != null) {
+                if (getCheckpoint(segment) == checkpoint) {
+                    result.merge(segment);
+                } else {
+                    result.staleSegmentCount++;
+                }
+                result.validLength = in.getCount();
+            }
+        } finally {
+            // JAVA7: Replace with improved resource handling
+            in.close();
+        }
+        if (result.staleSegmentCount > 0) {
+            logger.log(Level.WARNING, "Ignoring " + result.staleSegmentCount + " incremental saves in " + file + " left over from an older save");
+        }
+        return result;
+    }
+
+    /**
+     * @param world A full save's header or a change log segment
+     * @return The id of the checkpoint it belongs to, or NO_CHECKPOINT
+     */
+    public static long getCheckpoint(EntityData.World world) {
+        UnknownFieldSet.Field field = world.getUnknownFields().getField(CHECKPOINT_FIELD_NUMBER);
+        if (field.getFixed64List().isEmpty()) {
+            return NO_CHECKPOINT;
+        }
+        return field.getFixed64List().get(0);
+    }
+
+    /**
+     * @param world      A full save's header or a change log segment
+     * @param checkpoint
+     * @return The world message marked with the given checkpoint id
+     */
+    public static EntityData.World setCheckpoint(EntityData.World world, long checkpoint) {
+        UnknownFieldSet unknownFields = UnknownFieldSet.newBuilder(world.getUnknownFields())
+                .addField(CHECKPOINT_FIELD_NUMBER, UnknownFieldSet.Field.newBuilder().addFixed64(checkpoint).build())
+                .build();
+        return world.toBuilder().setUnknownFields(unknownFields).build();
+    }
+
+    private static EntityData.World readSegment(CountingInputStream in, File file) {
+        try {
+            return EntityData.World.parseDelimitedFrom(in);
+        } catch (InvalidProtocolBufferException e) {
+            logger.log(Level.WARNING, "Ignoring incomplete changes at the end of " + file, e);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Ignoring unreadable changes at the end of " + file, e);
+        }
+        return null;
+    }
+
+    private void merge(EntityData.World segment) {
+        segmentCount++;
+        nextEntityId = segment.getNextEntityId();
+        freedIdList = segment.getFreedEntityIdList();
+        freedIds.clear();
+        freedIds.addAll(freedIdList);
+        List<ComponentTableEntry> componentTable = Lists.newArrayListWithCapacity(segment.getComponentClassCount());
+        for (String entry : segment.getComponentClassList()) {
+            componentTable.add(ComponentTableEntry.parse(entry));
+        }
+        for (EntityData.Entity entity : segment.getEntityList()) {
+            entities.put(entity.getId(), resolveComponentTypes(entity, componentTable));
+        }
+    }
+
+    /**
+     * Each segment has its own component type table, so components are converted to refer to their type and fields
+     * by name
+     */
+    private EntityData.Entity resolveComponentTypes(EntityData.Entity entity, List<ComponentTableEntry> componentTable) {
+        if (componentTable.isEmpty()) {
+            return entity;
+        }
+        EntityData.Entity.Builder builder = entity.toBuilder();
+        for (int i = 0; i < builder.getComponentCount(); ++i) {
+            EntityData.Component component = builder.getComponent(i);
+            if (component.hasTypeIndex() && component.getTypeIndex() < componentTable.size()) {
+                ComponentTableEntry entry = componentTable.get(component.getTypeIndex());
+                EntityData.Component.Builder resolved = component.toBuilder().clearTypeIndex().setType(entry.getType());
+                for (int j = 0; j < resolved.getFieldCount(); ++j) {
+                    EntityData.NameValue field = resolved.getField(j);
+                    if (field.hasNameIndex()) {
+                        String name = entry.getFieldName(field.getNameIndex());
+                        resolved.setField(j, field.toBuilder().clearNameIndex().setName((name != null) ? name : ""));
+                    }
+                }
+                builder.setComponent(i, resolved);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The number of incremental saves in the log
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return The number of segments skipped for belonging to another checkpoint
+     */
+    public int getStaleSegmentCount() {
+        return staleSegmentCount;
+    }
+
+    /**
+     * @return The length of the file up to the end of the last complete segment. Anything after it is what is left of
+     *         an interrupted save, and must be cut off before more segments are appended.
+     */
+    public long getValidLength() {
+        return validLength;
+    }
+
+    /**
+     * @param header The header of the full save
+     * @return The header with the entity id information of the change log
+     */
+    public EntityData.World applyTo(EntityData.World header) {
+        if (segmentCount == 0) {
+            return header;
+        }
+        EntityData.World.Builder builder = header.toBuilder();
+        builder.setNextEntityId(nextEntityId);
+        builder.clearFreedEntityId();
+        builder.addAllFreedEntityId(freedIdList);
+        return builder.build();
+    }
+
+    /**
+     * @param entityId
+     * @return Whether the entity of the full save has been replaced or destroyed by the change log
+     */
+    public boolean isChanged(int entityId) {
+        return entities.containsKey(entityId) || freedIds.contains(entityId);
+    }
+
+    /**
+     * @return The changed entities that still exist
+     */
+    public List<EntityData.Entity> getEntities() {
+        List<EntityData.Entity> result = Lists.newArrayListWithCapacity(entities.size());
+        for (EntityData.Entity entity : entities.valueCollection()) {
+            if (!freedIds.contains(entity.getId())) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+}
@@ -1,6 +1,9 @@
 package org.terasology.entitySystem.persistence;
 
+import com.google.common.collect.Lists;
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Descriptors;
 import gnu.trove.list.TByteList;
@@ -10,17 +13,46 @@ import org.terasology.protobuf.EntityData;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 /**
+ * Reads and writes entity data as JSON.
+ * <p/>
+ * Worlds are streamed: each entity is converted to JSON and written, or read and converted, on its own, so the whole
+ * document is never held in memory as JSON elements. The world's other fields are written before its entities.
+ *
  * @author Immortius <immortius@gmail.com>
  */
 public class EntityDataJSONFormat {
+    private static final String ENTITY_FIELD = "entity";
+    private static final String INDENT = "  ";
+
+    /**
+     * Receives a world as it is read. The header - the world without its entities - is received before any entity.
+     * Should fields of the world follow its entities, they are received as a second header afterwards.
+     */
+    public interface WorldVisitor {
+        void visitHeader(EntityData.World header) throws IOException;
+
+        void visitEntity(EntityData.Entity entity) throws IOException;
+    }
 
     public static void write(EntityData.World world, BufferedWriter writer) throws IOException {
-        newGson().toJson(world, writer);
+        write(world, writer, true);
+    }
+
+    public static void write(EntityData.World world, Writer writer, boolean prettyPrint) throws IOException {
+        WorldWriter worldWriter = new WorldWriter(writer, prettyPrint);
+        worldWriter.writeHeader(world);
+        for (EntityData.Entity entity : world.getEntityList()) {
+            worldWriter.writeEntity(entity);
+        }
+        worldWriter.finish();
     }
 
     public static void write(EntityData.Prefab prefab, BufferedWriter writer) throws IOException {
@@ -28,13 +60,108 @@ public class EntityDataJSONFormat {
     }
 
     public static EntityData.World readWorld(BufferedReader reader) throws IOException {
+        final EntityData.World.Builder world = EntityData.World.newBuilder();
+        readWorld(reader, new WorldVisitor() {
+            @Override
+            public void visitHeader(EntityData.World header) {
+                world.mergeFrom(header);
+            }
+
+            @Override
+            public void visitEntity(EntityData.Entity entity) {
+                world.addEntity(entity);
+            }
+        });
+        return world.build();
+    }
+
+    /**
+     * Reads a world one entity at a time.
+     * <p/>
+     * If the entities come before the other fields of the world, as in files written by older versions, they are
+     * held until the header has been read.
+     *
+     * @param reader
+     * @param visitor
+     * @throws IOException
+     */
+    public static void readWorld(Reader reader, WorldVisitor visitor) throws IOException {
+        Gson gson = newGson();
+        JsonReader jsonReader = new JsonReader(reader);
         try {
-            return newGson().fromJson(reader, EntityData.World.class);
-        } catch (JsonSyntaxException e) {
+            EntityData.World.Builder header = EntityData.World.newBuilder();
+            List<EntityData.Entity> heldEntities = null;
+            boolean headerVisited = false;
+
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                String name = jsonReader.nextName();
+                if (!name.equals(ENTITY_FIELD)) {
+                    readWorldField(gson, jsonReader, name, header);
+                } else if (header.getAllFields().isEmpty() && !headerVisited) {
+                    heldEntities = Lists.newArrayList();
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        heldEntities.add(gson.<EntityData.Entity>fromJson(jsonReader, EntityData.Entity.class));
+                    }
+                    jsonReader.endArray();
+                } else {
+                    if (!headerVisited) {
+                        visitor.visitHeader(header.build());
+                        header = EntityData.World.newBuilder();
+                        headerVisited = true;
+                    }
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        visitor.visitEntity(gson.<EntityData.Entity>fromJson(jsonReader, EntityData.Entity.class));
+                    }
+                    jsonReader.endArray();
+                }
+            }
+            jsonReader.endObject();
+
+            if (!headerVisited || !header.getAllFields().isEmpty()) {
+                visitor.visitHeader(header.build());
+            }
+            if (heldEntities != null) {
+                for (EntityData.Entity entity : heldEntities) {
+                    visitor.visitEntity(entity);
+                }
+            }
+        } catch (JsonParseException e) {
+            throw new IOException("Failed to load world", e);
+        } catch (IllegalStateException e) {
             throw new IOException("Failed to load world", e);
         }
     }
 
+    private static void readWorldField(Gson gson, JsonReader reader, String name, EntityData.World.Builder header) throws IOException {
+        // JAVA7: Make this a switch statement
+        if (name.equals("prefab")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                header.addPrefab(gson.<EntityData.Prefab>fromJson(reader, EntityData.Prefab.class));
+            }
+            reader.endArray();
+        } else if (name.equals("next_entity_id")) {
+            header.setNextEntityId(reader.nextInt());
+        } else if (name.equals("freed_entity_id")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                header.addFreedEntityId(reader.nextInt());
+            }
+            reader.endArray();
+        } else if (name.equals("component_class")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                header.addComponentClass(reader.nextString());
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+    }
+
     public static EntityData.Prefab readPrefab(BufferedReader reader) throws IOException {
         try {
             return newGson().fromJson(reader, EntityData.Prefab.class);
@@ -46,7 +173,6 @@ public class EntityDataJSONFormat {
     private static Gson newGson() {
         return new GsonBuilder()
                 .setPrettyPrinting()
-                .registerTypeAdapter(EntityData.World.class, new WorldHandler())
                 .registerTypeAdapter(EntityData.Entity.class, new EntityHandler())
                 .registerTypeAdapter(EntityData.Prefab.class, new PrefabHandler())
                 .registerTypeAdapter(EntityData.Component.class, new ComponentHandler())
@@ -55,47 +181,61 @@ public class EntityDataJSONFormat {
                 .create();
     }
 
-    private static class WorldHandler implements JsonSerializer<EntityData.World>, JsonDeserializer<EntityData.World> {
-
-        @Override
-        public JsonElement serialize(EntityData.World src, Type typeOfSrc, JsonSerializationContext context) {
-            JsonObject result = new JsonObject();
-            for (Map.Entry<Descriptors.FieldDescriptor, Object> field : src.getAllFields().entrySet()) {
-                result.add(field.getKey().getName(), context.serialize(field.getValue()));
+    /**
+     * Writes a world one entity at a time: first the header - the world without its entities - then each entity,
+     * then finish.
+     */
+    public static class WorldWriter {
+        private final Gson gson = newGson();
+        private final JsonWriter writer;
+        private boolean writingEntities;
+
+        public WorldWriter(Writer writer, boolean prettyPrint) throws IOException {
+            this.writer = new JsonWriter(writer);
+            if (prettyPrint) {
+                this.writer.setIndent(INDENT);
             }
-            return result;
+            this.writer.beginObject();
         }
 
-        @Override
-        public EntityData.World deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            EntityData.World.Builder world = EntityData.World.newBuilder();
-            if (json.isJsonObject()) {
-                JsonObject jsonObject = json.getAsJsonObject();
-                JsonArray prefabArray = jsonObject.getAsJsonArray("prefab");
-                if (prefabArray != null) {
-                    for (JsonElement prefabElem : prefabArray) {
-                        world.addPrefab((EntityData.Prefab) context.deserialize(prefabElem, EntityData.Prefab.class));
-                    }
-                }
-                JsonArray entityArray = jsonObject.getAsJsonArray("entity");
-                if (entityArray != null) {
-                    for (JsonElement entityElem : entityArray) {
-                        world.addEntity((EntityData.Entity) context.deserialize(entityElem, EntityData.Entity.class));
-                    }
-                }
-                JsonPrimitive nextId = jsonObject.getAsJsonPrimitive("next_entity_id");
-                if (nextId != null) {
-                    world.setNextEntityId(nextId.getAsInt());
+        public void writeHeader(EntityData.World header) throws IOException {
+            for (Map.Entry<Descriptors.FieldDescriptor, Object> field : header.getAllFields().entrySet()) {
+                if (field.getKey().getNumber() == EntityData.World.ENTITY_FIELD_NUMBER) {
+                    continue;
                 }
-                JsonArray freedIdArray = jsonObject.getAsJsonArray("freed_entity_id");
-                if (freedIdArray != null) {
-                    for (JsonElement freedId : freedIdArray) {
-                        world.addFreedEntityId(freedId.getAsInt());
+                writer.name(field.getKey().getName());
+                if (field.getKey().isRepeated()) {
+                    writer.beginArray();
+                    for (Object value : (List<?>) field.getValue()) {
+                        gson.toJson(value, value.getClass(), writer);
                     }
+                    writer.endArray();
+                } else {
+                    gson.toJson(field.getValue(), field.getValue().getClass(), writer);
                 }
+            }
+        }
+
+        public void writeEntity(EntityData.Entity entity) throws IOException {
+            if (!writingEntities) {
+                writer.name(ENTITY_FIELD);
+                writer.beginArray();
+                writingEntities = true;
+            }
+            gson.toJson(entity, EntityData.Entity.class, writer);
+        }
 
+        /**
+         * Ends the world and flushes the writer, without closing it
+         *
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            if (writingEntities) {
+                writer.endArray();
             }
-            return world.build();
+            writer.endObject();
+            writer.flush();
         }
     }
 
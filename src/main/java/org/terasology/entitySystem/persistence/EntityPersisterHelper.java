@@ -1,9 +1,12 @@
 package org.terasology.entitySystem.persistence;
 
+import gnu.trove.set.TIntSet;
 import org.terasology.entitySystem.*;
 import org.terasology.entitySystem.metadata.ComponentLibrary;
 import org.terasology.protobuf.EntityData;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -18,12 +21,49 @@ public interface EntityPersisterHelper {
      */
     EntityData.World serializeWorld();
 
+    /**
+     * @return The serialized form of the current EntityManager's and PrefabManager's data, excluding the entities:
+     *         the entity id information, component type table and prefabs. Streamed saves write this ahead of the
+     *         individual entities.
+     */
+    EntityData.World serializeWorldHeader();
+
+    /**
+     * @param entityIds
+     * @return The changes to the current EntityManager's data for an incremental save: the entity id information,
+     *         a component type table of just the types the entities use, and the current state of each of the given
+     *         entities that still exists. Destroyed entities are recorded by their ids being freed.
+     */
+    EntityData.World serializeWorldChanges(TIntSet entityIds);
+
     /**
      * @param entity
      * @return The message for a single Entity
      */
     EntityData.Entity serializeEntity(EntityRef entity);
 
+    /**
+     * Serializes an entity from its components, such as copies taken for a snapshot of the world. This does not use
+     * the EntityManager, so it is safe to call away from the main thread.
+     *
+     * @param id
+     * @param components
+     * @return The message for a single Entity
+     */
+    EntityData.Entity serializeEntity(int id, Iterable<Component> components);
+
+    /**
+     * Serializes an entity from its components and those it still holds in their serialized form, as gathered by
+     * {@link PersistableEntityManager#collectComponents}. Serialized components are written as they are where their
+     * data still holds, and are otherwise deserialized and serialized again. This does not use the EntityManager.
+     *
+     * @param id
+     * @param components
+     * @param serializedComponents
+     * @return The message for a single Entity
+     */
+    EntityData.Entity serializeEntity(int id, Iterable<Component> components, Iterable<? extends SerializedComponent> serializedComponents);
+
     /**
      * @param prefab
      * @return The message for a single Prefab
@@ -43,8 +83,28 @@ public interface EntityPersisterHelper {
      */
     void deserializeWorld(EntityData.World world);
 
+    /**
+     * Deserializes everything but the entities of a world message, applying it to the current EntityManager. The
+     * entities can then be deserialized one at a time.
+     *
+     * @param header
+     */
+    void deserializeWorldHeader(EntityData.World header);
+
     EntityRef deserializeEntity(EntityData.Entity entityData);
 
+    /**
+     * Deserializes length-delimited entity messages until the end of the stream, applying them to the current
+     * EntityManager. The world header must have been deserialized first. Entities are decoded on worker threads and
+     * added in batches; no events are sent until every entity is loaded, then each entity receives an
+     * AddComponentEvent.
+     *
+     * @param in
+     * @param changes Incremental changes that replace the entities of the stream, or null
+     * @throws IOException
+     */
+    void deserializeEntities(InputStream in, EntityChangeLog changes) throws IOException;
+
     Prefab deserializePrefab(EntityData.Prefab prefabData);
 
     /**
@@ -60,14 +120,14 @@ public interface EntityPersisterHelper {
     Component deserializeComponent(EntityData.Component componentData);
 
     /**
-     * @return Should serialization use a lookup table to map component types to indexes. This saves space in the
-     *         final result, but reduces readability of text formats
+     * @return Should serialization use a lookup table to map component types and their fields to indexes. This saves
+     *         space in the final result, but reduces readability of text formats. Enabled by default.
      */
     boolean isUsingLookupTables();
 
     /**
-     * Sets whether serialization should use a lookup table to map component types to indexes. This saves space in
-     * the final result, but reduces readability of text formats
+     * Sets whether serialization should use a lookup table to map component types and their fields to indexes. This
+     * saves space in the final result, but reduces readability of text formats
      *
      * @param enabled
      */
@@ -88,7 +148,7 @@ public interface EntityPersisterHelper {
      */
     public void clearComponentTypeIdTable();
 
-    public EntityManager getEntityManager();
+    public PersistableEntityManager getEntityManager();
 
     public PrefabManager getPrefabManager();
 
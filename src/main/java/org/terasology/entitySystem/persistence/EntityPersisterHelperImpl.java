@@ -3,7 +3,15 @@ package org.terasology.entitySystem.persistence;
 import com.google.common.base.Objects;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.set.TIntSet;
 import org.terasology.entitySystem.*;
 import org.terasology.entitySystem.metadata.ComponentLibrary;
 import org.terasology.entitySystem.metadata.ComponentMetadata;
@@ -11,10 +19,14 @@ import org.terasology.entitySystem.metadata.ComponentUtil;
 import org.terasology.entitySystem.metadata.FieldMetadata;
 import org.terasology.protobuf.EntityData;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,9 +40,16 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
     private PrefabManager prefabManager;
     private PersistableEntityManager entityManager;
 
-    private boolean useLookupTables = false;
+    private boolean useLookupTables = true;
 
     BiMap<Integer, Class<? extends Component>> componentIdTable = HashBiMap.create();
+    /* The fields of each component type of the save being read, indexed by type id and then field id */
+    private FieldMetadata[][] fieldIdTable = new FieldMetadata[0][];
+    /* Identifies the component type table in use. Components kept serialized since loading can only be written as
+     * they are if the type table they were read with is still the one in use, or if they do not use ids */
+    private Object currentTable;
+    private Object lastReadTable;
+    private List<String> lastReadTableEntries = ImmutableList.of();
 
     public EntityPersisterHelperImpl(ComponentLibrary componentLibrary) {
         this.componentLibrary = componentLibrary;
@@ -45,6 +64,62 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
     @Override
     public EntityData.World serializeWorld() {
         final EntityData.World.Builder world = EntityData.World.newBuilder();
+        writeHeader(world);
+
+        for (EntityRef entity : entityManager.iteratorEntities()) {
+            world.addEntity(serializeEntity(entity));
+        }
+        return world.build();
+    }
+
+    @Override
+    public EntityData.World serializeWorldHeader() {
+        EntityData.World.Builder world = EntityData.World.newBuilder();
+        writeHeader(world);
+        return world.build();
+    }
+
+    @Override
+    public EntityData.World serializeWorldChanges(TIntSet entityIds) {
+        EntityData.World.Builder world = EntityData.World.newBuilder();
+        writeIdInfo(world);
+
+        final TIntList ids = new TIntArrayList();
+        final List<List<Component>> entityComponents = Lists.newArrayList();
+        final List<List<SerializedComponent>> entitySerializedComponents = Lists.newArrayList();
+        final Set<Class<? extends Component>> usedTypes = Sets.newHashSet();
+        entityIds.forEach(new TIntProcedure() {
+            public boolean execute(int id) {
+                if (!entityManager.createEntityRefWithId(id).exists()) {
+                    return true;
+                }
+                List<Component> components = Lists.newArrayList();
+                List<SerializedComponent> serializedComponents = Lists.newArrayList();
+                entityManager.collectComponents(id, components, serializedComponents);
+                for (Component component : components) {
+                    usedTypes.add(component.getClass());
+                }
+                for (SerializedComponent serializedComponent : serializedComponents) {
+                    usedTypes.add(serializedComponent.getType());
+                }
+                ids.add(id);
+                entityComponents.add(components);
+                entitySerializedComponents.add(serializedComponents);
+                return true;
+            }
+        });
+
+        // A segment only holds a few entities, so its table only lists the component types they use
+        if (isUsingLookupTables()) {
+            writeComponentTypeTable(world, usedTypes);
+        }
+        for (int i = 0; i < ids.size(); ++i) {
+            world.addEntity(serializeEntity(ids.get(i), entityComponents.get(i), entitySerializedComponents.get(i)));
+        }
+        return world.build();
+    }
+
+    private void writeHeader(EntityData.World.Builder world) {
         writeIdInfo(world);
 
         if (isUsingLookupTables()) {
@@ -54,22 +129,33 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
         for (Prefab prefab : prefabManager.listPrefabs()) {
             world.addPrefab(serializePrefab(prefab));
         }
-
-        for (EntityRef entity : entityManager.iteratorEntities()) {
-            world.addEntity(serializeEntity(entity));
-        }
-        return world.build();
     }
 
     @Override
     public EntityData.Entity serializeEntity(EntityRef entityRef) {
-        EntityInfoComponent entityInfo = entityRef.getComponent(EntityInfoComponent.class);
-        if (entityInfo != null) {
-            if (entityInfo.parentPrefab != null && prefabManager.exists(entityInfo.parentPrefab)) {
-                return serializeEntityDelta(entityRef, prefabManager.getPrefab(entityInfo.parentPrefab));
+        List<Component> components = Lists.newArrayList();
+        List<SerializedComponent> serializedComponents = Lists.newArrayList();
+        entityManager.collectComponents(entityRef.getId(), components, serializedComponents);
+        return serializeEntity(entityRef.getId(), components, serializedComponents);
+    }
+
+    @Override
+    public EntityData.Entity serializeEntity(int id, Iterable<Component> components) {
+        return serializeEntity(id, components, Collections.<SerializedComponent>emptyList());
+    }
+
+    @Override
+    public EntityData.Entity serializeEntity(int id, Iterable<Component> components, Iterable<? extends SerializedComponent> serializedComponents) {
+        for (Component component : components) {
+            if (component instanceof EntityInfoComponent) {
+                EntityInfoComponent entityInfo = (EntityInfoComponent) component;
+                if (entityInfo.parentPrefab != null && prefabManager.exists(entityInfo.parentPrefab)) {
+                    return serializeEntityDelta(id, components, serializedComponents, prefabManager.getPrefab(entityInfo.parentPrefab));
+                }
+                break;
             }
         }
-        return serializeEntityFull(entityRef);
+        return serializeEntityFull(id, components, serializedComponents);
     }
 
     @Override
@@ -80,8 +166,9 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
             prefabData.addParentName(parent.getName());
         }
 
+        // Prefabs keep their names, so they read the same whichever save they end up in
         for (Component component : prefab.listOwnComponents()) {
-            EntityData.Component componentData = serializeComponent(component);
+            EntityData.Component componentData = serializeComponent(component, false);
             if (componentData != null) {
                 prefabData.addComponent(componentData);
             }
@@ -91,19 +178,32 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
 
     @Override
     public EntityData.Component serializeComponent(Component component) {
+        return serializeComponent(component, useLookupTables);
+    }
+
+    /**
+     * @param component
+     * @param useIds Whether to identify the component type and its fields by their ids in the component type table,
+     *               rather than by name. Names are used for types missing from the table.
+     * @return The serialized component, or null if it is of an unregistered type
+     */
+    private EntityData.Component serializeComponent(Component component, boolean useIds) {
         ComponentMetadata<?> componentMetadata = componentLibrary.getMetadata(component.getClass());
         if (componentMetadata == null) {
             logger.log(Level.SEVERE, "Unregistered component type: " + component.getClass());
             return null;
         }
         EntityData.Component.Builder componentMessage = EntityData.Component.newBuilder();
-        if (useLookupTables) {
-            componentMessage.setTypeIndex(componentIdTable.inverse().get(component.getClass()));
+        Integer typeId = (useIds) ? componentIdTable.inverse().get(component.getClass()) : null;
+        if (typeId != null) {
+            componentMessage.setTypeIndex(typeId);
         } else {
             componentMessage.setType(ComponentUtil.getComponentClassName(component));
         }
 
+        int fieldId = -1;
         for (FieldMetadata field : componentMetadata.iterateFields()) {
+            fieldId++;
             try {
                 Object rawValue = field.getValue(component);
                 if (rawValue == null) continue;
@@ -111,7 +211,7 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
                 EntityData.Value value = field.serialize(rawValue);
                 if (value == null) continue;
 
-                componentMessage.addField(EntityData.NameValue.newBuilder().setName(field.getName()).setValue(value).build());
+                componentMessage.addField(newNameValue(field, fieldId, typeId != null).setValue(value).build());
             } catch (IllegalAccessException e) {
                 logger.log(Level.SEVERE, "Exception during serializing component type: " + component.getClass(), e);
             } catch (InvocationTargetException e) {
@@ -124,53 +224,123 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
 
     @Override
     public void deserializeWorld(EntityData.World world) {
+        deserializeWorldHeader(world);
+
+        for (EntityData.Entity entityData : world.getEntityList()) {
+            deserializeEntity(entityData);
+        }
+    }
+
+    @Override
+    public void deserializeWorldHeader(EntityData.World world) {
         entityManager.setNextId(world.getNextEntityId());
         for (Integer deadId : world.getFreedEntityIdList()) {
             entityManager.getFreedIds().add(deadId);
         }
 
+        if (world.getComponentClassCount() > 0) {
+            readComponentTypeTable(world);
+        }
+
         for (EntityData.Prefab prefabData : world.getPrefabList()) {
             if (!prefabManager.exists(prefabData.getName())) {
                 deserializePrefab(prefabData);
             }
         }
-
-        for (int index = 0; index < world.getComponentClassCount(); ++index) {
-            ComponentMetadata componentMetadata = componentLibrary.getMetadata(world.getComponentClass(index));
-            if (componentMetadata != null) {
-                componentIdTable.put(index, componentMetadata.getType());
-            }
-        }
-
-        for (EntityData.Entity entityData : world.getEntityList()) {
-            deserializeEntity(entityData);
-        }
     }
 
     @Override
     public EntityRef deserializeEntity(EntityData.Entity entityData) {
         EntityRef entity = entityManager.createEntityRefWithId(entityData.getId());
+        for (Component component : decodeEntity(entityData, false, false).components.values()) {
+            entity.addComponent(component);
+        }
+        return entity;
+    }
+
+    @Override
+    public void deserializeEntities(InputStream in, EntityChangeLog changes) throws IOException {
+        new EntityStreamLoader(this, changes).load(in);
+    }
+
+    /**
+     * Deserializes the components of an entity without touching the entity manager. Once the world header has been
+     * deserialized this is safe to call from any thread, as long as components referencing assets are deferred.
+     *
+     * <p/>
+     * When keeping components serialized, only the entity info and the components that reference assets are
+     * deserialized; the rest are left as {@link SerializedComponent}s, to be deserialized when first used.
+     *
+     * @param entityData
+     * @param deferAssets    Whether to leave the components that reference assets to {@link #completeEntity}
+     * @param keepSerialized Whether to keep the components serialized
+     * @return The deserialized entity
+     */
+    DecodedEntity decodeEntity(EntityData.Entity entityData, boolean deferAssets, boolean keepSerialized) {
+        DecodedEntity result = new DecodedEntity(entityData.getId());
+        String parentPrefab = null;
+        PrefabTemplate template = null;
+        Map<Class<? extends Component>, Integer> templateComponents = Maps.newHashMap();
         if (entityData.hasParentPrefab() && !entityData.getParentPrefab().isEmpty() && prefabManager.exists(entityData.getParentPrefab())) {
-            Prefab prefab = prefabManager.getPrefab(entityData.getParentPrefab());
-            for (Component component : prefab.listComponents()) {
-                String componentName = ComponentUtil.getComponentClassName(component.getClass());
-                if (!containsIgnoreCase(componentName, entityData.getRemovedComponentList())) {
-                    entity.addComponent(componentLibrary.copy(component));
+            parentPrefab = entityData.getParentPrefab();
+            template = prefabManager.getTemplate(prefabManager.getPrefab(parentPrefab));
+            for (int i = 0; i < template.getComponentCount(); ++i) {
+                Class<? extends Component> componentType = template.getComponentType(i);
+                if (componentType == EntityInfoComponent.class || !containsIgnoreCase(ComponentUtil.getComponentClassName(componentType), entityData.getRemovedComponentList())) {
+                    if (keepSerialized && isKeptSerialized(componentType)) {
+                        templateComponents.put(componentType, i);
+                    } else {
+                        result.components.put(componentType, template.createComponent(i));
+                    }
                 }
             }
-            entity.addComponent(new EntityInfoComponent(entityData.getParentPrefab()));
         }
         for (EntityData.Component componentData : entityData.getComponentList()) {
             Class<? extends Component> componentClass = getComponentClass(componentData);
             if (componentClass == null) continue;
 
-            if (!entity.hasComponent(componentClass)) {
-                entity.addComponent(deserializeComponent(componentData));
+            if (keepSerialized && isKeptSerialized(componentClass)) {
+                Integer templateIndex = templateComponents.remove(componentClass);
+                result.serializedComponents.add(new StoredComponent(componentClass, componentData, parentPrefab, (templateIndex != null) ? template : null, (templateIndex != null) ? templateIndex : 0));
+            } else if (deferAssets && componentLibrary.getMetadata(componentClass).referencesAssets()) {
+                result.deferredComponents.add(componentData);
             } else {
-                deserializeComponentOnto(entity.getComponent(componentClass), componentData);
+                decodeComponent(result, componentClass, componentData);
             }
         }
-        return entity;
+        // Components the entity has unchanged from its prefab
+        for (Map.Entry<Class<? extends Component>, Integer> entry : templateComponents.entrySet()) {
+            result.serializedComponents.add(new StoredComponent(entry.getKey(), EntityData.Component.getDefaultInstance(), parentPrefab, template, entry.getValue()));
+        }
+        return result;
+    }
+
+    private boolean isKeptSerialized(Class<? extends Component> componentClass) {
+        return componentClass != EntityInfoComponent.class && !componentLibrary.getMetadata(componentClass).referencesAssets();
+    }
+
+    /**
+     * Deserializes the components deferred by {@link #decodeEntity}. Must be called on the main thread.
+     *
+     * @param entity
+     */
+    void completeEntity(DecodedEntity entity) {
+        for (EntityData.Component componentData : entity.deferredComponents) {
+            decodeComponent(entity, getComponentClass(componentData), componentData);
+        }
+        entity.deferredComponents.clear();
+    }
+
+    private void decodeComponent(DecodedEntity entity, Class<? extends Component> componentClass, EntityData.Component componentData) {
+        Component existing = entity.components.get(componentClass);
+        if (existing == null) {
+            Component component = deserializeComponent(componentData);
+            if (component != null) {
+                entity.components.put(componentClass, component);
+            }
+        } else {
+            deserializeComponentOnto(existing, componentData);
+        }
     }
 
     @Override
@@ -284,21 +454,81 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
 
     @Override
     public void setComponentTypeIdTable(Map<Integer, Class<? extends Component>> componentIdTable) {
+        currentTable = null;
         this.componentIdTable.clear();
         this.componentIdTable.putAll(componentIdTable);
+
+        // Without a table from a save, field ids are the positions of the fields in the current metadata
+        int size = 0;
+        for (Integer typeId : componentIdTable.keySet()) {
+            size = Math.max(size, typeId + 1);
+        }
+        FieldMetadata[][] fieldTable = new FieldMetadata[size][];
+        for (Map.Entry<Integer, Class<? extends Component>> entry : componentIdTable.entrySet()) {
+            ComponentMetadata<?> componentMetadata = componentLibrary.getMetadata(entry.getValue());
+            if (componentMetadata != null) {
+                fieldTable[entry.getKey()] = Iterables.toArray(componentMetadata.iterateFields(), FieldMetadata.class);
+            }
+        }
+        fieldIdTable = fieldTable;
     }
 
     @Override
     public void clearComponentTypeIdTable() {
         this.componentIdTable.clear();
+        fieldIdTable = new FieldMetadata[0][];
+        currentTable = null;
     }
 
     private void writeComponentTypeTable(EntityData.World.Builder world) {
+        writeComponentTypeTable(world, null);
+    }
+
+    /**
+     * @param world
+     * @param types The component types to list, or null for every registered type
+     */
+    private void writeComponentTypeTable(EntityData.World.Builder world, Set<Class<? extends Component>> types) {
+        componentIdTable.clear();
+        List<String> entries = Lists.newArrayList();
         for (ComponentMetadata<?> componentMetadata : componentLibrary) {
+            if (types != null && !types.contains(componentMetadata.getType())) {
+                continue;
+            }
             int index = componentIdTable.size();
             componentIdTable.put(index, componentMetadata.getType());
-            world.addComponentClass(ComponentUtil.getComponentClassName(componentMetadata.getType()));
+            entries.add(ComponentTableEntry.create(componentMetadata).toString());
         }
+        world.addAllComponentClass(entries);
+        currentTable = (entries.equals(lastReadTableEntries)) ? lastReadTable : new Object();
+    }
+
+    private void readComponentTypeTable(EntityData.World world) {
+        componentIdTable.clear();
+        FieldMetadata[][] fieldTable = new FieldMetadata[world.getComponentClassCount()][];
+        for (int index = 0; index < world.getComponentClassCount(); ++index) {
+            ComponentTableEntry entry = ComponentTableEntry.parse(world.getComponentClass(index));
+            ComponentMetadata<?> componentMetadata = componentLibrary.getMetadata(entry.getType());
+            if (componentMetadata != null) {
+                componentIdTable.put(index, componentMetadata.getType());
+                List<String> fieldNames = entry.getFieldNames();
+                fieldTable[index] = new FieldMetadata[fieldNames.size()];
+                for (int fieldId = 0; fieldId < fieldNames.size(); ++fieldId) {
+                    fieldTable[index][fieldId] = componentMetadata.getField(fieldNames.get(fieldId));
+                }
+            }
+        }
+        fieldIdTable = fieldTable;
+        lastReadTableEntries = ImmutableList.copyOf(world.getComponentClassList());
+        lastReadTable = new Object();
+        currentTable = lastReadTable;
+    }
+
+    private EntityData.NameValue.Builder newNameValue(FieldMetadata field, int fieldId, boolean useId) {
+        if (useId) {
+            return EntityData.NameValue.newBuilder().setNameIndex(fieldId);
+        }
+        return EntityData.NameValue.newBuilder().setName(field.getName());
     }
 
     private void writeIdInfo(final EntityData.World.Builder world) {
@@ -332,10 +562,10 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
         return null;
     }
 
-    private EntityData.Entity serializeEntityFull(EntityRef entityRef) {
+    private EntityData.Entity serializeEntityFull(int id, Iterable<Component> components, Iterable<? extends SerializedComponent> serializedComponents) {
         EntityData.Entity.Builder entity = EntityData.Entity.newBuilder();
-        entity.setId(entityRef.getId());
-        for (Component component : entityRef.iterateComponents()) {
+        entity.setId(id);
+        for (Component component : components) {
             if (component.getClass().equals(EntityInfoComponent.class))
                 continue;
 
@@ -344,14 +574,22 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
                 entity.addComponent(componentData);
             }
         }
+        for (SerializedComponent serializedComponent : serializedComponents) {
+            EntityData.Component componentData = serializeComponent(serializedComponent, null);
+            if (componentData != null) {
+                entity.addComponent(componentData);
+            }
+        }
         return entity.build();
     }
 
-    private EntityData.Entity serializeEntityDelta(EntityRef entityRef, Prefab prefab) {
+    private EntityData.Entity serializeEntityDelta(int id, Iterable<Component> components, Iterable<? extends SerializedComponent> serializedComponents, Prefab prefab) {
         EntityData.Entity.Builder entity = EntityData.Entity.newBuilder();
-        entity.setId(entityRef.getId());
+        entity.setId(id);
         entity.setParentPrefab(prefab.getName());
-        for (Component component : entityRef.iterateComponents()) {
+        Set<Class<? extends Component>> componentTypes = Sets.newHashSet();
+        for (Component component : components) {
+            componentTypes.add(component.getClass());
             if (component.getClass().equals(EntityInfoComponent.class))
                 continue;
 
@@ -367,14 +605,45 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
                 entity.addComponent(componentData);
             }
         }
+        for (SerializedComponent serializedComponent : serializedComponents) {
+            componentTypes.add(serializedComponent.getType());
+            EntityData.Component componentData = serializeComponent(serializedComponent, prefab);
+            if (componentData != null) {
+                entity.addComponent(componentData);
+            }
+        }
         for (Component prefabComponent : prefab.listComponents()) {
-            if (!entityRef.hasComponent(prefabComponent.getClass())) {
+            if (!componentTypes.contains(prefabComponent.getClass())) {
                 entity.addRemovedComponent(ComponentUtil.getComponentClassName(prefabComponent.getClass()));
             }
         }
         return entity.build();
     }
 
+    /**
+     * Serializes a component that is still held in its serialized form. Components kept serialized since loading are
+     * written as they were read while they still mean the same - when the entity is saved against the same prefab,
+     * and either the same component type table is in use or the component does not use ids.
+     *
+     * @param serializedComponent
+     * @param prefab              The prefab the entity is being saved against, or null
+     * @return The serialized component, or null if there is nothing to write
+     */
+    private EntityData.Component serializeComponent(SerializedComponent serializedComponent, Prefab prefab) {
+        if (serializedComponent instanceof StoredComponent) {
+            StoredComponent storedComponent = (StoredComponent) serializedComponent;
+            if (storedComponent.isUnchangedFor(prefab)) {
+                return storedComponent.getData();
+            }
+        }
+        Component component = serializedComponent.deserialize();
+        Component prefabComponent = (prefab != null) ? prefab.getComponent(component.getClass()) : null;
+        if (prefabComponent == null) {
+            return serializeComponent(component);
+        }
+        return serializeComponent(prefabComponent, component);
+    }
+
     private EntityData.Component serializeComponent(Component base, Component delta) {
         ComponentMetadata<?> componentMetadata = componentLibrary.getMetadata(base.getClass());
         if (componentMetadata == null) {
@@ -383,21 +652,24 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
         }
 
         EntityData.Component.Builder componentMessage = EntityData.Component.newBuilder();
-        if (useLookupTables) {
-            componentMessage.setTypeIndex(componentIdTable.inverse().get(base.getClass()));
+        Integer typeId = (useLookupTables) ? componentIdTable.inverse().get(base.getClass()) : null;
+        if (typeId != null) {
+            componentMessage.setTypeIndex(typeId);
         } else {
             componentMessage.setType(ComponentUtil.getComponentClassName(delta));
         }
 
         boolean changed = false;
+        int fieldId = -1;
         for (FieldMetadata field : componentMetadata.iterateFields()) {
+            fieldId++;
             try {
                 Object origValue = field.getValue(base);
                 Object deltaValue = field.getValue(delta);
 
                 if (!Objects.equal(origValue, deltaValue)) {
                     EntityData.Value value = field.serialize(deltaValue);
-                    componentMessage.addField(EntityData.NameValue.newBuilder().setName(field.getName()).setValue(value).build());
+                    componentMessage.addField(newNameValue(field, fieldId, typeId != null).setValue(value).build());
                     changed = true;
                 }
             } catch (IllegalAccessException e) {
@@ -424,9 +696,30 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
     }
 
     private Component deserializeOnto(Component component, EntityData.Component componentData, ComponentMetadata componentMetadata) {
+        return deserializeOnto(component, componentData, componentMetadata, getFieldTable(componentData));
+    }
+
+    /**
+     * @param componentData
+     * @return The fields of the component's type, indexed by field id, or null if the component does not use ids
+     */
+    private FieldMetadata[] getFieldTable(EntityData.Component componentData) {
+        if (componentData.hasTypeIndex() && componentData.getTypeIndex() < fieldIdTable.length) {
+            return fieldIdTable[componentData.getTypeIndex()];
+        }
+        return null;
+    }
+
+    private Component deserializeOnto(Component component, EntityData.Component componentData, ComponentMetadata componentMetadata, FieldMetadata[] fieldTable) {
         try {
             for (EntityData.NameValue field : componentData.getFieldList()) {
-                FieldMetadata fieldInfo = componentMetadata.getField(field.getName());
+                FieldMetadata fieldInfo;
+                if (field.hasNameIndex()) {
+                    int fieldId = field.getNameIndex();
+                    fieldInfo = (fieldTable != null && fieldId < fieldTable.length) ? fieldTable[fieldId] : null;
+                } else {
+                    fieldInfo = componentMetadata.getField(field.getName());
+                }
                 if (fieldInfo == null)
                     continue;
 
@@ -445,6 +738,9 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
     }
 
     private boolean containsIgnoreCase(String componentName, List<String> removedComponentList) {
+        if (removedComponentList.isEmpty()) {
+            return false;
+        }
         String lowerCaseName = componentName.toLowerCase(Locale.ENGLISH);
         for (String removed : removedComponentList) {
             if (lowerCaseName.equals(removed.toLowerCase(Locale.ENGLISH))) {
@@ -454,5 +750,96 @@ public class EntityPersisterHelperImpl implements EntityPersisterHelper {
         return false;
     }
 
+    /**
+     * An entity deserialized apart from the entity manager: its id, its components, the components kept serialized,
+     * and the data of any components that still have to be deserialized on the main thread.
+     */
+    static final class DecodedEntity {
+        final int id;
+        final Map<Class<? extends Component>, Component> components = Maps.newLinkedHashMap();
+        final List<SerializedComponent> serializedComponents = Lists.newArrayList();
+        final List<EntityData.Component> deferredComponents = Lists.newArrayList();
 
+        DecodedEntity(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * A loaded component kept as it was read. It holds on to the field table it was read with, so it can be
+     * deserialized whatever table is in use later, and to the prefab component it is a delta of, if any.
+     */
+    private final class StoredComponent implements SerializedComponent {
+        private final Class<? extends Component> type;
+        private final EntityData.Component data;
+        private final FieldMetadata[] fieldTable;
+        private final Object table;
+        private final boolean usesIds;
+        private final String parentPrefab;
+        private final PrefabTemplate template;
+        private final int templateIndex;
+
+        /**
+         * @param type
+         * @param data
+         * @param parentPrefab  The name of the prefab the entity was loaded from, or null
+         * @param template      The template holding the prefab component the data is a delta of, or null
+         * @param templateIndex The index of the prefab component in the template
+         */
+        StoredComponent(Class<? extends Component> type, EntityData.Component data, String parentPrefab, PrefabTemplate template, int templateIndex) {
+            this.type = type;
+            this.data = data;
+            this.fieldTable = getFieldTable(data);
+            this.table = currentTable;
+            this.usesIds = data.hasTypeIndex() || usesFieldIds(data);
+            this.parentPrefab = parentPrefab;
+            this.template = template;
+            this.templateIndex = templateIndex;
+        }
+
+        @Override
+        public Class<? extends Component> getType() {
+            return type;
+        }
+
+        @Override
+        public Component deserialize() {
+            ComponentMetadata<?> componentMetadata = componentLibrary.getMetadata(type);
+            Component component = (template != null) ? template.createComponent(templateIndex) : componentMetadata.newInstance();
+            // A component that fails part way keeps the fields read so far, as its entity already counts it
+            deserializeOnto(component, data, componentMetadata, fieldTable);
+            return component;
+        }
+
+        /**
+         * @param prefab The prefab the entity is being saved against, or null
+         * @return Whether the data still describes the component when saved against the prefab
+         */
+        boolean isUnchangedFor(Prefab prefab) {
+            String prefabName = (prefab != null) ? prefab.getName() : null;
+            if (!Objects.equal(parentPrefab, prefabName)) {
+                return false;
+            }
+            return !usesIds || (useLookupTables && table != null && table == currentTable);
+        }
+
+        /**
+         * @return The data to save, or null if the component is the same as its prefab's
+         */
+        EntityData.Component getData() {
+            if (template != null && data.getFieldCount() == 0) {
+                return null;
+            }
+            return data;
+        }
+
+        private boolean usesFieldIds(EntityData.Component data) {
+            for (EntityData.NameValue field : data.getFieldList()) {
+                if (field.hasNameIndex()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
\ No newline at end of file
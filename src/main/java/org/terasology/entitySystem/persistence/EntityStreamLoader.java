@@ -0,0 +1,197 @@
+package org.terasology.entitySystem.persistence;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.CodedInputStream;
+import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.EventSystem;
+import org.terasology.entitySystem.PersistableEntityManager;
+import org.terasology.entitySystem.Prefab;
+import org.terasology.entitySystem.PrefabManager;
+import org.terasology.entitySystem.event.AddComponentEvent;
+import org.terasology.protobuf.EntityData;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a stream of length-delimited entity messages into the entity manager of a persister helper.
+ * <p/>
+ * The calling thread only splits the stream into raw messages. Batches of messages are parsed, and their components
+ * deserialized, on worker threads; the calling thread then adds the finished batches to the entity manager in stream
+ * order. Components referencing assets are deserialized when their batch is added, as assets can only be loaded on
+ * the main thread. No events are sent while loading: once every entity is in place, each receives an
+ * AddComponentEvent.
+ * <p/>
+ * When loading with an incremental change log, entities of the stream that the log changed are skipped, and the
+ * log's entities are added after the stream.
+ * <p/>
+ * With {@link #KEEP_SERIALIZED_PROPERTY} set, the components of the stream's entities are left serialized, apart
+ * from the entity info and the components that reference assets, and are deserialized when first used. Components
+ * that are never used are written back out unchanged when saving. This only takes effect with entity managers that
+ * support serialized components.
+ */
+class EntityStreamLoader {
+    /**
+     * System property that, when set, decodes the entities on the loading thread rather than on worker threads.
+     */
+    public static final String SERIAL_LOAD_PROPERTY = "terasology.persistence.serialLoad";
+
+    /**
+     * System property that, when set, keeps loaded components serialized until they are first used.
+     */
+    public static final String KEEP_SERIALIZED_PROPERTY = "terasology.persistence.lazyComponents";
+
+    private static final int BATCH_SIZE = 256;
+    /* How many batches each worker may have queued or finished ahead of the calling thread */
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private final EntityPersisterHelperImpl persisterHelper;
+    private final PersistableEntityManager entityManager;
+    private final EntityChangeLog changes;
+    private final boolean keepSerialized = Boolean.getBoolean(KEEP_SERIALIZED_PROPERTY);
+    private final List<EntityRef> loadedEntities = Lists.newArrayList();
+
+    /**
+     * @param persisterHelper
+     * @param changes         The incremental changes to apply over the stream, or null
+     */
+    public EntityStreamLoader(EntityPersisterHelperImpl persisterHelper, EntityChangeLog changes) {
+        this.persisterHelper = persisterHelper;
+        this.entityManager = persisterHelper.getEntityManager();
+        this.changes = changes;
+    }
+
+    public void load(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+
+        // Compile the prefab templates up front, so the workers only read them
+        PrefabManager prefabManager = persisterHelper.getPrefabManager();
+        for (Prefab prefab : prefabManager.listPrefabs()) {
+            prefabManager.getTemplate(prefab);
+        }
+
+        if (Boolean.getBoolean(SERIAL_LOAD_PROPERTY)) {
+            List<byte[]> batch;
+            while (!(batch = readBatch(dataIn)).isEmpty()) {
+                addEntities(decode(batch, false));
+            }
+        } else {
+            loadParallel(dataIn);
+        }
+        if (changes != null) {
+            List<EntityPersisterHelperImpl.DecodedEntity> changedEntities = Lists.newArrayList();
+            for (EntityData.Entity entityData : changes.getEntities()) {
+                changedEntities.add(persisterHelper.decodeEntity(entityData, false, false));
+            }
+            addEntities(changedEntities);
+        }
+
+        EventSystem eventSystem = entityManager.getEventSystem();
+        if (eventSystem != null) {
+            for (EntityRef entity : loadedEntities) {
+                eventSystem.send(entity, AddComponentEvent.newInstance());
+            }
+        }
+    }
+
+    private void loadParallel(DataInputStream in) throws IOException {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new LoaderThreadFactory());
+        try {
+            Deque<Future<List<EntityPersisterHelperImpl.DecodedEntity>>> pending = new ArrayDeque<Future<List<EntityPersisterHelperImpl.DecodedEntity>>>();
+            int maxPending = threads * BATCHES_PER_THREAD;
+            List<byte[]> batch;
+            while (!(batch = readBatch(in)).isEmpty()) {
+                if (pending.size() >= maxPending) {
+                    addEntities(getResult(pending.removeFirst()));
+                }
+                final List<byte[]> messages = batch;
+                pending.addLast(executor.submit(new Callable<List<EntityPersisterHelperImpl.DecodedEntity>>() {
+                    @Override
+                    public List<EntityPersisterHelperImpl.DecodedEntity> call() throws IOException {
+                        return decode(messages, true);
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                addEntities(getResult(pending.removeFirst()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<byte[]> readBatch(DataInputStream in) throws IOException {
+        List<byte[]> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        while (batch.size() < BATCH_SIZE) {
+            int firstByte = in.read();
+            if (firstByte == -1) {
+                break;
+            }
+            byte[] message = new byte[CodedInputStream.readRawVarint32(firstByte, in)];
+            in.readFully(message);
+            batch.add(message);
+        }
+        return batch;
+    }
+
+    private List<EntityPersisterHelperImpl.DecodedEntity> decode(List<byte[]> messages, boolean deferAssets) throws IOException {
+        List<EntityPersisterHelperImpl.DecodedEntity> result = Lists.newArrayListWithCapacity(messages.size());
+        for (byte[] message : messages) {
+            EntityData.Entity entityData = EntityData.Entity.parseFrom(message);
+            if (changes == null || !changes.isChanged(entityData.getId())) {
+                result.add(persisterHelper.decodeEntity(entityData, deferAssets, keepSerialized));
+            }
+        }
+        return result;
+    }
+
+    private void addEntities(List<EntityPersisterHelperImpl.DecodedEntity> entities) {
+        for (EntityPersisterHelperImpl.DecodedEntity entity : entities) {
+            persisterHelper.completeEntity(entity);
+            EntityRef entityRef = entityManager.createEntityWithId(entity.id, entity.components.values(), entity.serializedComponents);
+            if (entityRef.exists()) {
+                loadedEntities.add(entityRef);
+            }
+        }
+    }
+
+    private List<EntityPersisterHelperImpl.DecodedEntity> getResult(Future<List<EntityPersisterHelperImpl.DecodedEntity>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading entities", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to load entities", e.getCause());
+        }
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Entity Loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package org.terasology.entitySystem.persistence;
 
 import com.google.protobuf.TextFormat;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import org.terasology.entitySystem.EventSystem;
 import org.terasology.entitySystem.EntityManager;
+import org.terasology.entitySystem.EntityRef;
 import org.terasology.entitySystem.PersistableEntityManager;
+import org.terasology.entitySystem.event.SaveCompleteEvent;
+import org.terasology.entitySystem.event.SaveProgressEvent;
 import org.terasology.protobuf.EntityData;
 
 import java.io.*;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +41,11 @@ public class WorldPersister {
             }
         },
         Text {
+            @Override
+            boolean usesLookupTables() {
+                return false;
+            }
+
             @Override
             void save(OutputStream out, EntityData.World world) throws IOException {
                 BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(out));
@@ -44,6 +62,11 @@ public class WorldPersister {
             }
         },
         JSON {
+            @Override
+            boolean usesLookupTables() {
+                return false;
+            }
+
             @Override
             void save(OutputStream out, EntityData.World world) throws IOException {
                 BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(out));
@@ -56,33 +79,398 @@ public class WorldPersister {
                 BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(in));
                 return EntityDataJSONFormat.readWorld(bufferedReader);
             }
+
+            @Override
+            void save(OutputStream out, EntityPersisterHelper persisterHelper) throws IOException {
+                BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(out));
+                EntityDataJSONFormat.WorldWriter worldWriter = new EntityDataJSONFormat.WorldWriter(bufferedWriter, true);
+                worldWriter.writeHeader(persisterHelper.serializeWorldHeader());
+                for (EntityRef entity : persisterHelper.getEntityManager().iteratorEntities()) {
+                    worldWriter.writeEntity(persisterHelper.serializeEntity(entity));
+                }
+                worldWriter.finish();
+            }
+
+            @Override
+            void load(InputStream in, final EntityPersisterHelper persisterHelper) throws IOException {
+                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(in));
+                EntityDataJSONFormat.readWorld(bufferedReader, new EntityDataJSONFormat.WorldVisitor() {
+                    @Override
+                    public void visitHeader(EntityData.World header) {
+                        persisterHelper.deserializeWorldHeader(header);
+                    }
+
+                    @Override
+                    public void visitEntity(EntityData.Entity entity) {
+                        persisterHelper.deserializeEntity(entity);
+                    }
+                });
+            }
+        },
+        /**
+         * Binary format written one entity at a time: a header world message holding everything but the entities,
+         * followed by each entity as a length-delimited message. Saving never holds more than one entity message in
+         * memory. Loading decodes the entities on worker threads.
+         */
+        Streaming {
+            @Override
+            void save(OutputStream out, EntityData.World world) throws IOException {
+                world.toBuilder().clearEntity().build().writeDelimitedTo(out);
+                for (EntityData.Entity entity : world.getEntityList()) {
+                    entity.writeDelimitedTo(out);
+                }
+                out.flush();
+            }
+
+            @Override
+            EntityData.World load(InputStream in) throws IOException {
+                EntityData.World.Builder world = readHeader(in).toBuilder();
+                EntityData.Entity entity;
+                while ((entity = EntityData.Entity.parseDelimitedFrom(in)) != null) {
+                    world.addEntity(entity);
+                }
+                return world.build();
+            }
+
+            @Override
+            void save(OutputStream out, EntityPersisterHelper persisterHelper) throws IOException {
+                save(out, persisterHelper, EntityChangeLog.NO_CHECKPOINT);
+            }
+
+            @Override
+            void save(OutputStream out, EntityPersisterHelper persisterHelper, long checkpoint) throws IOException {
+                EntityChangeLog.setCheckpoint(persisterHelper.serializeWorldHeader(), checkpoint).writeDelimitedTo(out);
+                for (EntityRef entity : persisterHelper.getEntityManager().iteratorEntities()) {
+                    persisterHelper.serializeEntity(entity).writeDelimitedTo(out);
+                }
+                out.flush();
+            }
+
+            @Override
+            void load(InputStream in, EntityPersisterHelper persisterHelper, EntityChangeLog changes) throws IOException {
+                EntityData.World header = readHeader(in);
+                persisterHelper.deserializeWorldHeader((changes != null) ? changes.applyTo(header) : header);
+                persisterHelper.deserializeEntities(in, changes);
+            }
+
+            private EntityData.World readHeader(InputStream in) throws IOException {
+                EntityData.World header = EntityData.World.parseDelimitedFrom(in);
+                if (header == null) {
+                    throw new IOException("Missing world header");
+                }
+                return header;
+            }
+        },
+        /**
+         * The Streaming format, compressed in frames of deflated data (see {@link CompressedFrameFormat}). Loading
+         * maps the file into memory and decompresses the frames on worker threads, ahead of decoding the entities.
+         * Incremental changes are not supported.
+         */
+        Compressed {
+            @Override
+            void save(OutputStream out, EntityData.World world) throws IOException {
+                CompressedFrameFormat.FrameOutputStream frames = CompressedFrameFormat.newOutputStream(out);
+                Streaming.save(frames, world);
+                frames.finish();
+            }
+
+            @Override
+            EntityData.World load(InputStream in) throws IOException {
+                return Streaming.load(CompressedFrameFormat.newInputStream(in));
+            }
+
+            @Override
+            void save(OutputStream out, EntityPersisterHelper persisterHelper) throws IOException {
+                CompressedFrameFormat.FrameOutputStream frames = CompressedFrameFormat.newOutputStream(out);
+                Streaming.save(frames, persisterHelper);
+                frames.finish();
+            }
+
+            @Override
+            void load(InputStream in, EntityPersisterHelper persisterHelper) throws IOException {
+                Streaming.load(CompressedFrameFormat.newInputStream(in), persisterHelper, null);
+            }
+
+            @Override
+            void load(File file, EntityPersisterHelper persisterHelper, EntityChangeLog changes) throws IOException {
+                InputStream in = CompressedFrameFormat.newMappedInputStream(file);
+                try {
+                    Streaming.load(in, persisterHelper, null);
+                } finally {
+                    // JAVA7: Replace with improved resource handling
+                    in.close();
+                }
+            }
         };
 
+        /**
+         * @return Whether component types and fields are saved by id rather than by name. Readable formats use names.
+         */
+        boolean usesLookupTables() {
+            return true;
+        }
+
         abstract void save(OutputStream out, EntityData.World world) throws IOException;
 
         abstract EntityData.World load(InputStream in) throws IOException;
+
+        /**
+         * Saves the current world of the persister helper. By default this serializes the whole world before saving it.
+         */
+        void save(OutputStream out, EntityPersisterHelper persisterHelper) throws IOException {
+            save(out, persisterHelper.serializeWorld());
+        }
+
+        /**
+         * Saves the current world of the persister helper as the given checkpoint for incremental changes. Only the
+         * Streaming format supports incremental changes; other formats ignore the checkpoint.
+         */
+        void save(OutputStream out, EntityPersisterHelper persisterHelper, long checkpoint) throws IOException {
+            save(out, persisterHelper);
+        }
+
+        /**
+         * Loads a world into the persister helper's entity manager. By default this reads the whole world before
+         * deserializing it.
+         */
+        void load(InputStream in, EntityPersisterHelper persisterHelper) throws IOException {
+            persisterHelper.deserializeWorld(load(in));
+        }
+
+        /**
+         * Loads a world into the persister helper's entity manager, applying the incremental changes saved since.
+         * Only the Streaming format supports incremental changes; other formats ignore them.
+         */
+        void load(InputStream in, EntityPersisterHelper persisterHelper, EntityChangeLog changes) throws IOException {
+            load(in, persisterHelper);
+        }
+
+        /**
+         * Loads a world from a file. By default this reads the file through a buffered stream.
+         */
+        void load(File file, EntityPersisterHelper persisterHelper, EntityChangeLog changes) throws IOException {
+            InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            try {
+                load(in, persisterHelper, changes);
+            } finally {
+                // JAVA7: Replace with improved resource handling
+                in.close();
+            }
+        }
     }
 
+    /**
+     * Incremental changes to a full save are appended to a file named after it, with this suffix
+     */
+    public static final String CHANGES_SUFFIX = ".changes";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    /* Incremental saves are compacted into a full save once there are this many, or they outgrow half the full save */
+    private static final int MAX_CHANGE_SEGMENTS = 60;
+    /* Background saves are written to a file with this suffix, which then replaces the save */
+    private static final String TEMP_SUFFIX = ".tmp";
+    /* Where the replaced save is kept, when it cannot be replaced in one step */
+    private static final String BACKUP_SUFFIX = ".bak";
+    /* How long copying the snapshot for a background save may take each frame, in nanoseconds */
+    private static final long SNAPSHOT_TIME_PER_FRAME = 2000000;
+
     private Logger logger = Logger.getLogger(getClass().getName());
-    private EntityManager entityManager;
+    private PersistableEntityManager entityManager;
     private EntityPersisterHelper persisterHelper;
 
+    /* Changed entities taken from the entity manager but not yet saved */
+    private TIntSet unsavedChanges = new TIntHashSet();
+    private int changeSegments;
+    /* The checkpoint id of the Streaming save the changes are saved against */
+    private long checkpoint = EntityChangeLog.NO_CHECKPOINT;
+    private Random random = new Random();
+
+    private ExecutorService saveExecutor;
+    /* The snapshot of a background save, while it is still being copied */
+    private WorldSnapshot pendingSnapshot;
+    private File pendingSnapshotFile;
+    private Future<?> backgroundSave;
+    /* Set when a background save fails, as the changes it took from the entity manager are then not saved anywhere */
+    private volatile boolean fullSaveRequired;
+
     public WorldPersister(EntityManager entityManager) {
-        this.entityManager = entityManager;
-        this.persisterHelper = new EntityPersisterHelperImpl((PersistableEntityManager) entityManager);
+        this.entityManager = (PersistableEntityManager) entityManager;
+        this.persisterHelper = new EntityPersisterHelperImpl(this.entityManager);
     }
 
+    /**
+     * Saves the world. A Streaming save is a checkpoint for incremental saves: the changes saved against the
+     * previous checkpoint are discarded once it is written.
+     *
+     * @param file
+     * @param format
+     * @throws IOException
+     */
     public void save(File file, SaveFormat format) throws IOException {
-        final EntityData.World world = persisterHelper.serializeWorld();
+        waitForSave();
+        File parentFile = file.getParentFile();
+        if (parentFile != null) {
+            parentFile.mkdirs();
+        }
+        persisterHelper.setUsingLookupTables(format.usesLookupTables());
+        if (format == SaveFormat.Streaming) {
+            markCheckpoint();
+            // Until the save is complete, changes must not be saved against it
+            fullSaveRequired = true;
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+
+        try {
+            format.save(out, persisterHelper, checkpoint);
+        } finally {
+            // JAVA7 : Replace with improved resource handling
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to close file", e);
+            }
+        }
+        if (format == SaveFormat.Streaming) {
+            removeChanges(file);
+            fullSaveRequired = false;
+        }
+    }
+
+    /**
+     * Saves the entities changed since the last save by appending them to the changes of a Streaming save. Once
+     * enough changes have built up they are compacted into a new full save instead.
+     *
+     * @param file The Streaming save
+     * @throws IOException
+     */
+    public void saveChanges(File file) throws IOException {
+        if (isSaving()) {
+            // The changes stay with the entity manager until the save is done
+            return;
+        }
+        File changesFile = getChangesFile(file);
+        if (!file.exists() || checkpoint == EntityChangeLog.NO_CHECKPOINT || fullSaveRequired || changeSegments >= MAX_CHANGE_SEGMENTS || changesFile.length() > file.length() / 2) {
+            saveInBackground(file);
+            return;
+        }
 
+        unsavedChanges.addAll(entityManager.takeChangedEntities());
+        if (unsavedChanges.isEmpty()) {
+            return;
+        }
+        persisterHelper.setUsingLookupTables(SaveFormat.Streaming.usesLookupTables());
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(changesFile, true), BUFFER_SIZE);
+        try {
+            EntityChangeLog.setCheckpoint(persisterHelper.serializeWorldChanges(unsavedChanges), checkpoint).writeDelimitedTo(out);
+        } finally {
+            // JAVA7 : Replace with improved resource handling
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to close file", e);
+            }
+        }
+        unsavedChanges.clear();
+        changeSegments++;
+    }
+
+    /**
+     * Saves the world in the Streaming format without holding up the game. A snapshot of the entities is copied a
+     * slice per {@link #update()}; it is then serialized and written on a background thread to a temporary file, which
+     * then replaces the save. Progress is reported with {@link SaveProgressEvent}s and the outcome with a {@link SaveCompleteEvent},
+     * broadcast with the event system.
+     * <p/>
+     * Like any Streaming save this is a checkpoint for incremental saves. Other saves and loads wait for it to finish.
+     *
+     * @param file
+     */
+    public void saveInBackground(final File file) {
+        waitForSave();
         File parentFile = file.getParentFile();
         if (parentFile != null) {
             parentFile.mkdirs();
         }
-        FileOutputStream out = new FileOutputStream(file);
 
+        persisterHelper.setUsingLookupTables(SaveFormat.Streaming.usesLookupTables());
+        markCheckpoint();
+        pendingSnapshot = new WorldSnapshot(persisterHelper, checkpoint);
+        pendingSnapshotFile = file;
+    }
+
+    /**
+     * Copies the next slice of the snapshot for a background save, if one is being taken, and starts writing it once
+     * it is complete. Must be called each frame on the main thread.
+     */
+    public void update() {
+        if (pendingSnapshot != null && pendingSnapshot.copyEntities(SNAPSHOT_TIME_PER_FRAME)) {
+            writeInBackground();
+        }
+    }
+
+    private void writeInBackground() {
+        final WorldSnapshot snapshot = pendingSnapshot;
+        final File file = pendingSnapshotFile;
+        pendingSnapshot = null;
+        pendingSnapshotFile = null;
+        final EventSystem eventSystem = entityManager.getEventSystem();
+        if (saveExecutor == null) {
+            saveExecutor = Executors.newSingleThreadExecutor(new SaveThreadFactory());
+        }
+        backgroundSave = saveExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Exception error = null;
+                try {
+                    writeSnapshot(snapshot, file, eventSystem);
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                if (error != null) {
+                    logger.log(Level.SEVERE, "Failed to save entities", error);
+                    fullSaveRequired = true;
+                }
+                if (eventSystem != null) {
+                    eventSystem.queueBroadcast(new SaveCompleteEvent(file, error));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Whether a background save is in progress
+     */
+    public boolean isSaving() {
+        return pendingSnapshot != null || (backgroundSave != null && !backgroundSave.isDone());
+    }
+
+    /**
+     * Blocks until any background save has finished. A snapshot still being copied is completed immediately.
+     */
+    public void waitForSave() {
+        if (pendingSnapshot != null) {
+            pendingSnapshot.copyEntities(Long.MAX_VALUE);
+            writeInBackground();
+        }
+        if (backgroundSave == null) {
+            return;
+        }
+        try {
+            backgroundSave.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Failed to save entities", e.getCause());
+        }
+        backgroundSave = null;
+    }
+
+    private void writeSnapshot(WorldSnapshot snapshot, File file, EventSystem eventSystem) throws IOException {
+        File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
         try {
-            format.save(out, world);
+            snapshot.write(out, persisterHelper, eventSystem, file);
         } finally {
             // JAVA7 : Replace with improved resource handling
             try {
@@ -91,26 +479,152 @@ public class WorldPersister {
                 logger.log(Level.SEVERE, "Failed to close file", e);
             }
         }
+
+        replaceFile(file, tempFile);
+        // Changes saved against the old save are skipped on load even if they outlive it, as their checkpoint differs
+        removeChanges(file);
+        fullSaveRequired = false;
+    }
+
+    /**
+     * Replaces a file with another. Where that cannot be done in one step, the old file is kept as a backup until
+     * the new one is in place, so there is a save to load whenever this is interrupted.
+     */
+    private void replaceFile(File file, File replacement) throws IOException {
+        // JAVA7: Replace with Files.move and ATOMIC_MOVE
+        if (replacement.renameTo(file)) {
+            return;
+        }
+        File backupFile = getBackupFile(file);
+        if (backupFile.exists() && !backupFile.delete()) {
+            throw new IOException("Unable to remove " + backupFile);
+        }
+        if (!file.renameTo(backupFile)) {
+            throw new IOException("Unable to replace " + file + " with " + replacement);
+        }
+        if (!replacement.renameTo(file)) {
+            if (!backupFile.renameTo(file)) {
+                logger.log(Level.SEVERE, "Unable to restore " + file + " from " + backupFile);
+            }
+            throw new IOException("Unable to replace " + file + " with " + replacement);
+        }
+        if (!backupFile.delete()) {
+            logger.log(Level.WARNING, "Unable to remove " + backupFile);
+        }
+    }
+
+    private void removeChanges(File file) {
+        File changesFile = getChangesFile(file);
+        if (changesFile.exists() && !changesFile.delete()) {
+            logger.log(Level.WARNING, "Unable to remove incremental changes " + changesFile);
+        }
+    }
+
+    /**
+     * Starts tracking changes afresh, for a full save of the current state of the world
+     */
+    private void markCheckpoint() {
+        do {
+            checkpoint = random.nextLong();
+        } while (checkpoint == EntityChangeLog.NO_CHECKPOINT);
+        entityManager.takeChangedEntities();
+        unsavedChanges.clear();
+        changeSegments = 0;
+    }
+
+    /**
+     * @param file
+     * @return Whether there is a save to load from the file, counting the backup left by an interrupted save
+     */
+    public boolean hasSave(File file) {
+        return file.exists() || getBackupFile(file).exists();
     }
 
     public void load(File file, SaveFormat format) throws IOException {
+        waitForSave();
         entityManager.clear();
 
-        FileInputStream in = new FileInputStream(file);
-        EntityData.World world = null;
+        File changesFile = getChangesFile(file);
+        File backupFile = getBackupFile(file);
+        if (!file.exists() && backupFile.exists()) {
+            // A save was interrupted while replacing the file
+            logger.log(Level.WARNING, "Restoring " + file + " from " + backupFile);
+            if (!backupFile.renameTo(file)) {
+                file = backupFile;
+            }
+        }
+
+        EntityChangeLog changes = null;
+        checkpoint = EntityChangeLog.NO_CHECKPOINT;
+        if (format == SaveFormat.Streaming) {
+            checkpoint = readCheckpoint(file);
+            if (changesFile.exists()) {
+                changes = EntityChangeLog.read(changesFile, checkpoint);
+            }
+        }
+
+        format.load(file, persisterHelper, changes);
+        if (changes != null && changes.getValidLength() < changesFile.length()) {
+            truncateChanges(changesFile, changes.getValidLength());
+        }
+        if (changes != null && changes.getStaleSegmentCount() > 0) {
+            // Replace the left over changes with a full save at the next incremental save
+            fullSaveRequired = true;
+        }
+        entityManager.takeChangedEntities();
+        unsavedChanges.clear();
+        changeSegments = (changes != null) ? changes.getSegmentCount() : 0;
+    }
+
+    /**
+     * @return The checkpoint id in the header of a Streaming save
+     */
+    private long readCheckpoint(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
         try {
-            world = format.load(in);
+            EntityData.World header = EntityData.World.parseDelimitedFrom(in);
+            return (header != null) ? EntityChangeLog.getCheckpoint(header) : EntityChangeLog.NO_CHECKPOINT;
         } finally {
             // JAVA7: Replace with improved resource handling
+            in.close();
+        }
+    }
+
+    /**
+     * Cuts off the incomplete segment left by an interrupted incremental save, so that the segments appended after
+     * it can be read. If that fails the next incremental save is a full save instead, which replaces the changes.
+     */
+    private void truncateChanges(File changesFile, long validLength) {
+        try {
+            RandomAccessFile out = new RandomAccessFile(changesFile, "rw");
             try {
-                in.close();
-            } catch (IOException e) {
-                logger.log(Level.SEVERE, "Failed to close file", e);
+                out.setLength(validLength);
+            } finally {
+                // JAVA7: Replace with improved resource handling
+                out.close();
             }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to remove incomplete changes from " + changesFile, e);
+            fullSaveRequired = true;
         }
+    }
+
+    private File getChangesFile(File file) {
+        return new File(file.getPath() + CHANGES_SUFFIX);
+    }
+
+    private File getBackupFile(File file) {
+        return new File(file.getPath() + BACKUP_SUFFIX);
+    }
+
+    private static class SaveThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
 
-        if (world != null) {
-            persisterHelper.deserializeWorld(world);
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "World Saver-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
-}
\ No newline at end of file
+}
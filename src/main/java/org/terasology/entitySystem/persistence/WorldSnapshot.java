@@ -0,0 +1,134 @@
+package org.terasology.entitySystem.persistence;
+
+import com.google.common.collect.Lists;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.EventSystem;
+import org.terasology.entitySystem.PersistableEntityManager;
+import org.terasology.entitySystem.SerializedComponent;
+import org.terasology.entitySystem.event.SaveProgressEvent;
+import org.terasology.entitySystem.metadata.ComponentLibrary;
+import org.terasology.protobuf.EntityData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A copy of the world's entities, taken on the main thread so that it can be saved on another while the game carries
+ * on. Taking the snapshot only clones the components, which is much cheaper than serializing them; the snapshot is
+ * unaffected by any later change to the entities. Components still held in their serialized form are kept as they are.
+ * <p/>
+ * The entities are copied a slice at a time with {@link #copyEntities(long)}, so that a large world does not stall a
+ * frame. An entity changed before its slice is copied is taken in its changed state, and one destroyed before then is
+ * left out; either way the change is also tracked by the entity manager, and saved against the snapshot's checkpoint
+ * afterwards.
+ */
+class WorldSnapshot {
+    /* Progress is reported each time this many entities have been written */
+    private static final int PROGRESS_INTERVAL = 4096;
+    /* The time limit is checked each time this many entities have been copied */
+    private static final int COPY_CHECK_INTERVAL = 64;
+
+    private final EntityData.World header;
+    private final PersistableEntityManager entityManager;
+    private final ComponentLibrary componentLibrary;
+    private final List<EntityRef> entitiesToCopy = Lists.newArrayList();
+    private int copyIndex;
+
+    private final TIntList entityIds = new TIntArrayList();
+    private final List<List<Component>> entityComponents = Lists.newArrayList();
+    private final List<List<SerializedComponent>> entitySerializedComponents = Lists.newArrayList();
+
+    /**
+     * Starts a snapshot of the current entities. None are copied until {@link #copyEntities(long)} is called.
+     *
+     * @param persisterHelper
+     * @param checkpoint      The checkpoint id to save the snapshot as, see {@link EntityChangeLog}
+     */
+    public WorldSnapshot(EntityPersisterHelper persisterHelper, long checkpoint) {
+        header = EntityChangeLog.setCheckpoint(persisterHelper.serializeWorldHeader(), checkpoint);
+        componentLibrary = persisterHelper.getComponentLibrary();
+        entityManager = persisterHelper.getEntityManager();
+        for (EntityRef entity : entityManager.iteratorEntities()) {
+            entitiesToCopy.add(entity);
+        }
+    }
+
+    /**
+     * Copies the next entities of the snapshot. Must be called on the main thread.
+     *
+     * @param timeLimit The time to stop copying after, in nanoseconds
+     * @return Whether every entity has been copied
+     */
+    public boolean copyEntities(long timeLimit) {
+        long startTime = System.nanoTime();
+        List<Component> entityState = Lists.newArrayList();
+        while (copyIndex < entitiesToCopy.size()) {
+            EntityRef entity = entitiesToCopy.get(copyIndex);
+            entitiesToCopy.set(copyIndex, null);
+            copyIndex++;
+            if (entity.exists()) {
+                copyEntity(entity.getId(), entityState);
+            }
+            if (copyIndex % COPY_CHECK_INTERVAL == 0 && System.nanoTime() - startTime >= timeLimit) {
+                break;
+            }
+        }
+        return isCopied();
+    }
+
+    /**
+     * @return Whether every entity has been copied, so the snapshot can be written
+     */
+    public boolean isCopied() {
+        return copyIndex == entitiesToCopy.size();
+    }
+
+    private void copyEntity(int entityId, List<Component> entityState) {
+        List<SerializedComponent> serializedComponents = Lists.newArrayList();
+        entityManager.collectComponents(entityId, entityState, serializedComponents);
+        List<Component> components = Lists.newArrayListWithCapacity(entityState.size());
+        for (Component component : entityState) {
+            Component copy = componentLibrary.copy(component);
+            if (copy != null) {
+                components.add(copy);
+            }
+        }
+        entityState.clear();
+        entityIds.add(entityId);
+        entityComponents.add(components);
+        entitySerializedComponents.add(serializedComponents);
+    }
+
+    public int getEntityCount() {
+        return entityIds.size();
+    }
+
+    /**
+     * Writes the snapshot in the Streaming save format, once every entity has been copied. Entities are released as
+     * they are written, so a snapshot can only be written once.
+     *
+     * @param out
+     * @param persisterHelper
+     * @param eventSystem     The event system to queue progress events with, or null
+     * @param file            The file being saved, for the progress events
+     * @throws IOException
+     */
+    public void write(OutputStream out, EntityPersisterHelper persisterHelper, EventSystem eventSystem, File file) throws IOException {
+        header.writeDelimitedTo(out);
+        int entityCount = getEntityCount();
+        for (int i = 0; i < entityCount; ++i) {
+            persisterHelper.serializeEntity(entityIds.get(i), entityComponents.get(i), entitySerializedComponents.get(i)).writeDelimitedTo(out);
+            entityComponents.set(i, null);
+            entitySerializedComponents.set(i, null);
+            if (eventSystem != null && (i + 1) % PROGRESS_INTERVAL == 0) {
+                eventSystem.queueBroadcast(new SaveProgressEvent(file, i + 1, entityCount));
+            }
+        }
+        out.flush();
+    }
+}
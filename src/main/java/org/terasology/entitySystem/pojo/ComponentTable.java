@@ -8,65 +8,281 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.SerializedComponent;
+import org.terasology.entitySystem.metadata.ComponentLibrary;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * A table for storing entities and components. Focused on allowing iteration across a components of a given type
+ * <p/>
+ * Alongside the components, a bitset of the component ids (as assigned by the component library) of each entity is
+ * kept, so checking whether an entity has a set of components is a bitmask test. Component classes without an id
+ * fall back to looking up the component.
+ * <p/>
+ * Loaded components can be held in their serialized form. Such a component counts towards its entity's bitset from
+ * the start, but is only deserialized when it is first retrieved, or when its type is iterated over. As update systems
+ * that only read a component type may run at the same time, serialized components of a type are only accessed while
+ * holding the lock of their map. Once a type has none left its components are read without locking again.
  *
  * @author Immortius <immortius@gmail.com>
  */
 class ComponentTable {
-    private Map<Class, TIntObjectMap<Component>> store = new HashMap<Class, TIntObjectMap<Component>>();
+    private static final int INITIAL_ENTITY_CAPACITY = 1024;
+
+    private Map<Class, ComponentMap> store = new HashMap<Class, ComponentMap>();
+    /* Components not yet deserialized. Each class's map is created on the main thread along with its ComponentMap, so
+     * deserializing never adds to either store */
+    private Map<Class, SerializedComponentMap> serializedStore = new HashMap<Class, SerializedComponentMap>();
+    private ComponentLibrary componentLibrary;
+
+    /* Component bitsets, maskWords longs per entity, indexed by entity id */
+    private int maskWords = 1;
+    private long[] masks = new long[INITIAL_ENTITY_CAPACITY];
+
+    public ComponentTable(ComponentLibrary componentLibrary) {
+        this.componentLibrary = componentLibrary;
+    }
 
     public <T extends Component> T get(int entityId, Class<T> componentClass) {
-        TIntObjectMap<Component> entityMap = store.get(componentClass);
+        ComponentMap entityMap = store.get(componentClass);
         if (entityMap != null) {
+            SerializedComponentMap serializedMap = serializedStore.get(componentClass);
+            if (serializedMap != null && serializedMap.pending) {
+                synchronized (serializedMap) {
+                    deserialize(entityId, entityMap, serializedMap);
+                    return componentClass.cast(entityMap.get(entityId));
+                }
+            }
             return componentClass.cast(entityMap.get(entityId));
         }
         return null;
     }
 
     public Component put(int entityId, Component component) {
-        TIntObjectMap<Component> entityMap = store.get(component.getClass());
-        if (entityMap == null) {
-            entityMap = new TIntObjectHashMap<Component>();
-            store.put(component.getClass(), entityMap);
+        ComponentMap entityMap = getOrCreateComponentMap(component.getClass());
+        SerializedComponentMap serializedMap = serializedStore.get(component.getClass());
+        Component old;
+        if (serializedMap != null && serializedMap.pending) {
+            synchronized (serializedMap) {
+                deserialize(entityId, entityMap, serializedMap);
+                old = entityMap.put(entityId, component);
+            }
+        } else {
+            old = entityMap.put(entityId, component);
         }
-        return entityMap.put(entityId, component);
+        if (old == null) {
+            setMask(entityId, component.getClass());
+        }
+        return old;
+    }
+
+    /**
+     * Adds a component in its serialized form, replacing any component of the same type the entity has. Must be
+     * called on the main thread.
+     *
+     * @param entityId
+     * @param serializedComponent
+     */
+    public void putSerialized(int entityId, SerializedComponent serializedComponent) {
+        Class<? extends Component> componentClass = serializedComponent.getType();
+        ComponentMap entityMap = getOrCreateComponentMap(componentClass);
+        SerializedComponentMap serializedMap = serializedStore.get(componentClass);
+        if (serializedMap == null) {
+            serializedMap = new SerializedComponentMap();
+            serializedStore.put(componentClass, serializedMap);
+        }
+        synchronized (serializedMap) {
+            entityMap.remove(entityId);
+            serializedMap.put(entityId, serializedComponent);
+            serializedMap.pending = true;
+        }
+        setMask(entityId, componentClass);
     }
 
     public <T extends Component> Component remove(int entityId, Class<T> componentClass) {
-        TIntObjectMap<Component> entityMap = store.get(componentClass);
+        ComponentMap entityMap = store.get(componentClass);
         if (entityMap != null) {
-            return entityMap.remove(entityId);
+            Component old;
+            SerializedComponentMap serializedMap = serializedStore.get(componentClass);
+            if (serializedMap != null && serializedMap.pending) {
+                synchronized (serializedMap) {
+                    deserialize(entityId, entityMap, serializedMap);
+                    old = entityMap.remove(entityId);
+                }
+            } else {
+                old = entityMap.remove(entityId);
+            }
+            if (old != null) {
+                int componentId = componentLibrary.getComponentId(componentClass);
+                if (componentId != ComponentLibrary.UNKNOWN_COMPONENT_ID && isMaskStored(entityId, componentId)) {
+                    masks[entityId * maskWords + (componentId >>> 6)] &= ~(1L << componentId);
+                }
+            }
+            return old;
         }
         return null;
     }
 
     public void remove(int entityId) {
+        for (SerializedComponentMap serializedMap : serializedStore.values()) {
+            if (serializedMap.pending) {
+                synchronized (serializedMap) {
+                    serializedMap.remove(entityId);
+                    serializedMap.pending = !serializedMap.isEmpty();
+                }
+            }
+        }
         for (TIntObjectMap<Component> entityMap : store.values()) {
             entityMap.remove(entityId);
         }
+        int start = entityId * maskWords;
+        if (start < masks.length) {
+            Arrays.fill(masks, start, start + maskWords, 0);
+        }
     }
 
     public void clear() {
         store.clear();
+        serializedStore.clear();
+        Arrays.fill(masks, 0);
+    }
+
+    public boolean hasComponent(int entityId, Class<? extends Component> componentClass) {
+        int componentId = componentLibrary.getComponentId(componentClass);
+        if (componentId == ComponentLibrary.UNKNOWN_COMPONENT_ID) {
+            return get(entityId, componentClass) != null;
+        }
+        return isMaskStored(entityId, componentId) && (masks[entityId * maskWords + (componentId >>> 6)] & (1L << componentId)) != 0;
+    }
+
+    /**
+     * @param componentClasses
+     * @return A bitmask of the ids of the given component classes, for use with hasComponents, or null if any of the
+     *         classes has no id
+     */
+    public long[] createMask(Class<? extends Component>... componentClasses) {
+        long[] mask = new long[(componentLibrary.getComponentIdCount() + 63) >>> 6];
+        for (Class<? extends Component> componentClass : componentClasses) {
+            int componentId = componentLibrary.getComponentId(componentClass);
+            if (componentId == ComponentLibrary.UNKNOWN_COMPONENT_ID) {
+                return null;
+            }
+            mask[componentId >>> 6] |= 1L << componentId;
+        }
+        return mask;
+    }
+
+    /**
+     * @param entityId
+     * @param mask     A mask created by createMask
+     * @return Whether the entity has all the components in the mask
+     */
+    public boolean hasComponents(int entityId, long[] mask) {
+        int start = entityId * maskWords;
+        boolean stored = start < masks.length;
+        for (int i = 0; i < mask.length; ++i) {
+            long entityWord = (stored && i < maskWords) ? masks[start + i] : 0;
+            if ((entityWord & mask[i]) != mask[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ComponentMap getOrCreateComponentMap(Class<? extends Component> componentClass) {
+        ComponentMap entityMap = store.get(componentClass);
+        if (entityMap == null) {
+            entityMap = new ComponentMap();
+            store.put(componentClass, entityMap);
+        }
+        return entityMap;
+    }
+
+    /**
+     * Deserializes the entity's component from the serialized map, if it is there. The map's lock must be held.
+     */
+    private void deserialize(int entityId, ComponentMap entityMap, SerializedComponentMap serializedMap) {
+        SerializedComponent serializedComponent = serializedMap.remove(entityId);
+        if (serializedComponent != null) {
+            entityMap.put(entityId, serializedComponent.deserialize());
+            serializedMap.pending = !serializedMap.isEmpty();
+        }
+    }
+
+    /**
+     * Deserializes every serialized component of the given class, so that its ComponentMap can be read without
+     * locking.
+     */
+    private void deserializeAll(Class<? extends Component> componentClass) {
+        SerializedComponentMap serializedMap = serializedStore.get(componentClass);
+        if (serializedMap != null && serializedMap.pending) {
+            synchronized (serializedMap) {
+                if (serializedMap.pending) {
+                    ComponentMap entityMap = store.get(componentClass);
+                    TIntObjectIterator<SerializedComponent> iterator = serializedMap.iterator();
+                    while (iterator.hasNext()) {
+                        iterator.advance();
+                        entityMap.put(iterator.key(), iterator.value().deserialize());
+                    }
+                    serializedMap.clear();
+                    serializedMap.pending = false;
+                }
+            }
+        }
+    }
+
+    private void setMask(int entityId, Class<? extends Component> componentClass) {
+        int componentId = componentLibrary.getComponentId(componentClass);
+        if (componentId != ComponentLibrary.UNKNOWN_COMPONENT_ID) {
+            ensureMaskCapacity(entityId, componentId);
+            masks[entityId * maskWords + (componentId >>> 6)] |= 1L << componentId;
+        }
+    }
+
+    private boolean isMaskStored(int entityId, int componentId) {
+        return (componentId >>> 6) < maskWords && (entityId + 1) * maskWords <= masks.length;
+    }
+
+    private void ensureMaskCapacity(int entityId, int componentId) {
+        int requiredWords = Math.max(maskWords, (componentId >>> 6) + 1);
+        int entityCapacity = masks.length / maskWords;
+        int requiredEntities = (entityId < entityCapacity) ? entityCapacity : Math.max(entityId + 1, entityCapacity * 2);
+        if (requiredWords == maskWords) {
+            if (requiredEntities != entityCapacity) {
+                masks = Arrays.copyOf(masks, requiredEntities * maskWords);
+            }
+            return;
+        }
+        long[] newMasks = new long[requiredEntities * requiredWords];
+        for (int entity = 0; entity < entityCapacity; ++entity) {
+            System.arraycopy(masks, entity * maskWords, newMasks, entity * requiredWords, maskWords);
+        }
+        masks = newMasks;
+        maskWords = requiredWords;
     }
 
     public int getComponentCount(Class<? extends Component> componentClass) {
         TIntObjectMap<Component> map = store.get(componentClass);
         if (map == null)
             return 0;
+        SerializedComponentMap serializedMap = serializedStore.get(componentClass);
+        if (serializedMap != null && serializedMap.pending) {
+            synchronized (serializedMap) {
+                return map.size() + serializedMap.size();
+            }
+        }
         return map.size();
     }
 
     public Iterable<Component> iterateComponents(int entityId) {
         List<Component> components = Lists.newArrayList();
-        for (TIntObjectMap<Component> componentMap : store.values()) {
-            Component comp = componentMap.get(entityId);
+        for (Map.Entry<Class, ComponentMap> entry : store.entrySet()) {
+            Component comp = get(entityId, (Class<? extends Component>) entry.getKey());
             if (comp != null) {
                 components.add(comp);
             }
@@ -74,14 +290,52 @@ class ComponentTable {
         return components;
     }
 
+    /**
+     * Gathers the components of an entity, leaving those still in their serialized form as they are.
+     *
+     * @param entityId
+     * @param components           Receives the deserialized components
+     * @param serializedComponents Receives the serialized components
+     */
+    public void collectComponents(int entityId, Collection<Component> components, Collection<SerializedComponent> serializedComponents) {
+        for (Map.Entry<Class, ComponentMap> entry : store.entrySet()) {
+            SerializedComponentMap serializedMap = serializedStore.get(entry.getKey());
+            Component comp;
+            if (serializedMap != null && serializedMap.pending) {
+                synchronized (serializedMap) {
+                    SerializedComponent serializedComponent = serializedMap.get(entityId);
+                    if (serializedComponent != null) {
+                        serializedComponents.add(serializedComponent);
+                        continue;
+                    }
+                    comp = entry.getValue().get(entityId);
+                }
+            } else {
+                comp = entry.getValue().get(entityId);
+            }
+            if (comp != null) {
+                components.add(comp);
+            }
+        }
+    }
+
     public <T extends Component> TIntObjectIterator<T> componentIterator(Class<T> componentClass) {
-        TIntObjectMap<T> entityMap = (TIntObjectMap<T>) store.get(componentClass);
+        deserializeAll(componentClass);
+        TIntObjectMap<T> entityMap = (TIntObjectMap) store.get(componentClass);
         if (entityMap != null) {
             return entityMap.iterator();
         }
         return null;
     }
 
+    /**
+     * @return The map of entity ids to components of the given class, or null if no entity has had one
+     */
+    public ComponentMap getComponentMap(Class<? extends Component> componentClass) {
+        deserializeAll(componentClass);
+        return store.get(componentClass);
+    }
+
     /**
      * Produces an iterator for iterating over all entities
      * <p/>
@@ -94,7 +348,51 @@ class ComponentTable {
         for (TIntObjectMap<Component> componentMap : store.values()) {
             idSet.addAll(componentMap.keys());
         }
+        for (SerializedComponentMap serializedMap : serializedStore.values()) {
+            if (serializedMap.pending) {
+                synchronized (serializedMap) {
+                    idSet.addAll(serializedMap.keys());
+                }
+            }
+        }
         return idSet.iterator();
     }
 
+    /**
+     * A map of entity ids to components that exposes its hash slots, so cursors can walk them without allocating an
+     * iterator.
+     */
+    static class ComponentMap extends TIntObjectHashMap<Component> {
+
+        public int getSlotCount() {
+            return _states.length;
+        }
+
+        public boolean isSlotFull(int slot) {
+            return _states[slot] == FULL;
+        }
+
+        public int getKeyAt(int slot) {
+            return _set[slot];
+        }
+
+        public Component getValueAt(int slot) {
+            return _values[slot];
+        }
+
+        /**
+         * @return The slot states array, which is replaced whenever the map is rehashed
+         */
+        public Object getSlotStates() {
+            return _states;
+        }
+    }
+
+    /**
+     * A map of entity ids to components that have not been deserialized yet
+     */
+    private static class SerializedComponentMap extends TIntObjectHashMap<SerializedComponent> {
+        /* Whether the map may hold any components. Only cleared while holding the map's lock */
+        private volatile boolean pending;
+    }
 }
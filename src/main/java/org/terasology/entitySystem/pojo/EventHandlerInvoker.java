@@ -0,0 +1,15 @@
+package org.terasology.entitySystem.pojo;
+
+import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.Event;
+
+/**
+ * Calls a single event handler method directly. Implementations are generated at runtime by
+ * {@link EventHandlerInvokerFactory}, one per handler method.
+ * <p/>
+ * This has to be public so that generated classes, which live in the package of the handler, can implement it.
+ */
+public interface EventHandlerInvoker {
+
+    public void invoke(Object handler, Event event, EntityRef entity);
+}
@@ -0,0 +1,94 @@
+package org.terasology.entitySystem.pojo;
+
+import com.google.common.collect.Sets;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.Event;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates {@link EventHandlerInvoker} classes that call an event handler method with a plain virtual call, avoiding
+ * the argument array, access checks and exception wrapping of Method.invoke.
+ * <p/>
+ * The generated class is defined in the package and class loader of the handler, so it can see everything the handler
+ * method can.
+ */
+class EventHandlerInvokerFactory {
+    /**
+     * Setting this system property to true disables invoker generation, so all handlers are called through
+     * reflection. Useful for comparing dispatch performance.
+     */
+    public static final String REFLECTED_DISPATCH_PROPERTY = "terasology.events.reflectedDispatch";
+
+    private static final String INVOKER_SUFFIX = "$$EventHandlerInvoker";
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    private final boolean enabled = !Boolean.getBoolean(REFLECTED_DISPATCH_PROPERTY);
+    private ClassPool classPool;
+    private Set<ClassLoader> knownLoaders = Sets.newHashSet();
+    private int invokerCount;
+
+    /**
+     * @param method A public event handler method taking an event and an entity
+     * @return An invoker calling the method, or null if one could not be generated
+     */
+    public EventHandlerInvoker createInvoker(Method method) {
+        if (!enabled || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            return null;
+        }
+        try {
+            return generateInvoker(method);
+        } catch (NotFoundException e) {
+            logger.log(Level.WARNING, "Failed to generate invoker for " + method + ", using reflection", e);
+        } catch (CannotCompileException e) {
+            logger.log(Level.WARNING, "Failed to generate invoker for " + method + ", using reflection", e);
+        } catch (InstantiationException e) {
+            logger.log(Level.WARNING, "Failed to generate invoker for " + method + ", using reflection", e);
+        } catch (IllegalAccessException e) {
+            logger.log(Level.WARNING, "Failed to generate invoker for " + method + ", using reflection", e);
+        } catch (LinkageError e) {
+            // Also covers javassist being unavailable at runtime
+            logger.log(Level.WARNING, "Failed to generate invoker for " + method + ", using reflection", e);
+        }
+        return null;
+    }
+
+    private EventHandlerInvoker generateInvoker(Method method) throws NotFoundException, CannotCompileException, InstantiationException, IllegalAccessException {
+        Class<?> handlerClass = method.getDeclaringClass();
+        ClassLoader loader = handlerClass.getClassLoader();
+        if (classPool == null) {
+            classPool = new ClassPool(true);
+        }
+        if (loader != null && knownLoaders.add(loader)) {
+            classPool.appendClassPath(new LoaderClassPath(loader));
+        }
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        String invokerName = handlerClass.getName() + INVOKER_SUFFIX + (invokerCount++);
+        CtClass invokerClass = classPool.makeClass(invokerName);
+        try {
+            invokerClass.addInterface(classPool.get(EventHandlerInvoker.class.getName()));
+            invokerClass.addMethod(CtNewMethod.make(
+                    "public void invoke(Object handler, " + Event.class.getName() + " event, " + EntityRef.class.getName() + " entity) {" +
+                            "((" + handlerClass.getName() + ") handler)." + method.getName() + "(" +
+                            "(" + parameterTypes[0].getName() + ") event, " +
+                            "(" + parameterTypes[1].getName() + ") entity);" +
+                            "}", invokerClass));
+            Class<?> generated = invokerClass.toClass(loader, handlerClass.getProtectionDomain());
+            return (EventHandlerInvoker) generated.newInstance();
+        } finally {
+            invokerClass.detach();
+        }
+    }
+}
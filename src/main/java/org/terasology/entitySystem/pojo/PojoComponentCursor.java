@@ -0,0 +1,90 @@
+package org.terasology.entitySystem.pojo;
+
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.ComponentCursor;
+import org.terasology.entitySystem.EntityRef;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Cursor walking the hash slots of a component map directly. Reused by the PojoEntityManager for any component type.
+ */
+class PojoComponentCursor<T extends Component> implements ComponentCursor<T> {
+    private final PojoEntityManager entityManager;
+
+    private Class<T> componentClass;
+    private ComponentTable.ComponentMap componentMap;
+    private Object slotStates;
+    private int expectedSize;
+    private int slot;
+    private int entityId;
+    private T component;
+    private boolean closed;
+
+    public PojoComponentCursor(PojoEntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    void reset(Class<T> componentClass, ComponentTable.ComponentMap map) {
+        this.componentClass = componentClass;
+        componentMap = map;
+        closed = false;
+        slot = -1;
+        entityId = PojoEntityManager.NULL_ID;
+        component = null;
+        if (map != null) {
+            slotStates = map.getSlotStates();
+            expectedSize = map.size();
+        }
+    }
+
+    @Override
+    public boolean next() {
+        if (componentMap == null) {
+            close();
+            return false;
+        }
+        if (componentMap.getSlotStates() != slotStates || componentMap.size() != expectedSize) {
+            throw new ConcurrentModificationException("Components were added or removed during cursor iteration");
+        }
+        int slotCount = componentMap.getSlotCount();
+        while (++slot < slotCount) {
+            if (componentMap.isSlotFull(slot)) {
+                entityId = componentMap.getKeyAt(slot);
+                component = componentClass.cast(componentMap.getValueAt(slot));
+                return true;
+            }
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public int getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public EntityRef getEntity() {
+        return entityManager.createEntityRef(entityId);
+    }
+
+    @Override
+    public T getComponent() {
+        return component;
+    }
+
+    @Override
+    public void close() {
+        // next() closes the cursor once it runs out, so a later close() must not release it a second time
+        if (closed) {
+            return;
+        }
+        closed = true;
+        componentClass = null;
+        componentMap = null;
+        slotStates = null;
+        component = null;
+        entityManager.releaseCursor(this);
+    }
+}
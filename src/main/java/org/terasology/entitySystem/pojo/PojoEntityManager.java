@@ -4,6 +4,8 @@ import gnu.trove.iterator.TIntIterator;
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import org.terasology.entitySystem.*;
 import org.terasology.entitySystem.common.NullIterator;
 import org.terasology.entitySystem.event.AddComponentEvent;
@@ -25,13 +27,25 @@ import java.util.logging.Logger;
 public class PojoEntityManager implements EntityManager, PersistableEntityManager {
     public static final int NULL_ID = 0;
 
+    private static final int INITIAL_ENTITY_CAPACITY = 1024;
+
     private static Logger logger = Logger.getLogger(PojoEntityManager.class.getName());
 
     private int nextEntityId = 1;
     private TIntList freedIds = new TIntArrayList();
-    private Map<EntityRef, PojoEntityRef> entityCache = new WeakHashMap<EntityRef, PojoEntityRef>();
-
-    private ComponentTable store = new ComponentTable();
+    /* Entities changed since the last call to takeChangedEntities. Not synchronized: entities are only changed on the
+     * main thread */
+    private TIntSet changedEntities = new TIntHashSet();
+
+    /* The current generation of each id, and the handle for it, indexed by entity id */
+    private int[] generations = new int[INITIAL_ENTITY_CAPACITY];
+    private PojoEntityRef[] entityRefs = new PojoEntityRef[INITIAL_ENTITY_CAPACITY];
+
+    private ComponentTable store;
+    private Map<Set<Class<? extends Component>>, PojoEntityQuery> queries = new HashMap<Set<Class<? extends Component>>, PojoEntityQuery>();
+    private Map<Class<? extends Component>, List<PojoEntityQuery>> queriesByComponent = new HashMap<Class<? extends Component>, List<PojoEntityQuery>>();
+    /* Kept per thread, so a cursor is never shared with another thread */
+    private final ThreadLocal<PojoComponentCursor<?>> idleCursor = new ThreadLocal<PojoComponentCursor<?>>();
     private EventSystem eventSystem;
     private PrefabManager prefabManager;
     private ComponentLibrary componentLibrary;
@@ -39,6 +53,7 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
     public PojoEntityManager(ComponentLibrary componentLibrary, PrefabManager prefabManager) {
         this.componentLibrary = componentLibrary;
         this.prefabManager = prefabManager;
+        this.store = new ComponentTable(componentLibrary);
         componentLibrary.registerTypeHandler(EntityRef.class, new EntityRefTypeHandler(this));
         componentLibrary.registerTypeHandler(Prefab.class, new PrefabTypeHandler(prefabManager));
     }
@@ -48,13 +63,21 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
         store.clear();
         nextEntityId = 1;
         freedIds.clear();
-        entityCache.clear();
+        changedEntities.clear();
+        // Move all ids to a new generation, so handles from before the clear no longer exist
+        for (int i = 0; i < generations.length; ++i) {
+            generations[i]++;
+        }
+        Arrays.fill(entityRefs, null);
+        for (PojoEntityQuery query : queries.values()) {
+            query.clear();
+        }
     }
 
     @Override
     public EntityRef create() {
         if (!freedIds.isEmpty()) {
-            createEntityRef(freedIds.removeAt(freedIds.size() - 1));
+            return createEntityRef(freedIds.removeAt(freedIds.size() - 1));
         }
         if (nextEntityId == NULL_ID) nextEntityId++;
         return createEntityRef(nextEntityId++);
@@ -75,12 +98,43 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
 
     @Override
     public EntityRef create(Prefab prefab) {
-        EntityRef result = create();
         if (prefab != null) {
-            for (Component component : prefab.listComponents()) {
-                result.addComponent(componentLibrary.copy(component));
+            return create(prefabManager.getTemplate(prefab));
+        }
+        return create();
+    }
+
+    @Override
+    public EntityRef create(Component... components) {
+        return create(null, components);
+    }
+
+    @Override
+    public EntityRef create(PrefabTemplate template, Component... components) {
+        EntityRef result = create();
+        int entityId = result.getId();
+        if (template != null) {
+            for (int i = 0; i < template.getComponentCount(); ++i) {
+                store.put(entityId, template.createComponent(i));
+            }
+        }
+        for (Component component : components) {
+            store.put(entityId, component);
+        }
+
+        if (template != null) {
+            for (int i = 0; i < template.getComponentCount(); ++i) {
+                updateQueries(entityId, template.getComponentType(i));
+            }
+        }
+        for (Component component : components) {
+            updateQueries(entityId, component.getClass());
+        }
+        if (template != null || components.length > 0) {
+            changedEntities.add(entityId);
+            if (eventSystem != null) {
+                eventSystem.send(result, AddComponentEvent.newInstance());
             }
-            result.addComponent(new EntityInfoComponent(prefab.getName()));
         }
         return result;
     }
@@ -124,6 +178,65 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
         return NullIterator.newInstance();
     }
 
+    @Override
+    public <T extends Component> ComponentCursor<T> componentCursor(Class<T> componentClass) {
+        PojoComponentCursor<T> cursor = takeIdleCursor();
+        if (cursor == null) {
+            cursor = new PojoComponentCursor<T>(this);
+        }
+        cursor.reset(componentClass, store.getComponentMap(componentClass));
+        return cursor;
+    }
+
+    /**
+     * A closed cursor holds nothing of the component type it was used for, and is given its new type when reset, so
+     * it can be reused for any type.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Component> PojoComponentCursor<T> takeIdleCursor() {
+        PojoComponentCursor<T> cursor = (PojoComponentCursor<T>) idleCursor.get();
+        idleCursor.set(null);
+        return cursor;
+    }
+
+    void releaseCursor(PojoComponentCursor<?> cursor) {
+        idleCursor.set(cursor);
+    }
+
+    @Override
+    public EntityQuery registerQuery(Class<? extends Component>... componentClasses) {
+        if (componentClasses.length == 0) {
+            throw new IllegalArgumentException("Queries require at least one component class");
+        }
+        Set<Class<? extends Component>> key = new HashSet<Class<? extends Component>>(Arrays.asList(componentClasses));
+        PojoEntityQuery query = queries.get(key);
+        if (query == null) {
+            query = new PojoEntityQuery(this, componentClasses);
+            for (EntityRef entity : iteratorEntities(componentClasses)) {
+                query.update(entity.getId());
+            }
+            queries.put(key, query);
+            for (Class<? extends Component> componentClass : key) {
+                List<PojoEntityQuery> list = queriesByComponent.get(componentClass);
+                if (list == null) {
+                    list = new ArrayList<PojoEntityQuery>();
+                    queriesByComponent.put(componentClass, list);
+                }
+                list.add(query);
+            }
+        }
+        return query;
+    }
+
+    private void updateQueries(int entityId, Class<? extends Component> componentClass) {
+        List<PojoEntityQuery> list = queriesByComponent.get(componentClass);
+        if (list != null) {
+            for (int i = 0; i < list.size(); ++i) {
+                list.get(i).update(entityId);
+            }
+        }
+    }
+
     public Iterable<EntityRef> iteratorEntities() {
         return new Iterable<EntityRef>() {
             public Iterator<EntityRef> iterator() {
@@ -142,9 +255,16 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
             return NullIterator.newInstance();
         }
 
+        long[] mask = store.createMask(componentClasses);
         while (primeIterator.hasNext()) {
             primeIterator.advance();
             int id = primeIterator.key();
+            if (mask != null) {
+                if (store.hasComponents(id, mask)) {
+                    idList.add(id);
+                }
+                continue;
+            }
             boolean discard = false;
             for (int i = 1; i < componentClasses.length; ++i) {
                 if (store.get(id, componentClasses[i]) == null) {
@@ -153,14 +273,27 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
                 }
             }
             if (!discard) {
-                idList.add(primeIterator.key());
+                idList.add(id);
             }
         }
         return new EntityIterable(idList);
     }
 
     boolean hasComponent(int entityId, Class<? extends Component> componentClass) {
-        return store.get(entityId, componentClass) != null;
+        return store.hasComponent(entityId, componentClass);
+    }
+
+    /**
+     * @param componentClasses
+     * @return A bitmask of the given component classes, or null if any of them is not registered with the component
+     *         library
+     */
+    long[] createComponentMask(Class<? extends Component>... componentClasses) {
+        return store.createMask(componentClasses);
+    }
+
+    boolean hasComponents(int entityId, long[] componentMask) {
+        return store.hasComponents(entityId, componentMask);
     }
 
     Iterable<Component> iterateComponents(int entityId) {
@@ -172,12 +305,16 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
         if (eventSystem != null) {
             eventSystem.send(ref, RemovedComponentEvent.newInstance());
         }
-        entityCache.remove(ref);
         freedIds.add(entityId);
-        if (ref instanceof PojoEntityRef) {
-            ((PojoEntityRef) ref).invalidate();
+        changedEntities.add(entityId);
+        if (entityId < generations.length) {
+            generations[entityId]++;
+            entityRefs[entityId] = null;
         }
         store.remove(entityId);
+        for (PojoEntityQuery query : queries.values()) {
+            query.remove(entityId);
+        }
     }
 
     <T extends Component> T getComponent(int entityId, Class<T> componentClass) {
@@ -186,6 +323,10 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
 
     <T extends Component> T addComponent(int entityId, T component) {
         Component oldComponent = store.put(entityId, component);
+        if (oldComponent == null) {
+            updateQueries(entityId, component.getClass());
+        }
+        changedEntities.add(entityId);
         if (eventSystem != null) {
             if (oldComponent == null) {
                 eventSystem.send(createEntityRef(entityId), AddComponentEvent.newInstance(), component);
@@ -203,10 +344,13 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
                 eventSystem.send(createEntityRef(entityId), RemovedComponentEvent.newInstance(), component);
             }
             store.remove(entityId, componentClass);
+            updateQueries(entityId, componentClass);
+            changedEntities.add(entityId);
         }
     }
 
     void saveComponent(int entityId, Component component) {
+        changedEntities.add(entityId);
         if (eventSystem != null) {
             eventSystem.send(createEntityRef(entityId), ChangedComponentEvent.newInstance(), component);
         }
@@ -219,17 +363,64 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
         return EntityRef.NULL;
     }
 
-    private EntityRef createEntityRef(int entityId) {
+    @Override
+    public EntityRef createEntityWithId(int id, Collection<Component> components) {
+        EntityRef result = createEntityRefWithId(id);
+        if (!result.exists()) {
+            return EntityRef.NULL;
+        }
+        for (Component component : components) {
+            store.put(id, component);
+        }
+        for (Component component : components) {
+            updateQueries(id, component.getClass());
+        }
+        return result;
+    }
+
+    /**
+     * The serialized components are kept as they are until each is first retrieved, or its type is iterated over.
+     */
+    @Override
+    public EntityRef createEntityWithId(int id, Collection<Component> components, Collection<? extends SerializedComponent> serializedComponents) {
+        EntityRef result = createEntityWithId(id, components);
+        if (!result.exists()) {
+            return EntityRef.NULL;
+        }
+        for (SerializedComponent serializedComponent : serializedComponents) {
+            store.putSerialized(id, serializedComponent);
+        }
+        for (SerializedComponent serializedComponent : serializedComponents) {
+            updateQueries(id, serializedComponent.getType());
+        }
+        return result;
+    }
+
+    @Override
+    public void collectComponents(int entityId, Collection<Component> components, Collection<SerializedComponent> serializedComponents) {
+        store.collectComponents(entityId, components, serializedComponents);
+    }
+
+    // Synchronized as handles are created by component deserialization on the loading threads
+    synchronized EntityRef createEntityRef(int entityId) {
         if (entityId == NULL_ID) {
             return EntityRef.NULL;
         }
-        PojoEntityRef newRef = new PojoEntityRef(this, entityId);
-        PojoEntityRef existing = entityCache.get(newRef);
-        if (existing != null) {
-            return existing;
+        ensureEntityCapacity(entityId);
+        PojoEntityRef ref = entityRefs[entityId];
+        if (ref == null) {
+            ref = new PojoEntityRef(this, entityId, generations[entityId]);
+            entityRefs[entityId] = ref;
         }
-        entityCache.put(newRef, newRef);
-        return newRef;
+        return ref;
+    }
+
+    /**
+     * @return Whether the given generation is the current generation of the id, that is whether a handle with this
+     *         id and generation refers to an entity that has not been destroyed
+     */
+    boolean isCurrent(int entityId, int generation) {
+        return entityId > NULL_ID && entityId < generations.length && generations[entityId] == generation;
     }
 
     public int getNextId() {
@@ -238,12 +429,28 @@ public class PojoEntityManager implements EntityManager, PersistableEntityManage
 
     public void setNextId(int id) {
         nextEntityId = id;
+        ensureEntityCapacity(id - 1);
+    }
+
+    private synchronized void ensureEntityCapacity(int entityId) {
+        if (entityId >= generations.length) {
+            int newCapacity = Math.max(entityId + 1, generations.length * 2);
+            generations = Arrays.copyOf(generations, newCapacity);
+            entityRefs = Arrays.copyOf(entityRefs, newCapacity);
+        }
     }
 
     public TIntList getFreedIds() {
         return freedIds;
     }
 
+    @Override
+    public TIntSet takeChangedEntities() {
+        TIntSet result = changedEntities;
+        changedEntities = new TIntHashSet();
+        return result;
+    }
+
     private static class EntityEntry<T> implements Map.Entry<EntityRef, T> {
         private EntityRef key;
         private T value;
@@ -0,0 +1,102 @@
+package org.terasology.entitySystem.pojo;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.terasology.entitySystem.Component;
+import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.common.SnapshotEntityQuery;
+
+import java.util.Arrays;
+
+/**
+ * An entity query holding the live set of matching entity ids, which the PojoEntityManager updates whenever one of
+ * the query's components is added to or removed from an entity.
+ */
+class PojoEntityQuery extends SnapshotEntityQuery {
+    private static final int NO_INDEX = -1;
+
+    private final PojoEntityManager entityManager;
+    private final Class<? extends Component>[] componentClasses;
+    private final long[] componentMask;
+
+    /* The matching ids, and the index of each id in the list */
+    private final TIntArrayList ids = new TIntArrayList();
+    private final TIntIntMap indices = new TIntIntHashMap(16, 0.5f, PojoEntityManager.NULL_ID, NO_INDEX);
+
+    public PojoEntityQuery(PojoEntityManager entityManager, Class<? extends Component>... componentClasses) {
+        this.entityManager = entityManager;
+        this.componentClasses = Arrays.copyOf(componentClasses, componentClasses.length);
+        this.componentMask = entityManager.createComponentMask(componentClasses);
+    }
+
+    public Class<? extends Component>[] getComponentClasses() {
+        return componentClasses;
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Adds or removes the entity depending on whether it currently has all the components of the query
+     */
+    public void update(int entityId) {
+        boolean match = hasComponents(entityId);
+        int index = indices.get(entityId);
+        if (match && index == NO_INDEX) {
+            indices.put(entityId, ids.size());
+            ids.add(entityId);
+        } else if (!match && index != NO_INDEX) {
+            remove(entityId);
+        }
+    }
+
+    public void remove(int entityId) {
+        int index = indices.remove(entityId);
+        if (index != NO_INDEX) {
+            int last = ids.size() - 1;
+            if (index != last) {
+                int movedId = ids.get(last);
+                ids.set(index, movedId);
+                indices.put(movedId, index);
+            }
+            ids.removeAt(last);
+        }
+    }
+
+    public void clear() {
+        ids.clear();
+        indices.clear();
+    }
+
+    private boolean hasComponents(int entityId) {
+        if (componentMask != null) {
+            return entityManager.hasComponents(entityId, componentMask);
+        }
+        for (Class<? extends Component> componentClass : componentClasses) {
+            if (!entityManager.hasComponent(entityId, componentClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected int copyIds(int[] buffer) {
+        int size = ids.size();
+        ids.toArray(buffer, 0, size);
+        return size;
+    }
+
+    @Override
+    protected boolean matches(int entityId) {
+        return indices.containsKey(entityId);
+    }
+
+    @Override
+    protected EntityRef getEntity(int entityId) {
+        return entityManager.createEntityRef(entityId);
+    }
+}
@@ -3,67 +3,99 @@ package org.terasology.entitySystem.pojo;
 import org.terasology.entitySystem.Component;
 import org.terasology.entitySystem.EntityRef;
 import org.terasology.entitySystem.Event;
+import org.terasology.entitySystem.common.NullIterator;
 
 /**
+ * A handle to an entity, made of its id and the generation of that id when the handle was created. Destroying an
+ * entity moves its id to the next generation, so handles to the destroyed entity stop existing even once the id has
+ * been reused.
+ *
  * @author Immortius <immortius@gmail.com>
  */
 public class PojoEntityRef extends EntityRef {
-    int id;
-    PojoEntityManager entityManager;
+    private final int id;
+    private final int generation;
+    private final PojoEntityManager entityManager;
 
-    PojoEntityRef(PojoEntityManager manager, int id) {
+    PojoEntityRef(PojoEntityManager manager, int id, int generation) {
         this.id = id;
+        this.generation = generation;
         this.entityManager = manager;
     }
 
     @Override
     public int getId() {
-        return id;
+        return exists() ? id : PojoEntityManager.NULL_ID;
     }
 
     @Override
     public boolean exists() {
-        return id != PojoEntityManager.NULL_ID;
+        return entityManager.isCurrent(id, generation);
     }
 
     @Override
     public <T extends Component> T getComponent(Class<T> componentClass) {
+        if (!exists()) {
+            return null;
+        }
         return entityManager.getComponent(id, componentClass);
     }
 
     @Override
     public <T extends Component> T addComponent(T component) {
+        if (!exists()) {
+            return component;
+        }
         return entityManager.addComponent(id, component);
     }
 
     @Override
     public void removeComponent(Class<? extends Component> componentClass) {
-        entityManager.removeComponent(id, componentClass);
+        if (exists()) {
+            entityManager.removeComponent(id, componentClass);
+        }
     }
 
     @Override
     public void saveComponent(Component component) {
-        entityManager.saveComponent(id, component);
+        if (exists()) {
+            entityManager.saveComponent(id, component);
+        }
     }
 
     @Override
     public Iterable<Component> iterateComponents() {
+        if (!exists()) {
+            return NullIterator.newInstance();
+        }
         return entityManager.iterateComponents(id);
     }
 
     @Override
     public void destroy() {
-        entityManager.destroy(id);
+        if (exists()) {
+            entityManager.destroy(id);
+        }
     }
 
     @Override
     public void send(Event event) {
-        entityManager.getEventSystem().send(this, event);
+        if (exists()) {
+            entityManager.getEventSystem().send(this, event);
+        }
     }
 
     @Override
     public boolean hasComponent(Class<? extends Component> component) {
-        return entityManager.hasComponent(id, component);
+        return exists() && entityManager.hasComponent(id, component);
+    }
+
+    /**
+     * @param componentMask A mask created by the entity manager
+     * @return Whether this entity has all the components in the mask
+     */
+    boolean hasComponents(long[] componentMask) {
+        return exists() && entityManager.hasComponents(id, componentMask);
     }
 
     @Override
@@ -73,24 +105,22 @@ public class PojoEntityRef extends EntityRef {
             if (!exists() && !((EntityRef) o).exists()) return true;
         }
         if (o instanceof PojoEntityRef) {
-            return id == ((PojoEntityRef) o).id;
+            PojoEntityRef other = (PojoEntityRef) o;
+            return id == other.id && generation == other.generation;
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return !exists() ? 0 : (int) (id ^ (id >>> 32));
+        return !exists() ? 0 : id;
     }
 
     @Override
     public String toString() {
         return "EntityRef{" +
-                "id=" + id +
+                "id=" + getId() +
+                ", generation=" + generation +
                 '}';
     }
-
-    void invalidate() {
-        id = PojoEntityManager.NULL_ID;
-    }
 }
@@ -4,11 +4,13 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.*;
 import org.reflections.Reflections;
 import org.terasology.entitySystem.*;
+import org.terasology.entitySystem.event.ChangedComponentEvent;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,7 +23,17 @@ public class PojoEventSystem implements EventSystem {
 
     private EntityManager entitySystem;
     private Map<Class<? extends Event>, Multimap<Class<? extends Component>, EventHandlerInfo>> componentSpecificHandlers = Maps.newHashMap();
+    /* Dispatch table of each event type: every handler for the event, sorted by priority */
+    private Map<Class<? extends Event>, EventHandlerInfo[]> eventHandlerTables = Maps.newHashMap();
+    private Multimap<Class<? extends Event>, EventReceiver> broadcastReceivers = ArrayListMultimap.create();
     private Comparator<EventHandlerInfo> priorityComparator = new EventHandlerPriorityComparator();
+    private EventHandlerInvokerFactory invokerFactory = new EventHandlerInvokerFactory();
+
+    // Queued events
+    private Queue<QueuedEvent> queuedEvents = new ConcurrentLinkedQueue<QueuedEvent>();
+    private List<QueuedEvent> processingEvents = Lists.newArrayList();
+    private Set<QueuedEvent> latestComponentChanges = Sets.newHashSet();
+    private boolean deferComponentChanges;
 
     // Event metadata
     private BiMap<String, Class<? extends Event>> eventIdMap = HashBiMap.create();
@@ -65,7 +77,7 @@ public class PojoEventSystem implements EventSystem {
 
                 if (types.length == 2 && Event.class.isAssignableFrom(types[0]) && EntityRef.class.isAssignableFrom(types[1])) {
                     logger.info("Found method: " + method.toString());
-                    ReflectedEventHandlerInfo handlerInfo = new ReflectedEventHandlerInfo(handler, method, receiveEventAnnotation.priority(), receiveEventAnnotation.components());
+                    ReflectedEventHandlerInfo handlerInfo = new ReflectedEventHandlerInfo(handler, method, invokerFactory.createInvoker(method), receiveEventAnnotation.priority(), receiveEventAnnotation.components());
                     for (Class<? extends Component> c : receiveEventAnnotation.components()) {
                         addEventHandler((Class<? extends Event>) types[0], handlerInfo, c);
                         for (Class<? extends Event> childType : childEvents.get((Class<? extends Event>) types[0])) {
@@ -86,6 +98,29 @@ public class PojoEventSystem implements EventSystem {
             componentSpecificHandlers.put(type, componentMap);
         }
         componentMap.put(c, handlerInfo);
+        addToHandlerTable(type, handlerInfo);
+    }
+
+    /**
+     * Adds a handler to the dispatch table of an event type, keeping the table sorted by priority. Handlers of equal
+     * priority keep their registration order.
+     */
+    private void addToHandlerTable(Class<? extends Event> type, EventHandlerInfo handlerInfo) {
+        EventHandlerInfo[] table = eventHandlerTables.get(type);
+        if (table == null) {
+            eventHandlerTables.put(type, new EventHandlerInfo[]{handlerInfo});
+            return;
+        }
+        for (EventHandlerInfo existing : table) {
+            if (existing == handlerInfo) {
+                return;
+            }
+        }
+        EventHandlerInfo[] newTable = Arrays.copyOf(table, table.length + 1);
+        newTable[table.length] = handlerInfo;
+        // Arrays.sort is a stable merge sort for objects
+        Arrays.sort(newTable, priorityComparator);
+        eventHandlerTables.put(type, newTable);
     }
 
     @Override
@@ -105,14 +140,23 @@ public class PojoEventSystem implements EventSystem {
 
     }
 
+    @Override
+    public <T extends Event> void registerBroadcastReceiver(EventReceiver<T> eventReceiver, Class<T> eventClass) {
+        broadcastReceivers.put(eventClass, eventReceiver);
+        for (Class<? extends Event> childType : childEvents.get(eventClass)) {
+            broadcastReceivers.put(childType, eventReceiver);
+        }
+    }
+
     @Override
     public void send(EntityRef entity, Event event) {
-        Set<EventHandlerInfo> selectedHandlersSet = selectEventHandlers(event.getClass(), entity);
-        List<EventHandlerInfo> selectedHandlers = Lists.newArrayList(selectedHandlersSet);
-        Collections.sort(selectedHandlers, priorityComparator);
+        EventHandlerInfo[] handlers = eventHandlerTables.get(event.getClass());
+        if (handlers == null) {
+            return;
+        }
 
-        for (EventHandlerInfo handler : selectedHandlers) {
-            // Check isValid at each stage in case components were removed.
+        for (EventHandlerInfo handler : handlers) {
+            // Check isValid at each stage in case components were added or removed.
             if (handler.isValidFor(entity)) {
                 handler.invoke(entity, event);
                 if (event.isCancelled())
@@ -123,6 +167,14 @@ public class PojoEventSystem implements EventSystem {
 
     @Override
     public void send(EntityRef entity, Event event, Component component) {
+        if (deferComponentChanges && event instanceof ChangedComponentEvent) {
+            queue(entity, event, component);
+        } else {
+            sendToComponentHandlers(entity, event, component);
+        }
+    }
+
+    private void sendToComponentHandlers(EntityRef entity, Event event, Component component) {
         Multimap<Class<? extends Component>, EventHandlerInfo> handlers = componentSpecificHandlers.get(event.getClass());
         if (handlers != null) {
             for (EventHandlerInfo eventHandler : handlers.get(component.getClass())) {
@@ -133,22 +185,114 @@ public class PojoEventSystem implements EventSystem {
         }
     }
 
-    private Set<EventHandlerInfo> selectEventHandlers(Class<? extends Event> eventType, EntityRef entity) {
-        Set<EventHandlerInfo> result = Sets.newHashSet();
-        Multimap<Class<? extends Component>, EventHandlerInfo> handlers = componentSpecificHandlers.get(eventType);
-        if (handlers == null)
-            return result;
+    @Override
+    public void queue(EntityRef entity, Event event) {
+        queuedEvents.add(new QueuedEvent(entity, event, null, false));
+    }
 
-        for (Class<? extends Component> compClass : handlers.keySet()) {
-            if (entity.hasComponent(compClass)) {
-                for (EventHandlerInfo eventHandler : handlers.get(compClass)) {
-                    if (eventHandler.isValidFor(entity)) {
-                        result.add(eventHandler);
+    @Override
+    public void queue(EntityRef entity, Event event, Component component) {
+        queuedEvents.add(new QueuedEvent(entity, event, component, false));
+    }
+
+    @Override
+    public void queueBroadcast(Event event) {
+        queuedEvents.add(new QueuedEvent(EntityRef.NULL, event, null, true));
+    }
+
+    private void sendBroadcast(Event event) {
+        for (EventReceiver receiver : broadcastReceivers.get(event.getClass())) {
+            receiver.onEvent(event, EntityRef.NULL);
+            if (event.isCancelled())
+                return;
+        }
+    }
+
+    @Override
+    public void processQueuedEvents() {
+        QueuedEvent queued;
+        while ((queued = queuedEvents.poll()) != null) {
+            processingEvents.add(queued);
+        }
+        if (processingEvents.isEmpty()) {
+            return;
+        }
+
+        // Walk backwards so only the latest change to each component of an entity is kept
+        for (int i = processingEvents.size() - 1; i >= 0; --i) {
+            QueuedEvent event = processingEvents.get(i);
+            if (event.isComponentChange() && !latestComponentChanges.add(event)) {
+                processingEvents.set(i, null);
+            }
+        }
+        latestComponentChanges.clear();
+
+        try {
+            for (QueuedEvent event : processingEvents) {
+                if (event == null) {
+                    continue;
+                }
+                if (event.broadcast) {
+                    sendBroadcast(event.event);
+                } else if (event.entity.exists()) {
+                    if (event.component != null) {
+                        sendToComponentHandlers(event.entity, event.event, event.component);
+                    } else {
+                        send(event.entity, event.event);
                     }
                 }
             }
+        } finally {
+            processingEvents.clear();
+        }
+    }
+
+    @Override
+    public void setDeferComponentChanges(boolean defer) {
+        this.deferComponentChanges = defer;
+    }
+
+    @Override
+    public boolean isDeferringComponentChanges() {
+        return deferComponentChanges;
+    }
+
+    /**
+     * An event waiting to be sent. Queued component changes are equal if they are for the same component type of the
+     * same entity, which is what they are coalesced by.
+     */
+    private static class QueuedEvent {
+        private final EntityRef entity;
+        private final Event event;
+        private final Component component;
+        private final boolean broadcast;
+
+        public QueuedEvent(EntityRef entity, Event event, Component component, boolean broadcast) {
+            this.entity = entity;
+            this.event = event;
+            this.component = component;
+            this.broadcast = broadcast;
+        }
+
+        public boolean isComponentChange() {
+            return component != null && event instanceof ChangedComponentEvent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o instanceof QueuedEvent) {
+                QueuedEvent other = (QueuedEvent) o;
+                return isComponentChange() && other.isComponentChange() && entity.equals(other.entity)
+                        && component.getClass().equals(other.component.getClass());
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return isComponentChange() ? 31 * entity.hashCode() + component.getClass().hashCode() : System.identityHashCode(this);
         }
-        return result;
     }
 
     private static class EventHandlerPriorityComparator implements Comparator<EventHandlerInfo> {
@@ -168,20 +312,28 @@ public class PojoEventSystem implements EventSystem {
     }
 
 
-    private class ReflectedEventHandlerInfo implements EventHandlerInfo {
-        private EventHandlerSystem handler;
-        private Method method;
+    /**
+     * Base for handlers that require a set of components. For entities of a PojoEntityManager the requirement is
+     * checked with a bitmask of the components, resolved on first use.
+     */
+    private abstract class ComponentRequiringHandlerInfo implements EventHandlerInfo {
         private Class<? extends Component>[] components;
-        private int priority;
+        private long[] componentMask;
+        private boolean maskResolved;
 
-        public ReflectedEventHandlerInfo(EventHandlerSystem handler, Method method, int priority, Class<? extends Component>... components) {
-            this.handler = handler;
-            this.method = method;
+        public ComponentRequiringHandlerInfo(Class<? extends Component>[] components) {
             this.components = Arrays.copyOf(components, components.length);
-            this.priority = priority;
         }
 
         public boolean isValidFor(EntityRef entity) {
+            if (entity instanceof PojoEntityRef) {
+                if (!maskResolved) {
+                    resolveMask();
+                }
+                if (componentMask != null) {
+                    return ((PojoEntityRef) entity).hasComponents(componentMask);
+                }
+            }
             for (Class<? extends Component> component : components) {
                 if (!entity.hasComponent(component)) {
                     return false;
@@ -190,7 +342,47 @@ public class PojoEventSystem implements EventSystem {
             return true;
         }
 
+        private void resolveMask() {
+            if (entitySystem instanceof PojoEntityManager) {
+                componentMask = ((PojoEntityManager) entitySystem).createComponentMask(components);
+            }
+            maskResolved = true;
+        }
+    }
+
+    /**
+     * Handler for an @ReceiveEvent method. The method is called through a generated invoker where possible, falling
+     * back to reflection.
+     */
+    private class ReflectedEventHandlerInfo extends ComponentRequiringHandlerInfo {
+        private EventHandlerSystem handler;
+        private Method method;
+        private EventHandlerInvoker invoker;
+        private int priority;
+
+        public ReflectedEventHandlerInfo(EventHandlerSystem handler, Method method, EventHandlerInvoker invoker, int priority, Class<? extends Component>... components) {
+            super(components);
+            this.handler = handler;
+            this.method = method;
+            this.invoker = invoker;
+            this.priority = priority;
+        }
+
         public void invoke(EntityRef entity, Event event) {
+            if (invoker != null) {
+                try {
+                    invoker.invoke(handler, event, entity);
+                } catch (Exception ex) {
+                    // Matches the reflected path, where what the handler throws is logged rather than propagated.
+                    // Generated invokers do not declare checked exceptions, but handlers may still throw them
+                    logger.log(Level.SEVERE, "Failed to invoke event", ex);
+                } catch (LinkageError ex) {
+                    logger.log(Level.SEVERE, "Failed to invoke event", ex);
+                } catch (AssertionError ex) {
+                    logger.log(Level.SEVERE, "Failed to invoke event", ex);
+                }
+                return;
+            }
             try {
                 method.invoke(handler, event, entity);
             } catch (IllegalAccessException ex) {
@@ -207,25 +399,14 @@ public class PojoEventSystem implements EventSystem {
         }
     }
 
-    private class ReceiverEventHandlerInfo<T extends Event> implements EventHandlerInfo {
+    private class ReceiverEventHandlerInfo<T extends Event> extends ComponentRequiringHandlerInfo {
         private EventReceiver<T> receiver;
-        private Class<? extends Component>[] components;
         private int priority;
 
         public ReceiverEventHandlerInfo(EventReceiver<T> receiver, int priority, Class<? extends Component>... components) {
+            super(components);
             this.receiver = receiver;
             this.priority = priority;
-            this.components = Arrays.copyOf(components, components.length);
-        }
-
-        @Override
-        public boolean isValidFor(EntityRef entity) {
-            for (Class<? extends Component> component : components) {
-                if (!entity.hasComponent(component)) {
-                    return false;
-                }
-            }
-            return true;
         }
 
         @Override
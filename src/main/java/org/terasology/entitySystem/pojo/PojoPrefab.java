@@ -5,6 +5,7 @@ import com.google.common.collect.Maps;
 import org.terasology.entitySystem.AbstractPrefab;
 import org.terasology.entitySystem.Component;
 import org.terasology.entitySystem.Prefab;
+import org.terasology.entitySystem.PrefabTemplate;
 import org.terasology.entitySystem.metadata.ComponentLibrary;
 
 import java.util.Collections;
@@ -22,6 +23,7 @@ public class PojoPrefab extends AbstractPrefab implements Prefab {
     private List<Prefab> parents;
 
     private transient Map<Class<? extends Component>, Component> componentCache;
+    private transient PrefabTemplate template;
 
     protected PojoPrefab(String name, ComponentLibrary componentLibrary) {
         this(name, componentLibrary, Maps.<Class<? extends Component>, Component>newHashMap(), Lists.<Prefab>newLinkedList());
@@ -48,6 +50,7 @@ public class PojoPrefab extends AbstractPrefab implements Prefab {
         if (componentCache != null) {
             this.componentCache.put(component.getClass(), component);
         }
+        template = null;
 
         return component;
     }
@@ -98,6 +101,17 @@ public class PojoPrefab extends AbstractPrefab implements Prefab {
 
     private void invalidateComponentCache() {
         componentCache = null;
+        template = null;
+    }
+
+    /**
+     * @return The compiled template of this prefab, which is rebuilt whenever the prefab's components change
+     */
+    PrefabTemplate getTemplate() {
+        if (template == null) {
+            template = new PrefabTemplate(this, componentLibrary);
+        }
+        return template;
     }
 
     private void buildComponentCache() {
@@ -4,6 +4,7 @@ import com.google.common.collect.Maps;
 import org.terasology.entitySystem.Component;
 import org.terasology.entitySystem.Prefab;
 import org.terasology.entitySystem.PrefabManager;
+import org.terasology.entitySystem.PrefabTemplate;
 import org.terasology.entitySystem.metadata.ComponentLibrary;
 
 import java.util.*;
@@ -62,6 +63,13 @@ public class PojoPrefabManager implements PrefabManager {
         prefabTable.remove(normalisedName);
     }
 
+    public PrefabTemplate getTemplate(Prefab prefab) {
+        if (prefab instanceof PojoPrefab) {
+            return ((PojoPrefab) prefab).getTemplate();
+        }
+        return new PrefabTemplate(prefab, componentLibrary);
+    }
+
     public <T extends Component> T getComponent(String name, Class<T> componentClass) {
         if (!exists(name)) {
             return null;
@@ -15,7 +15,6 @@
 */
 package org.terasology.game;
 
-import org.terasology.game.modes.StateMainMenu;
 import org.terasology.logic.manager.PathManager;
 
 import java.applet.Applet;
@@ -77,7 +76,7 @@ public final class TerasologyApplet extends Applet {
             public void run() {
                 try {
                     engine = new TerasologyEngine();
-                    engine.run(new StateMainMenu(engine));
+                    engine.run(engine.createInitialState());
                 } catch (Exception e) {
                     Logger.getLogger(TerasologyApplet.class.getName()).log(Level.SEVERE, e.toString(), e);
                 }
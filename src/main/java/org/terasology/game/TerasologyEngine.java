@@ -25,10 +25,13 @@ import static org.lwjgl.opengl.GL11.glEnable;
 import static org.lwjgl.opengl.GL11.glViewport;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.text.SimpleDateFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -54,6 +57,8 @@ import org.terasology.asset.loaders.OggSoundLoader;
 import org.terasology.asset.loaders.OggStreamingSoundLoader;
 import org.terasology.asset.loaders.PNGTextureLoader;
 import org.terasology.asset.sources.ClasspathSource;
+import org.terasology.game.modes.StateBenchmark;
+import org.terasology.game.modes.StateMainMenu;
 import org.terasology.logic.manager.AssetManager;
 import org.terasology.logic.manager.AudioManager;
 import org.terasology.logic.manager.Config;
@@ -63,6 +68,7 @@ import org.terasology.logic.manager.ShaderManager;
 import org.terasology.logic.manager.VertexBufferObjectManager;
 import org.terasology.model.shapes.BlockShapeManager;
 import org.terasology.performanceMonitor.PerformanceMonitor;
+import org.terasology.performanceMonitor.TraceFormat;
 import org.terasology.teraspout.TeraSpout;
 
 import com.google.common.collect.Lists;
@@ -71,6 +77,11 @@ import com.google.common.collect.Lists;
  * @author Immortius
  */
 public class TerasologyEngine extends SpoutClient {
+    /**
+     * System property that starts a performance trace on startup, with the name of the {@link TraceFormat} as value
+     */
+    public static final String PERFORMANCE_TRACE_PROPERTY = "terasology.performanceTrace";
+
     private Deque<GameState> stateStack = new ArrayDeque<GameState>();
     private boolean initialised;
     private boolean running;
@@ -108,6 +119,7 @@ public class TerasologyEngine extends SpoutClient {
         initOpenAL();
         initControls();
         initManagers();
+        initPerformanceTrace();
         initialised = true;
     }
 
@@ -131,9 +143,19 @@ public class TerasologyEngine extends SpoutClient {
 		AudioManager.getInstance().destroy();
 		Mouse.destroy();
 		Keyboard.destroy();
+		PerformanceMonitor.stopTrace();
 		super.stop(message);
     }
 
+    /**
+     * @return The state to start the game in - a benchmark if one was requested through system properties (see
+     *         {@link StateBenchmark}), otherwise the main menu
+     */
+    public GameState createInitialState() {
+        GameState benchmark = StateBenchmark.fromSystemProperties(this);
+        return (benchmark != null) ? benchmark : new StateMainMenu(this);
+    }
+
     public boolean isRunning() {
         return running;
     }
@@ -184,6 +206,25 @@ public class TerasologyEngine extends SpoutClient {
         });
     }
 
+    /**
+     * Starts recording a performance trace into the log directory.
+     *
+     * @param format The format of the trace
+     * @return The file the trace is written to, or null if it could not be started
+     */
+    public File startPerformanceTrace(TraceFormat format) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyMMddHHmmssSSS");
+        File file = new File(PathManager.getInstance().getLogPath(), "trace-" + sdf.format(new Date()) + "." + format.getFileExtension());
+        try {
+            PerformanceMonitor.startTrace(file, format);
+            logger.log(Level.INFO, "Recording performance trace to " + file);
+            return file;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to start performance trace", e);
+            return null;
+        }
+    }
+
     public int getActiveTaskCount() {
         return threadPool.getActiveCount();
     }
@@ -215,6 +256,17 @@ public class TerasologyEngine extends SpoutClient {
         }
     }
 
+    private void initPerformanceTrace() {
+        String traceFormat = System.getProperty(PERFORMANCE_TRACE_PROPERTY);
+        if (traceFormat != null) {
+            try {
+                startPerformanceTrace(TraceFormat.valueOf(traceFormat));
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "Unknown performance trace format: " + traceFormat);
+            }
+        }
+    }
+
     private void initOpenAL() {
         // TODO: Put in registry
         AudioManager.getInstance().initialize();
@@ -312,6 +364,7 @@ public class TerasologyEngine extends SpoutClient {
         Config.getInstance().saveConfig(new File(PathManager.getInstance().getWorldPath(), "last.cfg"));
         doPurgeStates();
         terminateThreads();
+        PerformanceMonitor.stopTrace();
     }
 
     private void terminateThreads() {
@@ -325,6 +378,9 @@ public class TerasologyEngine extends SpoutClient {
 
     @Override
     public void render(float dt) {
+        // Ends the "Other" activity started at the end of the previous frame
+        PerformanceMonitor.endActivity();
+
         // Only process rendering and updating once a second
         // TODO: Add debug config setting to run even if display inactive
         if (!Display.isActive()) {
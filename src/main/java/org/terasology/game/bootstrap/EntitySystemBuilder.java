@@ -20,6 +20,7 @@ import org.reflections.Reflections;
 import org.terasology.asset.AssetType;
 import org.terasology.audio.Sound;
 import org.terasology.entitySystem.*;
+import org.terasology.entitySystem.archetype.ArchetypeEntityManager;
 import org.terasology.entitySystem.metadata.ComponentLibrary;
 import org.terasology.entitySystem.metadata.ComponentLibraryImpl;
 import org.terasology.entitySystem.metadata.extension.*;
@@ -42,6 +43,16 @@ import java.util.Set;
  * @author Immortius
  */
 public class EntitySystemBuilder {
+    /**
+     * System property selecting the entity store - "archetype" for the {@link ArchetypeEntityManager}, otherwise the
+     * {@link PojoEntityManager} is used
+     */
+    public static final String ENTITY_STORE_PROPERTY = "terasology.entityStore";
+    /**
+     * System property which, when true, queues and coalesces component change events rather than sending them
+     * immediately
+     */
+    public static final String DEFER_COMPONENT_CHANGES_PROPERTY = "terasology.events.deferComponentChanges";
 
     public PersistableEntityManager build() {
         ComponentLibrary library = new ComponentLibraryImpl();
@@ -51,8 +62,14 @@ public class EntitySystemBuilder {
         PrefabManager prefabManager = new PojoPrefabManager(library);
         CoreRegistry.put(PrefabManager.class, prefabManager);
 
-        PersistableEntityManager entityManager = new PojoEntityManager(library, prefabManager);
+        PersistableEntityManager entityManager;
+        if ("archetype".equals(System.getProperty(ENTITY_STORE_PROPERTY))) {
+            entityManager = new ArchetypeEntityManager(library, prefabManager);
+        } else {
+            entityManager = new PojoEntityManager(library, prefabManager);
+        }
         entityManager.setEventSystem(new PojoEventSystem(entityManager));
+        entityManager.getEventSystem().setDeferComponentChanges(Boolean.getBoolean(DEFER_COMPONENT_CHANGES_PROPERTY));
         CoreRegistry.put(EntityManager.class, entityManager);
         CoreRegistry.put(EventSystem.class, entityManager.getEventSystem());
 
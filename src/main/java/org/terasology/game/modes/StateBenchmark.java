@@ -0,0 +1,301 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.game.modes;
+
+import com.google.gson.stream.JsonWriter;
+import gnu.trove.list.array.TDoubleArrayList;
+import org.terasology.game.TerasologyEngine;
+import org.terasology.logic.manager.Config;
+import org.terasology.logic.manager.PathManager;
+import org.terasology.performanceMonitor.LatencyPercentiles;
+import org.terasology.performanceMonitor.PerformanceMonitor;
+import org.terasology.rendering.cameras.Camera;
+import org.terasology.rendering.cameras.CameraPath;
+import org.terasology.rendering.world.WorldRenderer;
+
+import javax.vecmath.Vector3d;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scripted benchmark mode. Plays a world that is neither loaded from nor saved to disk, flying the camera along a
+ * recorded or procedural path for a set time, then writes a JSON report of frame times, chunk pipeline latencies, rendered
+ * triangles, garbage collection and memory use, and exits.
+ * <p/>
+ * The benchmark is started instead of the main menu when the {@link #DURATION_PROPERTY} system property is set.
+ */
+public class StateBenchmark extends StateSinglePlayer {
+    /**
+     * System property holding the duration of the benchmark in seconds. Setting it starts the benchmark.
+     */
+    public static final String DURATION_PROPERTY = "terasology.benchmark";
+    /**
+     * System property holding the camera path file to replay. A demo flight is used if not set.
+     */
+    public static final String CAMERA_PATH_PROPERTY = "terasology.benchmark.cameraPath";
+    /**
+     * System property holding the file to write the report to. Defaults to a timestamped file in the log path.
+     */
+    public static final String REPORT_PROPERTY = "terasology.benchmark.report";
+    public static final double DEFAULT_DURATION = 60.0;
+
+    private static final String WORLD_NAME = "Benchmark";
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    private final TerasologyEngine engine;
+    private final double durationInSecs;
+    private final File cameraPathFile;
+    private final File reportFile;
+
+    private CameraPath cameraPath;
+    private boolean previouslyEnabled;
+    private boolean finished;
+
+    /* STATISTICS */
+    private long startTime;
+    private long lastFrameTime;
+    private final TDoubleArrayList frameTimes = new TDoubleArrayList();
+    private long totalTriangles;
+    private int maxTriangles;
+    private long initialCollections;
+    private long initialCollectionTime;
+    private long peakMemory;
+
+    /**
+     * @param engine         The engine
+     * @param durationInSecs How long the benchmark runs
+     * @param cameraPathFile The camera path to replay, or null to fly the demo flight
+     * @param reportFile     The file the report is written to
+     */
+    public StateBenchmark(TerasologyEngine engine, double durationInSecs, File cameraPathFile, File reportFile) {
+        super(engine, WORLD_NAME, null);
+        this.engine = engine;
+        this.durationInSecs = durationInSecs;
+        this.cameraPathFile = cameraPathFile;
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * Creates a benchmark configured by system properties.
+     *
+     * @return The benchmark, or null if no benchmark was requested
+     */
+    public static StateBenchmark fromSystemProperties(TerasologyEngine engine) {
+        String duration = System.getProperty(DURATION_PROPERTY);
+        if (duration == null) {
+            return null;
+        }
+        double durationInSecs = DEFAULT_DURATION;
+        try {
+            durationInSecs = Double.parseDouble(duration);
+        } catch (NumberFormatException e) {
+            Logger.getLogger(StateBenchmark.class.getName()).log(Level.WARNING, "Invalid benchmark duration '" + duration + "', using " + DEFAULT_DURATION);
+        }
+
+        String cameraPath = System.getProperty(CAMERA_PATH_PROPERTY);
+        String report = System.getProperty(REPORT_PROPERTY);
+        File reportFile;
+        if (report != null) {
+            reportFile = new File(report);
+        } else {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyMMddHHmmssSSS");
+            reportFile = new File(PathManager.getInstance().getLogPath(), "benchmark-" + sdf.format(new Date()) + ".json");
+        }
+        return new StateBenchmark(engine, durationInSecs, (cameraPath != null) ? new File(cameraPath) : null, reportFile);
+    }
+
+    @Override
+    public void loadResources() {
+        super.loadResources();
+
+        previouslyEnabled = PerformanceMonitor.isEnabled();
+        PerformanceMonitor.setEnabled(true);
+
+        if (cameraPathFile != null) {
+            try {
+                cameraPath = CameraPath.load(cameraPathFile);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to load camera path, using demo flight", e);
+            }
+        }
+        if (cameraPath == null || cameraPath.isEmpty()) {
+            Camera camera = getActiveCamera();
+            Vector3d start = (camera != null) ? camera.getPosition() : new Vector3d(0, 64, 0);
+            cameraPath = CameraPath.demoFlight(start, Config.getInstance().getDemoFlightSpeed(), durationInSecs);
+        }
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            initialCollections += Math.max(0, gc.getCollectionCount());
+            initialCollectionTime += Math.max(0, gc.getCollectionTime());
+        }
+        logger.log(Level.INFO, "Running benchmark for {0} seconds", durationInSecs);
+    }
+
+    @Override
+    public void unloadResources() {
+        PerformanceMonitor.setEnabled(previouslyEnabled);
+        super.unloadResources();
+    }
+
+    @Override
+    protected boolean isPersistent() {
+        return false;
+    }
+
+    @Override
+    public void onRender(float delta) {
+        if (finished) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (startTime == 0) {
+            startTime = now;
+        } else {
+            frameTimes.add((now - lastFrameTime) / 1000000.0);
+        }
+        lastFrameTime = now;
+        double elapsed = (now - startTime) / 1000000000.0;
+
+        Camera camera = getActiveCamera();
+        if (camera != null) {
+            cameraPath.apply(elapsed, camera);
+        }
+
+        super.onRender(delta);
+
+        WorldRenderer worldRenderer = getWorldRenderer();
+        if (worldRenderer != null) {
+            int triangles = worldRenderer.getStatRenderedTriangles();
+            totalTriangles += triangles;
+            maxTriangles = Math.max(maxTriangles, triangles);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        peakMemory = Math.max(peakMemory, runtime.totalMemory() - runtime.freeMemory());
+
+        if (elapsed >= durationInSecs) {
+            finished = true;
+            try {
+                writeReport();
+                logger.log(Level.INFO, "Benchmark report written to " + reportFile);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to write benchmark report", e);
+            }
+            engine.stop("Benchmark complete");
+        }
+    }
+
+    private Camera getActiveCamera() {
+        WorldRenderer worldRenderer = getWorldRenderer();
+        return (worldRenderer != null) ? worldRenderer.getActiveCamera() : null;
+    }
+
+    private void writeReport() throws IOException {
+        long collections = 0;
+        long collectionTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, gc.getCollectionCount());
+            collectionTime += Math.max(0, gc.getCollectionTime());
+        }
+        int frames = frameTimes.size();
+        double[] sortedFrameTimes = frameTimes.toArray();
+        Arrays.sort(sortedFrameTimes);
+        double totalFrameTime = frameTimes.sum();
+
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new FileWriter(reportFile)));
+        try {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("duration").value(durationInSecs);
+            writer.name("cameraPath").value((cameraPathFile != null) ? cameraPathFile.getPath() : "demoFlight");
+            writer.name("frames").value(frames);
+
+            writer.name("frameTime").beginObject();
+            writer.name("mean").value((frames > 0) ? totalFrameTime / frames : 0);
+            writer.name("p50").value(percentile(sortedFrameTimes, 0.5));
+            writer.name("p90").value(percentile(sortedFrameTimes, 0.9));
+            writer.name("p99").value(percentile(sortedFrameTimes, 0.99));
+            writer.name("max").value((frames > 0) ? sortedFrameTimes[frames - 1] : 0);
+            writer.endObject();
+            writer.name("fps").value((totalFrameTime > 0) ? frames * 1000.0 / totalFrameTime : 0);
+
+            writer.name("triangles").beginObject();
+            writer.name("mean").value((frames > 0) ? totalTriangles / (double) frames : 0);
+            writer.name("max").value(maxTriangles);
+            writer.endObject();
+
+            writer.name("gc").beginObject();
+            writer.name("collections").value(collections - initialCollections);
+            writer.name("time").value(collectionTime - initialCollectionTime);
+            writer.endObject();
+
+            Runtime runtime = Runtime.getRuntime();
+            writer.name("memory").beginObject();
+            writer.name("peakUsedMb").value(peakMemory / BYTES_PER_MB);
+            writer.name("usedMb").value((runtime.totalMemory() - runtime.freeMemory()) / BYTES_PER_MB);
+            writer.name("maxMb").value(runtime.maxMemory() / BYTES_PER_MB);
+            writer.endObject();
+
+            writer.name("activities");
+            writePercentiles(writer, PerformanceMonitor.getPercentiles());
+            writer.name("threads").beginObject();
+            for (String thread : PerformanceMonitor.getActivityThreads()) {
+                writer.name(thread);
+                writePercentiles(writer, PerformanceMonitor.getPercentiles(thread));
+            }
+            writer.endObject();
+
+            writer.endObject();
+        } finally {
+            // JAVA7: Replace with improved resource handling
+            writer.close();
+        }
+    }
+
+    private void writePercentiles(JsonWriter writer, Map<String, LatencyPercentiles> percentiles) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, LatencyPercentiles> entry : percentiles.entrySet()) {
+            LatencyPercentiles value = entry.getValue();
+            writer.name(entry.getKey()).beginObject();
+            writer.name("p50").value(value.getP50());
+            writer.name("p90").value(value.getP90());
+            writer.name("p99").value(value.getP99());
+            writer.name("max").value(value.getMax());
+            writer.name("samples").value(value.getSampleCount());
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    private static double percentile(double[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -37,6 +37,7 @@ import org.terasology.asset.AssetType;
 import org.terasology.asset.AssetUri;
 import org.terasology.componentSystem.controllers.LocalPlayerSystem;
 import org.terasology.components.LocalPlayerComponent;
+import org.terasology.entitySystem.ComponentCursor;
 import org.terasology.entitySystem.ComponentSystem;
 import org.terasology.entitySystem.EntityRef;
 import org.terasology.entitySystem.PersistableEntityManager;
@@ -72,7 +73,16 @@ import org.terasology.utilities.FastRandom;
  */
 public class StateSinglePlayer extends GameState {
 
+    /**
+     * Entity data saved in the Binary format, by older versions. Only read when there is no streamed entity data.
+     */
     public static final String ENTITY_DATA_FILE = "entity.dat";
+    public static final String ENTITY_STREAM_FILE = "entity.stream";
+    /**
+     * System property holding the interval between incremental saves of the entities, in seconds. Zero disables them.
+     */
+    public static final String AUTOSAVE_INTERVAL_PROPERTY = "terasology.autosaveInterval";
+    public static final int DEFAULT_AUTOSAVE_INTERVAL = 60;
     private Logger logger = Logger.getLogger(getClass().getName());
 
     private String currentWorldName;
@@ -93,11 +103,24 @@ public class StateSinglePlayer extends GameState {
 
     /* GAME LOOP */
     private boolean pauseGame = false;
+    private final int autosaveInterval = Integer.getInteger(AUTOSAVE_INTERVAL_PROPERTY, DEFAULT_AUTOSAVE_INTERVAL);
+    private float timeSinceAutosave;
     
     public StateSinglePlayer(TerasologyEngine engine) {
     	this.engine = engine;
     }
 
+    /**
+     * @param engine    The engine
+     * @param worldName The title of the world to play
+     * @param seed      The seed of the world, or null for a random seed
+     */
+    public StateSinglePlayer(TerasologyEngine engine, String worldName, String seed) {
+        this.engine = engine;
+        this.currentWorldName = worldName;
+        this.currentWorldSeed = seed;
+    }
+
     @Override
     public void initialize() {
         cacheTextures();
@@ -161,10 +184,12 @@ public class StateSinglePlayer extends GameState {
             system.shutdown();
         }
         GUIManager.getInstance().closeWindows();
-        try {
-            CoreRegistry.get(WorldPersister.class).save(new File(PathManager.getInstance().getWorldSavePath(CoreRegistry.get(WorldProvider.class).getTitle()), ENTITY_DATA_FILE), WorldPersister.SaveFormat.Binary);
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Failed to save entities", e);
+        if (isPersistent()) {
+            try {
+                CoreRegistry.get(WorldPersister.class).save(new File(PathManager.getInstance().getWorldSavePath(CoreRegistry.get(WorldProvider.class).getTitle()), ENTITY_STREAM_FILE), WorldPersister.SaveFormat.Streaming);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to save entities", e);
+            }
         }
         dispose();
         entityManager.clear();
@@ -179,6 +204,10 @@ public class StateSinglePlayer extends GameState {
 
     @Override
     public void onRender(float delta) {
+        PerformanceMonitor.startActivity("Process Queued Events");
+        entityManager.getEventSystem().processQueuedEvents();
+        PerformanceMonitor.endActivity();
+
         /* GUI */
         updateUserInterface();
 
@@ -186,11 +215,25 @@ public class StateSinglePlayer extends GameState {
             worldRenderer.update(delta);
         }
 
+        if (isPersistent() && autosaveInterval > 0) {
+            timeSinceAutosave += delta;
+            if (timeSinceAutosave >= autosaveInterval) {
+                timeSinceAutosave = 0;
+                PerformanceMonitor.startActivity("Autosave");
+                autosave();
+                PerformanceMonitor.endActivity();
+            }
+            PerformanceMonitor.startActivity("Save Snapshot");
+            CoreRegistry.get(WorldPersister.class).update();
+            PerformanceMonitor.endActivity();
+        }
+
         /* TODO: This seems a little off - plus is more of a UI than single player game state concern. Move somewhere
            more appropriate? Possibly HUD? */
         boolean dead = true;
-        for (EntityRef entity : entityManager.iteratorEntities(LocalPlayerComponent.class)) {
-            dead = entity.getComponent(LocalPlayerComponent.class).isDead;
+        ComponentCursor<LocalPlayerComponent> localPlayers = entityManager.componentCursor(LocalPlayerComponent.class);
+        while (localPlayers.next()) {
+            dead = localPlayers.getComponent().isDead;
         }
         if (dead) {
             if (GUIManager.getInstance().getWindowById("engine:statusScreen") == null) {
@@ -205,6 +248,14 @@ public class StateSinglePlayer extends GameState {
         handleInput(delta);
     }
 
+    private void autosave() {
+        try {
+            CoreRegistry.get(WorldPersister.class).saveChanges(new File(PathManager.getInstance().getWorldSavePath(CoreRegistry.get(WorldProvider.class).getTitle()), ENTITY_STREAM_FILE));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to save entity changes", e);
+        }
+    }
+
     public void handleInput(float delta) {
         cameraTargetSystem.update();
         inputSystem.update(delta);
@@ -249,11 +300,17 @@ public class StateSinglePlayer extends GameState {
         // Init. a new world
         // TODO
 
+        File entityStreamFile = new File(PathManager.getInstance().getWorldSavePath(title), ENTITY_STREAM_FILE);
         File entityDataFile = new File(PathManager.getInstance().getWorldSavePath(title), ENTITY_DATA_FILE);
         entityManager.clear();
-        if (entityDataFile.exists()) {
+        WorldPersister worldPersister = CoreRegistry.get(WorldPersister.class);
+        if (isPersistent() && (worldPersister.hasSave(entityStreamFile) || entityDataFile.exists())) {
             try {
-                CoreRegistry.get(WorldPersister.class).load(entityDataFile, WorldPersister.SaveFormat.Binary);
+                if (worldPersister.hasSave(entityStreamFile)) {
+                    worldPersister.load(entityStreamFile, WorldPersister.SaveFormat.Streaming);
+                } else {
+                    worldPersister.load(entityDataFile, WorldPersister.SaveFormat.Binary);
+                }
             } catch (IOException e) {
                 logger.log(Level.SEVERE, "Failed to load entity data", e);
             }
@@ -380,6 +437,13 @@ public class StateSinglePlayer extends GameState {
         GUIManager.getInstance().update();
     }
 
+    /**
+     * @return Whether entities are loaded from and saved to the world's save path
+     */
+    protected boolean isPersistent() {
+        return true;
+    }
+
     public WorldRenderer getWorldRenderer() {
         return worldRenderer;
     }
@@ -29,6 +29,14 @@ public interface ChunkStore {
 
     public boolean contains(Vector3i position);
 
+    /**
+     * Restores the stored light and states of a chunk, if they were computed from the blocks the chunk has now.
+     *
+     * @param c
+     * @return Whether the chunk was restored; if not, its light must be computed
+     */
+    public boolean restore(TeraChunk c);
+
     public float size();
 
     void dispose();
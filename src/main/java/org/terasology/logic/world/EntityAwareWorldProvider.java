@@ -18,13 +18,15 @@ package org.terasology.logic.world;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 import org.terasology.components.HealthComponent;
 import org.terasology.components.world.BlockComponent;
 import org.terasology.entitySystem.EntityManager;
 import org.terasology.entitySystem.EntityRef;
+import org.terasology.entitySystem.EventReceiver;
 import org.terasology.entitySystem.EventHandlerSystem;
+import org.terasology.entitySystem.Prefab;
+import org.terasology.entitySystem.PrefabTemplate;
 import org.terasology.entitySystem.ReceiveEvent;
 import org.terasology.entitySystem.event.AddComponentEvent;
 import org.terasology.entitySystem.event.RemovedComponentEvent;
@@ -35,7 +37,6 @@ import org.terasology.teraspout.TeraBlock;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Queues;
 
 /**
  * @author Immortius
@@ -51,7 +52,6 @@ public class EntityAwareWorldProvider extends AbstractWorldProviderDecorator imp
     private List<EntityRef> tempBlocks = Lists.newArrayList();
 
     private Thread mainThread;
-    private Queue<BlockChangedEvent> eventQueue = Queues.newConcurrentLinkedQueue();
 
     public EntityAwareWorldProvider(WorldProviderCore base) {
         super(base);
@@ -61,6 +61,13 @@ public class EntityAwareWorldProvider extends AbstractWorldProviderDecorator imp
     @Override
     public void initialise() {
         this.entityManager = CoreRegistry.get(EntityManager.class);
+        // Blocks changed on other threads are broadcast, and passed on to their block entity on the main thread
+        entityManager.getEventSystem().registerBroadcastReceiver(new EventReceiver<BlockChangedEvent>() {
+            @Override
+            public void onEvent(BlockChangedEvent event, EntityRef entity) {
+                getOrCreateEntityAt(event.getBlockPosition()).send(event);
+            }
+        }, BlockChangedEvent.class);
         for (EntityRef blockComp : entityManager.iteratorEntities(BlockComponent.class)) {
             BlockComponent comp = blockComp.getComponent(BlockComponent.class);
             blockComponentLookup.put(new Vector3i(comp.getPosition()), blockComp);
@@ -88,7 +95,7 @@ public class EntityAwareWorldProvider extends AbstractWorldProviderDecorator imp
             if (Thread.currentThread().equals(mainThread)) {
                 getOrCreateEntityAt(new Vector3i(x, y, z)).send(new BlockChangedEvent(new Vector3i(x, y, z), type, oldType));
             } else {
-                eventQueue.add(new BlockChangedEvent(new Vector3i(x, y, z), type, oldType));
+                entityManager.getEventSystem().queueBroadcast(new BlockChangedEvent(new Vector3i(x, y, z), type, oldType));
             }
             return true;
         }
@@ -109,14 +116,23 @@ public class EntityAwareWorldProvider extends AbstractWorldProviderDecorator imp
             if (block.getId() == 0)
                 return EntityRef.NULL;
 
-            blockEntity = entityManager.create(block.getEntityPrefab());
-            if (block.isEntityTemporary()) {
-                tempBlocks.add(blockEntity);
+            PrefabTemplate template = null;
+            String prefabName = block.getEntityPrefab();
+            if (prefabName != null && !prefabName.isEmpty()) {
+                Prefab prefab = entityManager.getPrefabManager().getPrefab(prefabName);
+                if (prefab != null) {
+                    template = entityManager.getPrefabManager().getTemplate(prefab);
+                }
             }
-            blockEntity.addComponent(new BlockComponent(blockPosition, block.isEntityTemporary()));
+            BlockComponent blockComponent = new BlockComponent(blockPosition, block.isEntityTemporary());
             // TODO: Get regen and wait from block config?
             if (block.isDestructible()) {
-                blockEntity.addComponent(new HealthComponent(block.getHardness(), 2.0f, 1.0f));
+                blockEntity = entityManager.create(template, blockComponent, new HealthComponent(block.getHardness(), 2.0f, 1.0f));
+            } else {
+                blockEntity = entityManager.create(template, blockComponent);
+            }
+            if (block.isEntityTemporary()) {
+                tempBlocks.add(blockEntity);
             }
         }
         return blockEntity;
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.logic.world.chunkStore;
+
+import com.google.common.collect.Maps;
+import org.spout.api.geo.cuboid.Chunk;
+import org.terasology.logic.world.ChunkStore;
+import org.terasology.math.Vector3i;
+import org.terasology.teraspout.TeraChunk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores the light and states of chunks, so that they only need to be computed again when the chunk's blocks change.
+ * <p/>
+ * Chunks are grouped into cubic regions, each stored in one {@link RegionFile}. A chunk's record holds a hash of its
+ * blocks, its state and its deflated light and states arrays. A record is only restored onto a chunk whose blocks
+ * still have the same hash.
+ * <p/>
+ * Only chunks whose light is complete are stored; the light of any other chunk has to be computed again anyway, so
+ * it is not kept. The store holds no chunks in memory: {@link #get(Vector3i)} always returns null, and stored chunks
+ * are brought back with {@link #restore(TeraChunk)}. Positions are chunk positions.
+ * <p/>
+ * Nothing marks a chunk's light complete yet, so the store is not registered with the world; registering it before
+ * then would only cost a read for every chunk loaded.
+ */
+public class RegionChunkStore implements ChunkStore {
+    private static final String REGION_FILE_FORMAT = "r.%d.%d.%d.region";
+
+    private Logger logger = Logger.getLogger(getClass().getName());
+
+    private final File directory;
+    private final Map<Vector3i, RegionFile> regions = Maps.newHashMap();
+
+    public RegionChunkStore(File directory) {
+        this.directory = directory;
+        directory.mkdirs();
+    }
+
+    @Override
+    public TeraChunk get(Vector3i position) {
+        return null;
+    }
+
+    @Override
+    public void put(TeraChunk c) {
+        if (c.getChunkState() == TeraChunk.State.COMPLETE) {
+            write(getChunkPosition(c), c);
+        }
+    }
+
+    @Override
+    public boolean contains(Vector3i position) {
+        try {
+            RegionFile region = getRegion(position, false);
+            return region != null && region.contains(RegionFile.getIndex(position.x, position.y, position.z));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to read region of chunk " + position, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean restore(TeraChunk c) {
+        Vector3i position = getChunkPosition(c);
+        try {
+            RegionFile region = getRegion(position, false);
+            if (region == null) {
+                return false;
+            }
+            byte[] record = region.read(RegionFile.getIndex(position.x, position.y, position.z));
+            if (record == null) {
+                return false;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            if (in.readLong() != c.computeBlockHash()) {
+                return false;
+            }
+            TeraChunk.State state = TeraChunk.State.values()[in.readUnsignedByte()];
+            byte[] data = new byte[in.readInt()];
+            DataInputStream inflaterIn = new DataInputStream(new InflaterInputStream(in));
+            try {
+                inflaterIn.readFully(data);
+            } finally {
+                // JAVA7: Replace with improved resource handling
+                inflaterIn.close();
+            }
+
+            c.lock();
+            try {
+                c.setLightingData(data);
+                c.setChunkState(state);
+            } finally {
+                c.unlock();
+            }
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to restore chunk " + position, e);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to restore chunk " + position, e);
+        }
+        return false;
+    }
+
+    /**
+     * @return The size of the region files in megabytes
+     */
+    @Override
+    public float size() {
+        long total = 0;
+        synchronized (regions) {
+            for (RegionFile region : regions.values()) {
+                try {
+                    total += region.size();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to read region size", e);
+                }
+            }
+        }
+        return total / (1024f * 1024f);
+    }
+
+    /**
+     * Closes the region files
+     */
+    @Override
+    public void dispose() {
+        synchronized (regions) {
+            for (RegionFile region : regions.values()) {
+                try {
+                    region.close();
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Failed to close region file", e);
+                }
+            }
+            regions.clear();
+        }
+    }
+
+    private void write(Vector3i position, TeraChunk c) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte[] data;
+            c.lock();
+            try {
+                out.writeLong(c.computeBlockHash());
+                out.writeByte(c.getChunkState().ordinal());
+                data = c.getLightingData();
+            } finally {
+                c.unlock();
+            }
+            out.writeInt(data.length);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater);
+                deflaterOut.write(data);
+                deflaterOut.finish();
+            } finally {
+                deflater.end();
+            }
+            out.flush();
+
+            getRegion(position, true).write(RegionFile.getIndex(position.x, position.y, position.z), bytes.toByteArray());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to store chunk " + position, e);
+        }
+    }
+
+    private RegionFile getRegion(Vector3i chunkPosition, boolean create) throws IOException {
+        Vector3i regionPosition = new Vector3i(RegionFile.getRegion(chunkPosition.x), RegionFile.getRegion(chunkPosition.y), RegionFile.getRegion(chunkPosition.z));
+        synchronized (regions) {
+            RegionFile region = regions.get(regionPosition);
+            if (region == null) {
+                File file = new File(directory, String.format(REGION_FILE_FORMAT, regionPosition.x, regionPosition.y, regionPosition.z));
+                if (!create && !file.exists()) {
+                    return null;
+                }
+                region = new RegionFile(file);
+                regions.put(regionPosition, region);
+            }
+            return region;
+        }
+    }
+
+    private Vector3i getChunkPosition(TeraChunk c) {
+        return new Vector3i(c.getChunkWorldPosX() >> Chunk.BLOCKS.BITS, c.getChunkWorldPosY() >> Chunk.BLOCKS.BITS, c.getChunkWorldPosZ() >> Chunk.BLOCKS.BITS);
+    }
+}
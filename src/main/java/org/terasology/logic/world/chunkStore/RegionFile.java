@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.logic.world.chunkStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file holding the records of a cubic region of chunks.
+ * <p/>
+ * The file starts with a magic number and a table with the offset and length of each chunk's record, followed by the
+ * records themselves. A record that outgrows its space is appended to the end of the file. Records are read through
+ * a memory mapping of the file, which is extended as the file grows.
+ */
+class RegionFile {
+    public static final int POWER = 3;
+    public static final int SIZE = 1 << POWER;
+    public static final int MASK = SIZE - 1;
+    public static final int CHUNKS = SIZE * SIZE * SIZE;
+
+    private static final int MAGIC = 0x54524731; // "TRG1"
+    private static final int HEADER_SIZE = 4 + CHUNKS * 8;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int[] offsets = new int[CHUNKS];
+    private final int[] lengths = new int[CHUNKS];
+    private MappedByteBuffer mapping;
+
+    public RegionFile(File path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        try {
+            if (channel.size() == 0) {
+                // The whole table is written, zeroed, so the header of a new file can be mapped
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(0, MAGIC);
+                writeFully(header, 0);
+            } else {
+                ByteBuffer header = map(HEADER_SIZE);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a region file: " + path);
+                }
+                for (int i = 0; i < CHUNKS; ++i) {
+                    offsets[i] = header.getInt(4 + i * 8);
+                    lengths[i] = header.getInt(8 + i * 8);
+                }
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The index of a chunk's record within its region
+     */
+    public static int getIndex(int chunkX, int chunkY, int chunkZ) {
+        return ((chunkX & MASK) << (2 * POWER)) | ((chunkY & MASK) << POWER) | (chunkZ & MASK);
+    }
+
+    /**
+     * @return The coordinate of the region holding the given chunk coordinate
+     */
+    public static int getRegion(int chunkCoord) {
+        return chunkCoord >> POWER;
+    }
+
+    public synchronized boolean contains(int index) {
+        return lengths[index] > 0;
+    }
+
+    /**
+     * @param index
+     * @return The record of the chunk, or null if it has none
+     * @throws IOException
+     */
+    public synchronized byte[] read(int index) throws IOException {
+        int length = lengths[index];
+        if (length == 0) {
+            return null;
+        }
+        // The mapping is shared, so copy out through a view with its own position
+        ByteBuffer view = map(offsets[index] + length).duplicate();
+        view.position(offsets[index]);
+        byte[] record = new byte[length];
+        view.get(record);
+        return record;
+    }
+
+    public synchronized void write(int index, byte[] record) throws IOException {
+        int offset = offsets[index];
+        if (offset == 0 || record.length > lengths[index]) {
+            offset = (int) Math.max(HEADER_SIZE, channel.size());
+        }
+        writeFully(ByteBuffer.wrap(record), offset);
+
+        ByteBuffer entry = ByteBuffer.allocate(8);
+        entry.putInt(offset).putInt(record.length);
+        entry.flip();
+        writeFully(entry, 4 + index * 8);
+        offsets[index] = offset;
+        lengths[index] = record.length;
+    }
+
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    public synchronized void close() throws IOException {
+        mapping = null;
+        file.close();
+    }
+
+    private MappedByteBuffer map(long minimumSize) throws IOException {
+        if (mapping == null || mapping.capacity() < minimumSize) {
+            long size = channel.size();
+            if (size < minimumSize) {
+                throw new IOException("Region file is truncated");
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return mapping;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor;
+
+/**
+ * Latency percentiles of an activity (or of whole frames) over the percentile window. All times are in milliseconds.
+ */
+public final class LatencyPercentiles {
+    public static final LatencyPercentiles EMPTY = new LatencyPercentiles(0, 0, 0, 0, 0);
+
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double max;
+    private final int sampleCount;
+
+    public LatencyPercentiles(double p50, double p90, double p99, double max, int sampleCount) {
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+        this.sampleCount = sampleCount;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return The number of samples the percentiles were calculated from
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms", p50, p90, p99, max);
+    }
+}
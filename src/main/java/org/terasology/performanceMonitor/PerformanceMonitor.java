@@ -17,9 +17,16 @@ package org.terasology.performanceMonitor;
 
 import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.TObjectIntMap;
+import org.terasology.performanceMonitor.impl.ActivityRegistry;
 import org.terasology.performanceMonitor.impl.IPerformanceMonitor;
 import org.terasology.performanceMonitor.impl.NullPerformanceMonitor;
 import org.terasology.performanceMonitor.impl.PerformanceMonitorImpl;
+import org.terasology.performanceMonitor.impl.TraceWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Maintains a running average of time taken by different activities. Activities call to denote when they
@@ -28,18 +35,34 @@ import org.terasology.performanceMonitor.impl.PerformanceMonitorImpl;
  * Activities may be nested, and while a nested activity is running the out activities are paused and time passing
  * is not assigned to them.
  * <p/>
- * Performance monitor is intended only for use by the main thread of Terasology, and does not handle
- * activities being started and ended on other threads at this time.
+ * Activities may be started and ended on any thread. Activities of the main thread are reported through
+ * getRunningMean() and getDecayingSpikes(), while activities of other threads are gathered when the main thread
+ * rolls the cycle and reported separately for each thread name (as given to startThread(), or the name of the thread
+ * otherwise).
  *
  * @author Immortius <immortius@gmail.com>
  */
 public class PerformanceMonitor {
     private static IPerformanceMonitor _instance;
+    private static int _percentileWindow = PerformanceMonitorImpl.DEFAULT_PERCENTILE_WINDOW;
+    private static boolean _enabled;
+    private static TraceWriter _trace;
 
     static {
         _instance = new NullPerformanceMonitor();
     }
 
+    /**
+     * Registers an activity, for use with startActivity(int). Frequently started activities should be registered
+     * once and started by handle, which avoids looking up the activity by name each time.
+     *
+     * @param activity The name of the activity
+     * @return The handle of the activity. Handles remain valid for the lifetime of the application.
+     */
+    public static int registerActivity(String activity) {
+        return ActivityRegistry.register(activity);
+    }
+
     /**
      * Indicates the start of an activity. All started activities must be ended with endActivity(). Activities may
      * be nested.
@@ -50,6 +73,16 @@ public class PerformanceMonitor {
         _instance.startActivity(activity);
     }
 
+    /**
+     * Indicates the start of an activity. All started activities must be ended with endActivity(). Activities may
+     * be nested.
+     *
+     * @param activity The handle of the activity starting, as returned by registerActivity().
+     */
+    public static void startActivity(int activity) {
+        _instance.startActivity(activity);
+    }
+
     /**
      * Indicates the end of the last started activity.
      */
@@ -57,6 +90,12 @@ public class PerformanceMonitor {
         _instance.endActivity();
     }
 
+    /**
+     * Indicates the start of a task on the current thread. Activities on this thread are reported under the given
+     * name until endThread() is called.
+     *
+     * @param name The name of the task
+     */
     public static void startThread(String name) {
         _instance.startThread(name);
     }
@@ -91,19 +130,137 @@ public class PerformanceMonitor {
         return _instance.getDecayingSpikes();
     }
 
+    /**
+     * @return A mapping of activities to the percentiles of the time they have taken per frame, over the
+     *         percentile window.
+     */
+    public static Map<String, LatencyPercentiles> getPercentiles() {
+        return _instance.getPercentiles();
+    }
+
+    /**
+     * @return The percentiles of total frame time, over the percentile window.
+     */
+    public static LatencyPercentiles getFramePercentiles() {
+        return _instance.getFramePercentiles();
+    }
+
+    /**
+     * Sets the number of frames over which percentiles are calculated. The most recent samples that fit the new window
+     * are kept. An activity contributes a zero sample for each frame it did not run in, once it has first run.
+     *
+     * @param frames The number of frames, must be positive
+     */
+    public static void setPercentileWindow(int frames) {
+        if (frames <= 0) {
+            throw new IllegalArgumentException("Percentile window must be positive: " + frames);
+        }
+        if (frames != _percentileWindow) {
+            _percentileWindow = frames;
+            if (_instance instanceof PerformanceMonitorImpl) {
+                ((PerformanceMonitorImpl) _instance).setPercentileWindow(frames);
+            }
+        }
+    }
+
+    public static int getPercentileWindow() {
+        return _percentileWindow;
+    }
+
+    /**
+     * @return The names of the threads, other than the main thread, that activities have been recorded for.
+     */
+    public static Set<String> getActivityThreads() {
+        return _instance.getActivityThreads();
+    }
+
+    /**
+     * @param threadName The name of the thread
+     * @return A mapping of the thread's activities to a running mean of time it has taken over a number of frames.
+     */
+    public static TObjectDoubleMap<String> getRunningMean(String threadName) {
+        return _instance.getRunningMean(threadName);
+    }
+
+    /**
+     * @param threadName The name of the thread
+     * @return A mapping of the thread's activities to latency percentiles of their per-frame cost.
+     */
+    public static Map<String, LatencyPercentiles> getPercentiles(String threadName) {
+        return _instance.getPercentiles(threadName);
+    }
+
+    /**
+     * @param threadName The name of the thread
+     * @return A mapping of the thread's activities to the largest cost over recent frames, decayed by time.
+     */
+    public static TObjectDoubleMap<String> getDecayingSpikes(String threadName) {
+        return _instance.getDecayingSpikes(threadName);
+    }
+
     /**
      * Allows the enabling/deactivation of the Performance Monitoring system.
-     * When disabled calls to startActivity()/endActivity() and rollCycle() are ignored
-     * and all data is purged.
+     * When disabled (and no trace is being recorded) calls to startActivity()/endActivity() and rollCycle() are
+     * ignored and all data is purged.
      *
      * @param enabled Turns the performance monitoring system on or off.
      */
     public static void setEnabled(boolean enabled) {
-        if (enabled && !(_instance instanceof PerformanceMonitorImpl)) {
-            _instance = new PerformanceMonitorImpl();
-        } else if (!enabled && !(_instance instanceof NullPerformanceMonitor)) {
+        _enabled = enabled;
+        updateInstance();
+    }
+
+    /**
+     * Starts streaming every activity start and end, and a summary of every cycle, to the given file. The performance
+     * monitor remains active while a trace is being recorded, even if it is otherwise disabled. Any trace already
+     * being recorded is stopped first.
+     *
+     * @param file   The file to write the trace to
+     * @param format The format of the trace
+     * @throws IOException If the file could not be opened
+     */
+    public static void startTrace(File file, TraceFormat format) throws IOException {
+        stopTrace();
+        _trace = new TraceWriter(file, format);
+        updateInstance();
+    }
+
+    /**
+     * Stops recording the current trace, if any, and waits for it to be written out.
+     */
+    public static void stopTrace() {
+        if (_trace != null) {
+            TraceWriter trace = _trace;
+            _trace = null;
+            updateInstance();
+            trace.close();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return _enabled;
+    }
+
+    public static boolean isTracing() {
+        return _trace != null;
+    }
+
+    private static void updateInstance() {
+        if (_enabled || _trace != null) {
+            if (!(_instance instanceof PerformanceMonitorImpl)) {
+                _instance = createMonitor();
+            } else {
+                ((PerformanceMonitorImpl) _instance).setTrace(_trace);
+            }
+        } else if (!(_instance instanceof NullPerformanceMonitor)) {
             _instance = new NullPerformanceMonitor();
         }
     }
 
+    private static IPerformanceMonitor createMonitor() {
+        PerformanceMonitorImpl monitor = new PerformanceMonitorImpl(_percentileWindow);
+        monitor.setTrace(_trace);
+        return monitor;
+    }
+
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * File formats for performance traces.
+ */
+public enum TraceFormat {
+    /**
+     * The JSON array variant of the Chrome Trace Event format, as loaded by chrome://tracing. Activities are written
+     * as duration events, cycle summaries as counter events. The closing bracket is optional in this format, so
+     * traces of crashed sessions can still be loaded.
+     */
+    ChromeTrace("json") {
+        @Override
+        public void begin(Writer out, JsonWriter writer) throws IOException {
+            writer.beginArray();
+        }
+
+        @Override
+        public void writeThreadName(Writer out, JsonWriter writer, long threadId, String threadName) throws IOException {
+            writer.beginObject();
+            writer.name("name").value("thread_name");
+            writer.name("ph").value("M");
+            writer.name("pid").value(0);
+            writer.name("tid").value(threadId);
+            writer.name("args").beginObject().name("name").value(threadName).endObject();
+            writer.endObject();
+        }
+
+        @Override
+        public void writeActivity(Writer out, JsonWriter writer, boolean start, long threadId, String threadName, String activity, long frame, long timeMicros) throws IOException {
+            writer.beginObject();
+            writer.name("name").value(activity);
+            writer.name("ph").value(start ? "B" : "E");
+            writer.name("ts").value(timeMicros);
+            writer.name("pid").value(0);
+            writer.name("tid").value(threadId);
+            writer.name("args").beginObject().name("frame").value(frame).endObject();
+            writer.endObject();
+        }
+
+        @Override
+        public void writeCycle(Writer out, JsonWriter writer, long frame, long timeMicros, double frameTime, Map<String, Double> activities) throws IOException {
+            writer.beginObject();
+            writer.name("name").value("Frame Time");
+            writer.name("ph").value("C");
+            writer.name("ts").value(timeMicros);
+            writer.name("pid").value(0);
+            writer.name("args").beginObject().name("ms").value(frameTime).endObject();
+            writer.endObject();
+
+            writer.beginObject();
+            writer.name("name").value("Main Thread Activities");
+            writer.name("ph").value("C");
+            writer.name("ts").value(timeMicros);
+            writer.name("pid").value(0);
+            writer.name("args").beginObject();
+            for (Map.Entry<String, Double> activity : activities.entrySet()) {
+                writer.name(activity.getKey()).value(activity.getValue());
+            }
+            writer.endObject();
+            writer.endObject();
+        }
+
+        @Override
+        public void end(Writer out, JsonWriter writer) throws IOException {
+            writer.endArray();
+        }
+    },
+
+    /**
+     * One JSON object per line, with the thread name inline. Compact and easy to process with line based tools.
+     */
+    JsonLines("jsonl") {
+        @Override
+        public void begin(Writer out, JsonWriter writer) throws IOException {
+            writer.setLenient(true);
+        }
+
+        @Override
+        public void writeThreadName(Writer out, JsonWriter writer, long threadId, String threadName) throws IOException {
+        }
+
+        @Override
+        public void writeActivity(Writer out, JsonWriter writer, boolean start, long threadId, String threadName, String activity, long frame, long timeMicros) throws IOException {
+            writer.beginObject();
+            writer.name("type").value(start ? "start" : "end");
+            writer.name("frame").value(frame);
+            writer.name("ts").value(timeMicros);
+            writer.name("thread").value(threadName);
+            writer.name("tid").value(threadId);
+            writer.name("activity").value(activity);
+            writer.endObject();
+            out.write('\n');
+        }
+
+        @Override
+        public void writeCycle(Writer out, JsonWriter writer, long frame, long timeMicros, double frameTime, Map<String, Double> activities) throws IOException {
+            writer.beginObject();
+            writer.name("type").value("cycle");
+            writer.name("frame").value(frame);
+            writer.name("ts").value(timeMicros);
+            writer.name("frameTime").value(frameTime);
+            writer.name("activities").beginObject();
+            for (Map.Entry<String, Double> activity : activities.entrySet()) {
+                writer.name(activity.getKey()).value(activity.getValue());
+            }
+            writer.endObject();
+            writer.endObject();
+            out.write('\n');
+        }
+
+        @Override
+        public void end(Writer out, JsonWriter writer) throws IOException {
+        }
+    };
+
+    private final String fileExtension;
+
+    private TraceFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /*
+     * Each method is given both the underlying writer, for raw separators, and a JsonWriter writing to it.
+     */
+
+    public abstract void begin(Writer out, JsonWriter writer) throws IOException;
+
+    public abstract void writeThreadName(Writer out, JsonWriter writer, long threadId, String threadName) throws IOException;
+
+    public abstract void writeActivity(Writer out, JsonWriter writer, boolean start, long threadId, String threadName, String activity, long frame, long timeMicros) throws IOException;
+
+    public abstract void writeCycle(Writer out, JsonWriter writer, long frame, long timeMicros, double frameTime, Map<String, Double> activities) throws IOException;
+
+    public abstract void end(Writer out, JsonWriter writer) throws IOException;
+}
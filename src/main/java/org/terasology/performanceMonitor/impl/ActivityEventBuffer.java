@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer, single-consumer ring buffer of completed activity timings. The owning thread
+ * offers events, and the main thread drains them during rollCycle. Neither side ever blocks.
+ */
+class ActivityEventBuffer {
+    private final int _capacity;
+    private final int _mask;
+    private final String[] _threads;
+    private final int[] _activities;
+    private final long[] _times;
+
+    /* Index of the next event to read, only written by the consumer */
+    private final AtomicLong _head = new AtomicLong();
+    /* Index of the next event to write, only written by the producer */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /**
+     * @param capacity The number of events the buffer can hold, rounded up to a power of two
+     */
+    public ActivityEventBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        _capacity = size;
+        _mask = size - 1;
+        _threads = new String[size];
+        _activities = new int[size];
+        _times = new long[size];
+    }
+
+    /**
+     * Called by the producing thread only.
+     *
+     * @return Whether the event was added - false if the buffer is full.
+     */
+    public boolean offer(String thread, int activity, long time) {
+        long tail = _tail.get();
+        if (tail - _head.get() >= _capacity) {
+            return false;
+        }
+        int index = (int) (tail & _mask);
+        _threads[index] = thread;
+        _activities[index] = activity;
+        _times[index] = time;
+        _tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Called by the consuming thread only. Passes all currently available events to the given procedure.
+     */
+    public void drain(EventProcedure procedure) {
+        long head = _head.get();
+        long tail = _tail.get();
+        for (; head < tail; ++head) {
+            int index = (int) (head & _mask);
+            procedure.execute(_threads[index], _activities[index], _times[index]);
+            _threads[index] = null;
+        }
+        _head.lazySet(head);
+    }
+
+    public boolean isEmpty() {
+        return _head.get() == _tail.get();
+    }
+
+    public interface EventProcedure {
+        void execute(String thread, int activity, long time);
+    }
+}
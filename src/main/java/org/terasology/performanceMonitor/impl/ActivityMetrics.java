@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor.impl;
+
+import gnu.trove.map.TObjectDoubleMap;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+import org.terasology.performanceMonitor.LatencyPercentiles;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running mean, decaying spike and latency histogram data for the activities of a single thread (or group of threads
+ * sharing a name). Only accessed from the main thread.
+ * <p/>
+ * All data is held in arrays indexed by activity handle. The data of retained cycles is kept in a ring of
+ * preallocated rows, so rolling a cycle does not allocate.
+ * <p/>
+ * Once an activity has been recorded, its latency histogram receives a sample every cycle - zero for cycles it did
+ * not run in - so the percentile window is a number of cycles rather than a number of runs.
+ */
+class ActivityMetrics {
+    private static final int RETAINED_CYCLES = 60;
+    private static final double DECAY_RATE = 0.98;
+    /* The retained cycles plus the current cycle */
+    private static final int CYCLE_ROWS = RETAINED_CYCLES + 1;
+
+    private final double _timeFactor;
+    private int _percentileWindow;
+
+    private int _capacity;
+    private long[][] _cycleData = new long[CYCLE_ROWS][];
+    private int _nextCycle;
+    private int _retainedCycles;
+    private long[] _runningTotals;
+    private double[] _spikeData;
+    private boolean[] _recorded;
+    private LatencyHistogram[] _histograms;
+
+    /* Activities that have been recorded in the current cycle */
+    private boolean[] _currentFlags;
+    private int[] _currentActivities;
+    private int _currentCount;
+
+    /**
+     * @param timeFactor       Conversion factor from timer ticks to milliseconds
+     * @param percentileWindow The number of cycles over which latency percentiles are calculated
+     */
+    public ActivityMetrics(double timeFactor, int percentileWindow) {
+        _timeFactor = timeFactor;
+        _percentileWindow = percentileWindow;
+        ensureCapacity(ActivityRegistry.size());
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= _capacity && _runningTotals != null) {
+            return;
+        }
+        int newCapacity = Math.max(size, Math.max(16, _capacity * 2));
+        for (int i = 0; i < CYCLE_ROWS; ++i) {
+            _cycleData[i] = (_cycleData[i] == null) ? new long[newCapacity] : Arrays.copyOf(_cycleData[i], newCapacity);
+        }
+        _runningTotals = (_runningTotals == null) ? new long[newCapacity] : Arrays.copyOf(_runningTotals, newCapacity);
+        _spikeData = (_spikeData == null) ? new double[newCapacity] : Arrays.copyOf(_spikeData, newCapacity);
+        _recorded = (_recorded == null) ? new boolean[newCapacity] : Arrays.copyOf(_recorded, newCapacity);
+        _histograms = (_histograms == null) ? new LatencyHistogram[newCapacity] : Arrays.copyOf(_histograms, newCapacity);
+        _currentFlags = (_currentFlags == null) ? new boolean[newCapacity] : Arrays.copyOf(_currentFlags, newCapacity);
+        _currentActivities = (_currentActivities == null) ? new int[newCapacity] : Arrays.copyOf(_currentActivities, newCapacity);
+        _capacity = newCapacity;
+    }
+
+    public void record(int activity, long time) {
+        if (activity >= _capacity) {
+            ensureCapacity(activity + 1);
+        }
+        if (!_currentFlags[activity]) {
+            _currentFlags[activity] = true;
+            _currentActivities[_currentCount++] = activity;
+        }
+        _cycleData[_nextCycle][activity] += time;
+    }
+
+    /**
+     * @return The time spent on each activity during the current cycle, in milliseconds
+     */
+    public Map<String, Double> getCurrentCycle() {
+        Map<String, Double> result = new HashMap<String, Double>();
+        long[] current = _cycleData[_nextCycle];
+        for (int i = 0; i < _currentCount; ++i) {
+            int activity = _currentActivities[i];
+            result.put(ActivityRegistry.getName(activity), current[activity] * _timeFactor);
+        }
+        return result;
+    }
+
+    public void rollCycle() {
+        for (int i = 0; i < _capacity; ++i) {
+            _spikeData[i] *= DECAY_RATE;
+            if (_histograms[i] != null && !_currentFlags[i]) {
+                _histograms[i].record(0);
+            }
+        }
+
+        long[] current = _cycleData[_nextCycle];
+        for (int i = 0; i < _currentCount; ++i) {
+            int activity = _currentActivities[i];
+            long v = current[activity];
+            _runningTotals[activity] += v;
+            double time = v * _timeFactor;
+            if (time > _spikeData[activity]) {
+                _spikeData[activity] = time;
+            }
+            LatencyHistogram histogram = _histograms[activity];
+            if (histogram == null) {
+                histogram = new LatencyHistogram(_percentileWindow);
+                _histograms[activity] = histogram;
+            }
+            histogram.record(time);
+            _recorded[activity] = true;
+            _currentFlags[activity] = false;
+        }
+        _currentCount = 0;
+
+        _nextCycle = (_nextCycle + 1) % CYCLE_ROWS;
+        if (_retainedCycles == RETAINED_CYCLES) {
+            // The oldest cycle drops out, and its row is reused for the new cycle
+            long[] oldest = _cycleData[_nextCycle];
+            for (int i = 0; i < _capacity; ++i) {
+                _runningTotals[i] -= oldest[i];
+            }
+            Arrays.fill(oldest, 0);
+        } else {
+            _retainedCycles++;
+        }
+    }
+
+    /**
+     * Changes the number of cycles over which latency percentiles are calculated, keeping the most recent samples
+     *
+     * @param percentileWindow
+     */
+    public void setPercentileWindow(int percentileWindow) {
+        _percentileWindow = percentileWindow;
+        for (int i = 0; i < _capacity; ++i) {
+            if (_histograms[i] != null) {
+                _histograms[i].setWindowSize(percentileWindow);
+            }
+        }
+    }
+
+    public TObjectDoubleMap<String> getRunningMean() {
+        TObjectDoubleMap<String> result = new TObjectDoubleHashMap<String>();
+        if (_retainedCycles == 0) {
+            return result;
+        }
+        double factor = _timeFactor / _retainedCycles;
+        for (int i = 0; i < _capacity; ++i) {
+            if (_runningTotals[i] > 0) {
+                result.put(ActivityRegistry.getName(i), _runningTotals[i] * factor);
+            }
+        }
+        return result;
+    }
+
+    public TObjectDoubleMap<String> getDecayingSpikes() {
+        TObjectDoubleMap<String> result = new TObjectDoubleHashMap<String>();
+        for (int i = 0; i < _capacity; ++i) {
+            if (_recorded[i]) {
+                result.put(ActivityRegistry.getName(i), _spikeData[i]);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, LatencyPercentiles> getPercentiles() {
+        Map<String, LatencyPercentiles> result = new HashMap<String, LatencyPercentiles>();
+        for (int i = 0; i < _capacity; ++i) {
+            if (_histograms[i] != null) {
+                result.put(ActivityRegistry.getName(i), _histograms[i].getPercentiles());
+            }
+        }
+        return result;
+    }
+}
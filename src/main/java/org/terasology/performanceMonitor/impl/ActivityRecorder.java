@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor.impl;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread activity stack. Time spent in each activity (excluding nested activities) is accumulated locally,
+ * and published to the event buffer whenever the outermost activity of the thread ends, so that fine grained
+ * activities do not flood the buffer.
+ * <p/>
+ * Activities are identified by their handle from the ActivityRegistry, and all data is kept in primitive arrays
+ * indexed by stack depth or handle, so recording activities does not allocate.
+ * <p/>
+ * All methods other than those of the event buffer are only called from the owning thread.
+ */
+class ActivityRecorder {
+    private static final int INITIAL_STACK_DEPTH = 16;
+    private static final int BUFFER_CAPACITY = 1024;
+
+    private final Thread _owner;
+    private final ActivityEventBuffer _buffer = new ActivityEventBuffer(BUFFER_CAPACITY);
+
+    private String _threadName;
+
+    private int _depth;
+    private int[] _activities = new int[INITIAL_STACK_DEPTH];
+    private long[] _startTimes = new long[INITIAL_STACK_DEPTH];
+    private long[] _resumeTimes = new long[INITIAL_STACK_DEPTH];
+    private long[] _ownTimes = new long[INITIAL_STACK_DEPTH];
+    private long _lastTime;
+
+    /* Accumulated time by activity handle, and the list of handles with accumulated time */
+    private long[] _pendingTimes = new long[0];
+    private boolean[] _pendingFlags = new boolean[0];
+    private int[] _pendingActivities = new int[0];
+    private int _pendingCount;
+
+    public ActivityRecorder(Thread owner) {
+        _owner = owner;
+        _threadName = owner.getName();
+    }
+
+    public Thread getOwner() {
+        return _owner;
+    }
+
+    public ActivityEventBuffer getBuffer() {
+        return _buffer;
+    }
+
+    /**
+     * Sets the name under which further activities of this thread are reported. Pending activity data is flushed
+     * under the previous name first.
+     */
+    public void setThreadName(String name) {
+        flush();
+        _threadName = (name != null) ? name : _owner.getName();
+    }
+
+    public String getThreadName() {
+        return _threadName;
+    }
+
+    public void start(int activity, long time) {
+        if (_depth > 0) {
+            int current = _depth - 1;
+            _ownTimes[current] += time - ((_resumeTimes[current] > 0) ? _resumeTimes[current] : _startTimes[current]);
+        }
+        if (_depth == _activities.length) {
+            int newLength = _activities.length * 2;
+            _activities = Arrays.copyOf(_activities, newLength);
+            _startTimes = Arrays.copyOf(_startTimes, newLength);
+            _resumeTimes = Arrays.copyOf(_resumeTimes, newLength);
+            _ownTimes = Arrays.copyOf(_ownTimes, newLength);
+        }
+        _activities[_depth] = activity;
+        _startTimes[_depth] = time;
+        _resumeTimes[_depth] = 0;
+        _ownTimes[_depth] = 0;
+        _depth++;
+    }
+
+    /**
+     * Ends the current activity.
+     *
+     * @return The handle of the ended activity, or -1 if there was no activity running
+     */
+    public int end(long time) {
+        if (_depth == 0) {
+            return -1;
+        }
+        _depth--;
+        _lastTime = (_resumeTimes[_depth] > 0) ? _ownTimes[_depth] + time - _resumeTimes[_depth] : time - _startTimes[_depth];
+
+        if (_depth > 0) {
+            _resumeTimes[_depth - 1] = time;
+        }
+        return _activities[_depth];
+    }
+
+    /**
+     * @return The own time of the last ended activity
+     */
+    public long getLastTime() {
+        return _lastTime;
+    }
+
+    public boolean isIdle() {
+        return _depth == 0;
+    }
+
+    /**
+     * Accumulates time for an activity, to be published on the next flush.
+     */
+    public void accumulate(int activity, long time) {
+        if (activity >= _pendingTimes.length) {
+            int newLength = Math.max(activity + 1, ActivityRegistry.size());
+            _pendingTimes = Arrays.copyOf(_pendingTimes, newLength);
+            _pendingFlags = Arrays.copyOf(_pendingFlags, newLength);
+            _pendingActivities = Arrays.copyOf(_pendingActivities, newLength);
+        }
+        if (!_pendingFlags[activity]) {
+            _pendingFlags[activity] = true;
+            _pendingActivities[_pendingCount++] = activity;
+        }
+        _pendingTimes[activity] += time;
+    }
+
+    /**
+     * Publishes accumulated activity time to the event buffer. Activities that do not fit remain pending until the
+     * next flush.
+     */
+    public void flush() {
+        int remaining = 0;
+        for (int i = 0; i < _pendingCount; ++i) {
+            int activity = _pendingActivities[i];
+            if (_buffer.offer(_threadName, activity, _pendingTimes[activity])) {
+                _pendingTimes[activity] = 0;
+                _pendingFlags[activity] = false;
+            } else {
+                _pendingActivities[remaining++] = activity;
+            }
+        }
+        _pendingCount = remaining;
+    }
+}
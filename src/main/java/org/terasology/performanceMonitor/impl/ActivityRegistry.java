@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns dense integer handles to activity names. Handles are global and never released, so they remain valid when
+ * the performance monitor is enabled, disabled or recreated, and can be kept in static fields.
+ */
+public final class ActivityRegistry {
+    private static final ConcurrentMap<String, Integer> _ids = new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] _names = new String[64];
+    private static volatile int _count;
+
+    private ActivityRegistry() {
+    }
+
+    /**
+     * @param name The name of the activity
+     * @return The handle of the activity, registering it if necessary
+     */
+    public static int register(String name) {
+        Integer id = _ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (ActivityRegistry.class) {
+            id = _ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            int newId = _count;
+            String[] names = _names;
+            if (newId == names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            names[newId] = name;
+            _names = names;
+            _count = newId + 1;
+            _ids.put(name, newId);
+            return newId;
+        }
+    }
+
+    public static String getName(int id) {
+        return _names[id];
+    }
+
+    /**
+     * @return The number of registered activities. All handles are less than this.
+     */
+    public static int size() {
+        return _count;
+    }
+}
@@ -17,6 +17,10 @@ package org.terasology.performanceMonitor.impl;
 
 import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.TObjectIntMap;
+import org.terasology.performanceMonitor.LatencyPercentiles;
+
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Base interface for performance monitor implementations.
@@ -28,6 +32,8 @@ public interface IPerformanceMonitor {
 
     void startActivity(String activity);
 
+    void startActivity(int activity);
+
     void endActivity();
 
     void startThread(String name);
@@ -39,4 +45,16 @@ public interface IPerformanceMonitor {
     TObjectDoubleMap<String> getRunningMean();
 
     TObjectDoubleMap<String> getDecayingSpikes();
+
+    Map<String, LatencyPercentiles> getPercentiles();
+
+    LatencyPercentiles getFramePercentiles();
+
+    Set<String> getActivityThreads();
+
+    TObjectDoubleMap<String> getRunningMean(String threadName);
+
+    Map<String, LatencyPercentiles> getPercentiles(String threadName);
+
+    TObjectDoubleMap<String> getDecayingSpikes(String threadName);
 }
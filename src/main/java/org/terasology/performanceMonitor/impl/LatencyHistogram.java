@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor.impl;
+
+import org.terasology.performanceMonitor.LatencyPercentiles;
+
+import java.util.Arrays;
+
+/**
+ * Fixed memory histogram of latencies over a sliding window of the most recent samples.
+ * <p/>
+ * Samples are stored in microseconds, in logarithmic buckets with 16 linear sub-buckets per power of two, giving a
+ * relative error of at most 6.25% for any percentile. The raw samples of the window are kept in a ring so that
+ * expired samples can be removed from the histogram and the exact maximum reported.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final int[] _counts = new int[BUCKET_COUNT];
+    private long[] _window;
+    private int _next;
+    private int _size;
+
+    /**
+     * @param windowSize The number of most recent samples the histogram covers
+     */
+    public LatencyHistogram(int windowSize) {
+        _window = new long[Math.max(1, windowSize)];
+    }
+
+    /**
+     * @param timeMs The latency to record, in milliseconds
+     */
+    public void record(double timeMs) {
+        long value = Math.min(MAX_VALUE, Math.max(0, Math.round(timeMs * 1000.0)));
+        if (_size == _window.length) {
+            _counts[bucketFor(_window[_next])]--;
+        } else {
+            _size++;
+        }
+        _window[_next] = value;
+        _counts[bucketFor(value)]++;
+        _next = (_next + 1) % _window.length;
+    }
+
+    /**
+     * Changes the number of samples the histogram covers, keeping the most recent samples that still fit
+     *
+     * @param windowSize The number of most recent samples the histogram covers
+     */
+    public void setWindowSize(int windowSize) {
+        long[] window = new long[Math.max(1, windowSize)];
+        int kept = Math.min(_size, window.length);
+        int oldest = (_size == _window.length) ? _next : 0;
+        for (int i = 0; i < kept; ++i) {
+            window[i] = _window[(oldest + _size - kept + i) % _window.length];
+        }
+        Arrays.fill(_counts, 0);
+        for (int i = 0; i < kept; ++i) {
+            _counts[bucketFor(window[i])]++;
+        }
+        _window = window;
+        _size = kept;
+        _next = kept % window.length;
+    }
+
+    public int getSampleCount() {
+        return _size;
+    }
+
+    public LatencyPercentiles getPercentiles() {
+        if (_size == 0) {
+            return LatencyPercentiles.EMPTY;
+        }
+        long max = 0;
+        for (int i = 0; i < _size; ++i) {
+            max = Math.max(max, _window[i]);
+        }
+        return new LatencyPercentiles(percentile(0.5, max), percentile(0.9, max), percentile(0.99, max), max / 1000.0, _size);
+    }
+
+    private double percentile(double fraction, long max) {
+        long target = (long) Math.ceil(fraction * _size);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += _counts[i];
+            if (seen >= target && _counts[i] > 0) {
+                return Math.min(upperBound(i), max) / 1000.0;
+            }
+        }
+        return max / 1000.0;
+    }
+
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -19,6 +19,11 @@ import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import org.terasology.performanceMonitor.LatencyPercentiles;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Immortius <immortius@gmail.com>
@@ -39,6 +44,9 @@ public class NullPerformanceMonitor implements IPerformanceMonitor {
     public void startActivity(String activity) {
     }
 
+    public void startActivity(int activity) {
+    }
+
     public void endActivity() {
     }
 
@@ -50,8 +58,32 @@ public class NullPerformanceMonitor implements IPerformanceMonitor {
         return _metrics;
     }
 
+    public Map<String, LatencyPercentiles> getPercentiles() {
+        return Collections.emptyMap();
+    }
+
+    public LatencyPercentiles getFramePercentiles() {
+        return LatencyPercentiles.EMPTY;
+    }
+
     public TObjectIntMap<String> getRunningThreads() {
         return _threads;
     }
 
+    public Set<String> getActivityThreads() {
+        return Collections.emptySet();
+    }
+
+    public TObjectDoubleMap<String> getRunningMean(String threadName) {
+        return _metrics;
+    }
+
+    public Map<String, LatencyPercentiles> getPercentiles(String threadName) {
+        return Collections.emptyMap();
+    }
+
+    public TObjectDoubleMap<String> getDecayingSpikes(String threadName) {
+        return _metrics;
+    }
+
 }
@@ -18,89 +18,120 @@ package org.terasology.performanceMonitor.impl;
 import gnu.trove.TCollections;
 import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.TObjectLongMap;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
-import gnu.trove.map.hash.TObjectLongHashMap;
-import gnu.trove.procedure.TObjectDoubleProcedure;
 import gnu.trove.procedure.TObjectIntProcedure;
-import gnu.trove.procedure.TObjectLongProcedure;
 import org.lwjgl.Sys;
+import org.terasology.performanceMonitor.LatencyPercentiles;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Stack;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Active implementation of Performance Monitor
+ * <p/>
+ * Each thread records activities on its own activity stack. Activities of the main thread are recorded directly,
+ * while other threads publish their activity times through a lock-free buffer which is merged by the main thread
+ * in rollCycle. Background activities are tracked separately for each thread name.
+ * <p/>
+ * Activities are recorded by integer handle; starting an activity by name resolves the handle first.
  *
  * @author Immortius <immortius@gmail.com>
  *         TODO: Check to ensure activities are being started and stopped correctly
  *         TODO: Remove activities with 0 time
  */
 public class PerformanceMonitorImpl implements IPerformanceMonitor {
-    private static final int RETAINED_CYCLES = 60;
-    private static final double DECAY_RATE = 0.98;
+    public static final int DEFAULT_PERCENTILE_WINDOW = 600;
+    public static final String MAIN_THREAD_NAME = "Main";
 
-    private Stack<Activity> _activityStack;
-    private List<TObjectLongMap<String>> _metricData;
-    private TObjectLongMap<String> _currentData;
-    private TObjectLongMap<String> _runningTotals;
     private TObjectIntMap<String> _runningThreads;
     private TObjectIntMap<String> _stoppedThreads;
     private long _timerTicksPerSecond;
-    private TObjectDoubleMap<String> _spikeData;
     private double _timeFactor;
+    private int _percentileWindow;
+    /* The percentile window to switch to, applied by the main thread when it next rolls the cycle */
+    private volatile int _requestedPercentileWindow;
     private TObjectIntMap<String> _lastRunningThreads;
+    private LatencyHistogram _frameHistogram;
+    private long _lastCycleTime;
+    private volatile long _frame;
+    private volatile TraceWriter _trace;
 
     private Thread _mainThread;
+    private ActivityRecorder _mainRecorder;
+    private ActivityMetrics _mainMetrics;
+
+    private final CopyOnWriteArrayList<ActivityRecorder> _threadRecorders = new CopyOnWriteArrayList<ActivityRecorder>();
+    private final ThreadLocal<ActivityRecorder> _recorder = new ThreadLocal<ActivityRecorder>() {
+        @Override
+        protected ActivityRecorder initialValue() {
+            ActivityRecorder recorder = new ActivityRecorder(Thread.currentThread());
+            _threadRecorders.add(recorder);
+            return recorder;
+        }
+    };
+    private final Map<String, ActivityMetrics> _threadMetrics = new TreeMap<String, ActivityMetrics>();
+    private final ActivityEventBuffer.EventProcedure _mergeProcedure = new ActivityEventBuffer.EventProcedure() {
+        public void execute(String thread, int activity, long time) {
+            ActivityMetrics metrics = _threadMetrics.get(thread);
+            if (metrics == null) {
+                metrics = new ActivityMetrics(_timeFactor, _percentileWindow);
+                _threadMetrics.put(thread, metrics);
+            }
+            metrics.record(activity, time);
+        }
+    };
 
     public PerformanceMonitorImpl() {
-        _activityStack = new Stack<Activity>();
-        _metricData = new LinkedList<TObjectLongMap<String>>();
-        _runningTotals = new TObjectLongHashMap<String>();
+        this(DEFAULT_PERCENTILE_WINDOW);
+    }
+
+    /**
+     * @param percentileWindow The number of cycles over which latency percentiles are calculated
+     */
+    public PerformanceMonitorImpl(int percentileWindow) {
+        _percentileWindow = percentileWindow;
+        _requestedPercentileWindow = percentileWindow;
         _timerTicksPerSecond = Sys.getTimerResolution();
-        _currentData = new TObjectLongHashMap<String>();
-        _spikeData = new TObjectDoubleHashMap<String>();
         _runningThreads = TCollections.synchronizedMap(new TObjectIntHashMap<String>());
         _stoppedThreads = TCollections.synchronizedMap(new TObjectIntHashMap<String>());
         _lastRunningThreads = new TObjectIntHashMap<String>();
         _timeFactor = 1000.0 / _timerTicksPerSecond;
         _mainThread = Thread.currentThread();
-
+        _mainRecorder = new ActivityRecorder(_mainThread);
+        _mainRecorder.setThreadName(MAIN_THREAD_NAME);
+        _mainMetrics = new ActivityMetrics(_timeFactor, _percentileWindow);
+        _frameHistogram = new LatencyHistogram(_percentileWindow);
     }
 
     public void rollCycle() {
-        _metricData.add(_currentData);
-        _spikeData.forEachEntry(new TObjectDoubleProcedure<String>() {
-            public boolean execute(String s, double v) {
-                _spikeData.put(s, v * DECAY_RATE);
-                return true;
-            }
-        });
+        if (Thread.currentThread() != _mainThread)
+            return;
 
-        _currentData.forEachEntry(new TObjectLongProcedure<String>() {
-            public boolean execute(String s, long v) {
-                _runningTotals.adjustOrPutValue(s, v, v);
-                double time = v * _timeFactor;
-                double prev = _spikeData.get(s);
-                if (time > prev) {
-                    _spikeData.put(s, time);
-                }
-                return true;
-            }
-        });
+        applyPercentileWindow();
+
+        long time = Sys.getTime();
+        double frameTime = (_lastCycleTime > 0) ? (time - _lastCycleTime) * _timeFactor : 0;
+        if (_lastCycleTime > 0) {
+            _frameHistogram.record(frameTime);
+        }
+        _lastCycleTime = time;
+
+        TraceWriter trace = _trace;
+        if (trace != null) {
+            trace.cycleEnded(_frame, frameTime, _mainMetrics.getCurrentCycle());
+        }
+        _frame++;
 
-        while (_metricData.size() > RETAINED_CYCLES) {
-            _metricData.get(0).forEachEntry(new TObjectLongProcedure<String>() {
-                public boolean execute(String s, long v) {
-                    _runningTotals.adjustValue(s, -v);
-                    return true;
-                }
-            });
-            _metricData.remove(0);
+        mergeThreadActivities();
+        _mainMetrics.rollCycle();
+        for (ActivityMetrics metrics : _threadMetrics.values()) {
+            metrics.rollCycle();
         }
-        _currentData = new TObjectLongHashMap<String>();
 
         _runningThreads.forEachEntry(new TObjectIntProcedure<String>() {
             public boolean execute(String s, int i) {
@@ -120,69 +151,140 @@ public class PerformanceMonitorImpl implements IPerformanceMonitor {
 
     }
 
-    public void startActivity(String activity) {
-        if (Thread.currentThread() != _mainThread)
-            return;
-        Activity newActivity = new Activity();
-        newActivity.name = activity;
-        newActivity.startTime = Sys.getTime();
-        if (!_activityStack.isEmpty()) {
-            Activity currentActivity = _activityStack.peek();
-            currentActivity.ownTime += newActivity.startTime - ((currentActivity.resumeTime > 0) ? currentActivity.resumeTime : currentActivity.startTime);
+    private void mergeThreadActivities() {
+        Iterator<ActivityRecorder> iterator = _threadRecorders.iterator();
+        while (iterator.hasNext()) {
+            ActivityRecorder recorder = iterator.next();
+            // Check liveness before draining, so that the final events of a dead thread are not lost
+            boolean alive = recorder.getOwner().isAlive();
+            recorder.getBuffer().drain(_mergeProcedure);
+            if (!alive) {
+                _threadRecorders.remove(recorder);
+            }
         }
+    }
+
+    private ActivityRecorder getRecorder() {
+        if (Thread.currentThread() == _mainThread) {
+            return _mainRecorder;
+        }
+        return _recorder.get();
+    }
 
-        _activityStack.push(newActivity);
+    public void startActivity(String activity) {
+        startActivity(ActivityRegistry.register(activity));
+    }
+
+    public void startActivity(int activity) {
+        ActivityRecorder recorder = getRecorder();
+        recorder.start(activity, Sys.getTime());
+
+        TraceWriter trace = _trace;
+        if (trace != null) {
+            trace.activityStarted(recorder.getThreadName(), ActivityRegistry.getName(activity), _frame);
+        }
     }
 
     public void endActivity() {
-        if (Thread.currentThread() != _mainThread || _activityStack.empty())
+        ActivityRecorder recorder = getRecorder();
+        int activity = recorder.end(Sys.getTime());
+        if (activity < 0)
             return;
 
-        Activity oldActivity = _activityStack.pop();
-        long time = Sys.getTime();
-        long total = (oldActivity.resumeTime > 0) ? oldActivity.ownTime + time - oldActivity.resumeTime : time - oldActivity.startTime;
-        _currentData.adjustOrPutValue(oldActivity.name, total, total);
+        TraceWriter trace = _trace;
+        if (trace != null) {
+            trace.activityEnded(recorder.getThreadName(), ActivityRegistry.getName(activity), _frame);
+        }
 
-        if (!_activityStack.isEmpty()) {
-            Activity currentActivity = _activityStack.peek();
-            currentActivity.resumeTime = time;
+        if (recorder == _mainRecorder) {
+            _mainMetrics.record(activity, recorder.getLastTime());
+        } else {
+            recorder.accumulate(activity, recorder.getLastTime());
+            if (recorder.isIdle()) {
+                recorder.flush();
+            }
         }
     }
 
     public TObjectDoubleMap<String> getRunningMean() {
-        final TObjectDoubleMap<String> result = new TObjectDoubleHashMap<String>();
-        final double factor = _timeFactor / _metricData.size();
-        _runningTotals.forEachEntry(new TObjectLongProcedure<String>() {
-            public boolean execute(String s, long l) {
-                if (l > 0) {
-                    result.put(s, l * factor);
-                }
-                return true;
-            }
-        });
-        return result;
+        return _mainMetrics.getRunningMean();
     }
 
     public TObjectDoubleMap<String> getDecayingSpikes() {
-        return _spikeData;
+        return _mainMetrics.getDecayingSpikes();
+    }
+
+    public Map<String, LatencyPercentiles> getPercentiles() {
+        return _mainMetrics.getPercentiles();
+    }
+
+    public LatencyPercentiles getFramePercentiles() {
+        return _frameHistogram.getPercentiles();
+    }
+
+    /**
+     * @param trace The trace to stream activity and cycle events to, or null to stop tracing
+     */
+    public void setTrace(TraceWriter trace) {
+        _trace = trace;
+    }
+
+    /**
+     * Changes the number of cycles over which latency percentiles are calculated. The histograms are resized, keeping
+     * their most recent samples, when the main thread next rolls the cycle, so this may be called from any thread.
+     *
+     * @param percentileWindow
+     */
+    public void setPercentileWindow(int percentileWindow) {
+        _requestedPercentileWindow = percentileWindow;
+    }
+
+    private void applyPercentileWindow() {
+        int window = _requestedPercentileWindow;
+        if (window != _percentileWindow) {
+            _percentileWindow = window;
+            _frameHistogram.setWindowSize(window);
+            _mainMetrics.setPercentileWindow(window);
+            for (ActivityMetrics metrics : _threadMetrics.values()) {
+                metrics.setPercentileWindow(window);
+            }
+        }
+    }
+
+    public Set<String> getActivityThreads() {
+        return Collections.unmodifiableSet(_threadMetrics.keySet());
+    }
+
+    public TObjectDoubleMap<String> getRunningMean(String threadName) {
+        ActivityMetrics metrics = _threadMetrics.get(threadName);
+        return (metrics != null) ? metrics.getRunningMean() : new TObjectDoubleHashMap<String>();
+    }
+
+    public Map<String, LatencyPercentiles> getPercentiles(String threadName) {
+        ActivityMetrics metrics = _threadMetrics.get(threadName);
+        return (metrics != null) ? metrics.getPercentiles() : Collections.<String, LatencyPercentiles>emptyMap();
+    }
+
+    public TObjectDoubleMap<String> getDecayingSpikes(String threadName) {
+        ActivityMetrics metrics = _threadMetrics.get(threadName);
+        return (metrics != null) ? metrics.getDecayingSpikes() : new TObjectDoubleHashMap<String>();
     }
 
     public void startThread(String name) {
         _runningThreads.adjustOrPutValue(name, 1, 1);
+        if (Thread.currentThread() != _mainThread) {
+            _recorder.get().setThreadName(name);
+        }
     }
 
     public void endThread(String name) {
         _stoppedThreads.adjustOrPutValue(name, -1, -1);
+        if (Thread.currentThread() != _mainThread) {
+            _recorder.get().setThreadName(null);
+        }
     }
 
     public TObjectIntMap<String> getRunningThreads() {
         return _lastRunningThreads;
     }
-
-    private static class Activity {
-        public String name;
-        public long startTime;
-        public long resumeTime;
-        public long ownTime;
-    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.performanceMonitor.impl;
+
+import com.google.gson.stream.JsonWriter;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.terasology.performanceMonitor.TraceFormat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams performance trace events to a file. Events may be added from any thread, and are queued for a
+ * background thread which writes them out in the trace format.
+ */
+public class TraceWriter {
+    private static final int MAX_PENDING_EVENTS = 1 << 20;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    private final File file;
+    private final TraceFormat format;
+    private final Writer out;
+    private final JsonWriter jsonWriter;
+    private final long startTime = System.nanoTime();
+    private final ConcurrentLinkedQueue<TraceEvent> pendingEvents = new ConcurrentLinkedQueue<TraceEvent>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private final TLongObjectMap<String> threadNames = new TLongObjectHashMap<String>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public TraceWriter(File file, TraceFormat format) throws IOException {
+        this.file = file;
+        this.format = format;
+        File parentFile = file.getParentFile();
+        if (parentFile != null) {
+            parentFile.mkdirs();
+        }
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+        jsonWriter = new JsonWriter(out);
+        format.begin(out, jsonWriter);
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeEvents();
+            }
+        }, "Performance Trace Writer");
+        writerThread.setDaemon(true);
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void activityStarted(String threadName, String activity, long frame) {
+        add(new TraceEvent(TraceEvent.Type.START, Thread.currentThread().getId(), threadName, activity, frame, timestamp()));
+    }
+
+    public void activityEnded(String threadName, String activity, long frame) {
+        add(new TraceEvent(TraceEvent.Type.END, Thread.currentThread().getId(), threadName, activity, frame, timestamp()));
+    }
+
+    /**
+     * @param frame      The frame that ended
+     * @param frameTime  The total time of the frame, in milliseconds
+     * @param activities The time of each main thread activity during the frame, in milliseconds
+     */
+    public void cycleEnded(long frame, double frameTime, Map<String, Double> activities) {
+        TraceEvent event = new TraceEvent(TraceEvent.Type.CYCLE, Thread.currentThread().getId(), null, null, frame, timestamp());
+        event.frameTime = frameTime;
+        event.activities = activities;
+        add(event);
+    }
+
+    /**
+     * Stops recording, writes out all remaining events and closes the file. Blocks until the writer has finished.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (droppedCount.get() > 0) {
+            logger.log(Level.WARNING, "Performance trace dropped {0} events that could not be written fast enough", droppedCount.get());
+        }
+    }
+
+    private long timestamp() {
+        return (System.nanoTime() - startTime) / 1000;
+    }
+
+    private void add(TraceEvent event) {
+        if (!running) {
+            return;
+        }
+        if (pendingCount.incrementAndGet() > MAX_PENDING_EVENTS) {
+            pendingCount.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return;
+        }
+        pendingEvents.add(event);
+    }
+
+    private void writeEvents() {
+        try {
+            while (true) {
+                // Events added before the writer was stopped are all written by the final pass
+                boolean stopping = !running;
+                TraceEvent event;
+                while ((event = pendingEvents.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    write(event);
+                }
+                if (stopping) {
+                    break;
+                }
+                out.flush();
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+            }
+            format.end(out, jsonWriter);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed to write performance trace " + file, e);
+            running = false;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to close file", e);
+            }
+        }
+    }
+
+    private void write(TraceEvent event) throws IOException {
+        switch (event.type) {
+            case START:
+            case END:
+                String knownName = threadNames.get(event.threadId);
+                if (!event.threadName.equals(knownName)) {
+                    threadNames.put(event.threadId, event.threadName);
+                    format.writeThreadName(out, jsonWriter, event.threadId, event.threadName);
+                }
+                format.writeActivity(out, jsonWriter, event.type == TraceEvent.Type.START, event.threadId, event.threadName, event.activity, event.frame, event.time);
+                break;
+            case CYCLE:
+                format.writeCycle(out, jsonWriter, event.frame, event.time, event.frameTime, event.activities);
+                break;
+        }
+    }
+
+    private static class TraceEvent {
+        private enum Type {
+            START,
+            END,
+            CYCLE
+        }
+
+        private final Type type;
+        private final long threadId;
+        private final String threadName;
+        private final String activity;
+        private final long frame;
+        private final long time;
+        private double frameTime;
+        private Map<String, Double> activities;
+
+        public TraceEvent(Type type, long threadId, String threadName, String activity, long frame, long time) {
+            this.type = type;
+            this.threadId = threadId;
+            this.threadName = threadName;
+            this.activity = activity;
+            this.frame = frame;
+            this.time = time;
+        }
+    }
+}
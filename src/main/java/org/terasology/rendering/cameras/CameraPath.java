@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 Benjamin Glatzel <benjamin.glatzel@me.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.rendering.cameras;
+
+import com.google.common.collect.Lists;
+
+import javax.vecmath.Vector3d;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A camera flight path made of timed keyframes. Cameras following the path are linearly interpolated between
+ * keyframes, and the path loops once its duration has passed.
+ * <p/>
+ * Paths are stored as text, one keyframe per line: time in seconds, then position and viewing direction.
+ */
+public class CameraPath {
+    /* Demo flight speed is given in blocks per frame at this frame rate */
+    private static final double DEMO_FLIGHT_FRAME_RATE = 60.0;
+
+    private final List<Keyframe> keyframes = Lists.newArrayList();
+
+    /**
+     * Creates a procedural path that flies in a straight line along the x axis, gently rising and falling, as the
+     * demo flight does.
+     *
+     * @param start          The starting position
+     * @param speed          The demo flight speed, in blocks per frame at 60 frames per second
+     * @param durationInSecs The duration of the path
+     */
+    public static CameraPath demoFlight(Vector3d start, double speed, double durationInSecs) {
+        CameraPath path = new CameraPath();
+        double blocksPerSec = speed * DEMO_FLIGHT_FRAME_RATE;
+        for (double time = 0; time <= durationInSecs; time += 0.5) {
+            Vector3d position = new Vector3d(start.x + time * blocksPerSec, start.y + 8.0 * Math.sin(time * 0.1), start.z);
+            Vector3d direction = new Vector3d(blocksPerSec, 0.8 * Math.cos(time * 0.1), 0);
+            direction.normalize();
+            path.addKeyframe(time, position, direction);
+        }
+        return path;
+    }
+
+    public static CameraPath load(File file) throws IOException {
+        CameraPath path = new CameraPath();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length != 7) {
+                    throw new IOException(String.format("Invalid keyframe at %s:%d", file, lineNumber));
+                }
+                try {
+                    double[] values = new double[7];
+                    for (int i = 0; i < values.length; ++i) {
+                        values[i] = Double.parseDouble(parts[i]);
+                    }
+                    path.addKeyframe(values[0], new Vector3d(values[1], values[2], values[3]), new Vector3d(values[4], values[5], values[6]));
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("Invalid keyframe at %s:%d", file, lineNumber), e);
+                }
+            }
+        } finally {
+            // JAVA7: Replace with improved resource handling
+            reader.close();
+        }
+        return path;
+    }
+
+    public void save(File file) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("# time x y z dirX dirY dirZ");
+            writer.newLine();
+            for (Keyframe keyframe : keyframes) {
+                writer.write(String.format(Locale.ENGLISH, "%.3f %.3f %.3f %.3f %.4f %.4f %.4f", keyframe.time,
+                        keyframe.position.x, keyframe.position.y, keyframe.position.z,
+                        keyframe.direction.x, keyframe.direction.y, keyframe.direction.z));
+                writer.newLine();
+            }
+        } finally {
+            // JAVA7: Replace with improved resource handling
+            writer.close();
+        }
+    }
+
+    /**
+     * Adds a keyframe. Keyframes must be added in time order.
+     */
+    public void addKeyframe(double time, Vector3d position, Vector3d direction) {
+        if (!keyframes.isEmpty() && time < keyframes.get(keyframes.size() - 1).time) {
+            throw new IllegalArgumentException("Keyframes must be added in time order");
+        }
+        keyframes.add(new Keyframe(time, new Vector3d(position), new Vector3d(direction)));
+    }
+
+    public boolean isEmpty() {
+        return keyframes.isEmpty();
+    }
+
+    public double getDuration() {
+        return keyframes.isEmpty() ? 0 : keyframes.get(keyframes.size() - 1).time;
+    }
+
+    /**
+     * Moves the camera to where it would be on the path at the given time.
+     */
+    public void apply(double time, Camera camera) {
+        if (keyframes.isEmpty()) {
+            return;
+        }
+        double duration = getDuration();
+        if (duration > 0) {
+            time = time % duration;
+        }
+
+        int next = 0;
+        while (next < keyframes.size() - 1 && keyframes.get(next).time < time) {
+            next++;
+        }
+        Keyframe to = keyframes.get(next);
+        Keyframe from = keyframes.get(Math.max(0, next - 1));
+        double span = to.time - from.time;
+        double alpha = (span > 0) ? (time - from.time) / span : 1.0;
+
+        camera.getPosition().interpolate(from.position, to.position, alpha);
+        camera.getViewingDirection().interpolate(from.direction, to.direction, alpha);
+        camera.getViewingDirection().normalize();
+    }
+
+    private static class Keyframe {
+        private final double time;
+        private final Vector3d position;
+        private final Vector3d direction;
+
+        public Keyframe(double time, Vector3d position, Vector3d direction) {
+            this.time = time;
+            this.position = position;
+            this.direction = direction;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import static org.lwjgl.opengl.GL11.glDisable;
  * @author Benjamin Glatzel <benjamin.glatzel@me.com>
  */
 public class UIText extends UIDisplayElement {
+    private static final int RENDER_ACTIVITY = PerformanceMonitor.registerActivity("Render UIText");
 
     protected String _text = "";
 
@@ -65,7 +66,7 @@ public class UIText extends UIDisplayElement {
     }
 
     public void render() {
-        PerformanceMonitor.startActivity("Render UIText");
+        PerformanceMonitor.startActivity(RENDER_ACTIVITY);
 
         ShaderManager.getInstance().enableDefaultTextured();
 
@@ -16,15 +16,20 @@
 package org.terasology.rendering.gui.menus;
 
 import gnu.trove.map.TObjectDoubleMap;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
 import gnu.trove.procedure.TObjectDoubleProcedure;
 import gnu.trove.procedure.TObjectIntProcedure;
+import org.terasology.performanceMonitor.LatencyPercentiles;
 import org.terasology.performanceMonitor.PerformanceMonitor;
 import org.terasology.rendering.gui.components.UIText;
 import org.terasology.rendering.gui.framework.UIDisplayWindow;
 
 import javax.vecmath.Vector2f;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -107,6 +112,49 @@ public class UIMetrics extends UIDisplayWindow {
                 displayMetrics(PerformanceMonitor.getDecayingSpikes(), lines);
             }
         },
+        Percentiles("Percentiles (p50/p90/p99/max)", true) {
+            @Override
+            public void updateLines(List<UIText> lines) {
+                final Map<String, LatencyPercentiles> percentiles = PerformanceMonitor.getPercentiles();
+                List<String> activities = new ArrayList<String>(percentiles.keySet());
+                Collections.sort(activities, new Comparator<String>() {
+                    public int compare(String o1, String o2) {
+                        return Double.compare(percentiles.get(o2).getP99(), percentiles.get(o1).getP99());
+                    }
+                });
+
+                displayPercentiles(lines.get(0), "Frame", PerformanceMonitor.getFramePercentiles());
+                int line = 1;
+                for (String activity : activities) {
+                    if (line >= lines.size()) break;
+                    displayPercentiles(lines.get(line), activity, percentiles.get(activity));
+                    line++;
+                }
+                for (; line < lines.size(); line++) {
+                    lines.get(line).setVisible(false);
+                }
+            }
+        },
+        ThreadMeans("Thread Running Means", true) {
+            @Override
+            public void updateLines(List<UIText> lines) {
+                TObjectDoubleMap<String> metrics = new TObjectDoubleHashMap<String>();
+                for (String thread : PerformanceMonitor.getActivityThreads()) {
+                    addThreadMetrics(thread, PerformanceMonitor.getRunningMean(thread), metrics);
+                }
+                displayMetrics(metrics, lines);
+            }
+        },
+        ThreadSpikes("Thread Spikes", true) {
+            @Override
+            public void updateLines(List<UIText> lines) {
+                TObjectDoubleMap<String> metrics = new TObjectDoubleHashMap<String>();
+                for (String thread : PerformanceMonitor.getActivityThreads()) {
+                    addThreadMetrics(thread, PerformanceMonitor.getDecayingSpikes(thread), metrics);
+                }
+                displayMetrics(metrics, lines);
+            }
+        },
         RunningThreads("Running Threads", true) {
             @Override
             public void updateLines(List<UIText> lines) {
@@ -147,6 +195,12 @@ public class UIMetrics extends UIDisplayWindow {
                 case RunningMean:
                     return DecayingSpikes;
                 case DecayingSpikes:
+                    return Percentiles;
+                case Percentiles:
+                    return ThreadMeans;
+                case ThreadMeans:
+                    return ThreadSpikes;
+                case ThreadSpikes:
                     return RunningThreads;
                 default:
                     return Off;
@@ -168,6 +222,20 @@ public class UIMetrics extends UIDisplayWindow {
             }
         }
 
+        private static void displayPercentiles(UIText line, String activity, LatencyPercentiles percentiles) {
+            line.setVisible(true);
+            line.setText(String.format("%s: %.2f / %.2f / %.2f / %.2fms", activity, percentiles.getP50(), percentiles.getP90(), percentiles.getP99(), percentiles.getMax()));
+        }
+
+        private static void addThreadMetrics(final String thread, TObjectDoubleMap<String> threadMetrics, final TObjectDoubleMap<String> result) {
+            threadMetrics.forEachEntry(new TObjectDoubleProcedure<String>() {
+                public boolean execute(String s, double v) {
+                    result.put(thread + ": " + s, v);
+                    return true;
+                }
+            });
+        }
+
         private static void sortMetrics(TObjectDoubleMap<String> metrics, final List<String> activities, final List<Double> values) {
             metrics.forEachEntry(new TObjectDoubleProcedure<String>() {
                 public boolean execute(String s, double v) {
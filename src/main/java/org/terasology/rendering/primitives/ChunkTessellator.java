@@ -43,6 +43,10 @@ public final class ChunkTessellator {
 
     private static final int FLOAT_BYTES = 4;
     private static final int INT_BYTES = 4;
+    private static final int GENERATE_MESH_ACTIVITY = PerformanceMonitor.registerActivity("GenerateMesh");
+    private static final int OPTIMIZE_BUFFERS_ACTIVITY = PerformanceMonitor.registerActivity("OptimizeBuffers");
+    private static final int CALC_LIGHTING_ACTIVITY = PerformanceMonitor.registerActivity("calcLighting");
+    private static final int GATHER_LIGHT_INFO_ACTIVITY = PerformanceMonitor.registerActivity("gatherLightInfo");
     private static int _statVertexArrayUpdateCount = 0;
 
     private SpoutWorld biomeProvider;
@@ -52,7 +56,7 @@ public final class ChunkTessellator {
     }
 
     public ChunkMesh generateMesh(WorldView worldView, Vector3i chunkPos, int meshHeight, int verticalOffset) {
-        PerformanceMonitor.startActivity("GenerateMesh");
+        PerformanceMonitor.startActivity(GENERATE_MESH_ACTIVITY);
         ChunkMesh mesh = new ChunkMesh();
 
         Vector3i chunkOffset = new Vector3i(chunkPos.x * Chunk.BLOCKS.SIZE, chunkPos.y * Chunk.BLOCKS.SIZE, chunkPos.z * Chunk.BLOCKS.SIZE);
@@ -81,7 +85,7 @@ public final class ChunkTessellator {
     }
 
     private void generateOptimizedBuffers(WorldView worldView, ChunkMesh mesh) {
-        PerformanceMonitor.startActivity("OptimizeBuffers");
+        PerformanceMonitor.startActivity(OPTIMIZE_BUFFERS_ACTIVITY);
 
         generateBulletBuffers(mesh);
 
@@ -153,12 +157,12 @@ public final class ChunkTessellator {
     }
 
     private void calcLightingValuesForVertexPos(WorldView worldView, Vector3f vertexPos, float[] output) {
-        PerformanceMonitor.startActivity("calcLighting");
+        PerformanceMonitor.startActivity(CALC_LIGHTING_ACTIVITY);
         float[] lights = new float[8];
         float[] blockLights = new float[8];
         TeraBlock[] blocks = new TeraBlock[4];
 
-        PerformanceMonitor.startActivity("gatherLightInfo");
+        PerformanceMonitor.startActivity(GATHER_LIGHT_INFO_ACTIVITY);
         blocks[0] = worldView.getBlock((vertexPos.x + 0.1f), (vertexPos.y + 0.8f), (vertexPos.z + 0.1f));
         blocks[1] = worldView.getBlock((vertexPos.x + 0.1f), (vertexPos.y + 0.8f), (vertexPos.z - 0.1f));
         blocks[2] = worldView.getBlock((vertexPos.x - 0.1f), (vertexPos.y + 0.8f), (vertexPos.z - 0.1f));
@@ -73,13 +73,13 @@ import org.terasology.logic.manager.Config;
 import org.terasology.logic.manager.PathManager;
 import org.terasology.logic.manager.PostProcessingRenderer;
 import org.terasology.logic.manager.ShaderManager;
-import org.terasology.logic.world.ChunkStore;
 import org.terasology.logic.world.WorldProvider;
 import org.terasology.math.Rect2i;
 import org.terasology.math.TeraMath;
 import org.terasology.model.structures.AABB;
 import org.terasology.performanceMonitor.PerformanceMonitor;
 import org.terasology.rendering.cameras.Camera;
+import org.terasology.rendering.cameras.CameraPath;
 import org.terasology.rendering.cameras.DefaultCamera;
 import org.terasology.rendering.interfaces.IGameObject;
 import org.terasology.rendering.physics.BulletPhysicsRenderer;
@@ -109,7 +109,6 @@ public final class WorldRenderer implements IGameObject {
     
     /* WORLD PROVIDER */
     private final SpoutWorld world;
-    private ChunkStore chunkStore;
     private Logger _logger = Logger.getLogger(getClass().getName());
 
     /* PLAYER */
@@ -159,6 +158,12 @@ public final class WorldRenderer implements IGameObject {
     private int _statDirtyChunks = 0, _statVisibleChunks = 0, _statIgnoredPhases = 0;
     private int _statChunkMeshEmpty, _statChunkNotReady, _statRenderedTriangles;
 
+    /* CAMERA RECORDING */
+    private static final double CAMERA_KEYFRAME_INTERVAL = 0.25;
+    private CameraPath _cameraRecording;
+    private long _cameraRecordingStart;
+    private double _lastCameraKeyframe;
+
     /* OTHER SETTINGS */
     private boolean _wireframe;
 
@@ -231,7 +236,9 @@ public final class WorldRenderer implements IGameObject {
                     for (int x = r.minX(); x < r.maxX(); ++x) {
                         for (int y = r.minY(); y < r.maxY(); ++y) {
                             SpoutChunk c = world.getChunk(x, 0, y);
-                            _chunksInProximity.remove(c);
+                            if (_chunksInProximity.remove(c)) {
+                                engine.getTeraSpout().unloadChunk(c);
+                            }
                         }
                     }
                 }
@@ -622,6 +629,7 @@ public final class WorldRenderer implements IGameObject {
 
         if (_activeCamera != null) {
             _activeCamera.update(delta);
+            recordCameraKeyframe();
         }
         
         PerformanceMonitor.startActivity("Physics Renderer");
@@ -629,6 +637,39 @@ public final class WorldRenderer implements IGameObject {
         PerformanceMonitor.endActivity();
     }
 
+    /**
+     * Starts recording the flight of the active camera, to be replayed by benchmarks.
+     */
+    public void startCameraRecording() {
+        _cameraRecording = new CameraPath();
+        _cameraRecordingStart = System.nanoTime();
+        _lastCameraKeyframe = -CAMERA_KEYFRAME_INTERVAL;
+    }
+
+    /**
+     * @return The recorded camera path, or null if no recording was in progress
+     */
+    public CameraPath stopCameraRecording() {
+        CameraPath result = _cameraRecording;
+        _cameraRecording = null;
+        return result;
+    }
+
+    public boolean isRecordingCamera() {
+        return _cameraRecording != null;
+    }
+
+    private void recordCameraKeyframe() {
+        if (_cameraRecording == null) {
+            return;
+        }
+        double time = (System.nanoTime() - _cameraRecordingStart) / 1000000000.0;
+        if (time - _lastCameraKeyframe >= CAMERA_KEYFRAME_INTERVAL) {
+            _cameraRecording.addKeyframe(time, _activeCamera.getPosition(), _activeCamera.getViewingDirection());
+            _lastCameraKeyframe = time;
+        }
+    }
+
     private boolean isUnderwater() {
         Vector3d cameraPos = CoreRegistry.get(WorldRenderer.class).getActiveCamera().getPosition();
         TeraBlock block = CoreRegistry.get(WorldProvider.class).getBlock(new Vector3f(cameraPos));
@@ -708,6 +749,9 @@ public final class WorldRenderer implements IGameObject {
     public void dispose() {
         AudioManager.getInstance().stopAllSounds();
         // TODO save world if it isn't saved already
+        for (SpoutChunk c : _chunksInProximity) {
+            engine.getTeraSpout().unloadChunk(c);
+        }
     }
 
     public void printScreen() {
@@ -810,6 +854,20 @@ public final class WorldRenderer implements IGameObject {
         return _bulletRenderer;
     }
 
+    /**
+     * @return The number of triangles rendered in the last frame
+     */
+    public int getStatRenderedTriangles() {
+        return _statRenderedTriangles;
+    }
+
+    /**
+     * @return The number of chunks visible in the last frame
+     */
+    public int getStatVisibleChunks() {
+        return _statVisibleChunks;
+    }
+
     public Camera getActiveCamera() {
         return _activeCamera;
     }
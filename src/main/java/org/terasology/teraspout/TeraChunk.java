@@ -197,6 +197,58 @@ public class TeraChunk {
         return states.get(x, y, z);
     }
 
+    /**
+     * @return A hash of the chunk's blocks, identifying the block content its light and states were computed from
+     */
+    public long computeBlockHash() {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int x = 0; x < Chunk.BLOCKS.SIZE; x++) {
+            for (int y = 0; y < Chunk.BLOCKS.SIZE; y++) {
+                for (int z = 0; z < Chunk.BLOCKS.SIZE; z++) {
+                    short id = getBlockId(x, y, z);
+                    hash = (hash ^ (id & 0xFF)) * 0x100000001b3L;
+                    hash = (hash ^ ((id >> 8) & 0xFF)) * 0x100000001b3L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return A copy of the packed sunlight, light and states arrays, one after another
+     */
+    public byte[] getLightingData() {
+        int size = sunlight.sizePacked();
+        byte[] data = new byte[size * 3];
+        TeraSmartArray[] arrays = {sunlight, light, states};
+        for (int i = 0; i < arrays.length; i++) {
+            for (int j = 0; j < size; j++) {
+                data[i * size + j] = arrays[i].getRawByte(j);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Replaces the sunlight, light and states arrays with data from {@link #getLightingData()}
+     *
+     * @param data
+     */
+    public void setLightingData(byte[] data) {
+        int size = sunlight.sizePacked();
+        if (data.length != size * 3) {
+            throw new IllegalArgumentException("Expected " + size * 3 + " bytes of lighting data, got " + data.length);
+        }
+        TeraSmartArray[] arrays = {sunlight, light, states};
+        for (int i = 0; i < arrays.length; i++) {
+            for (int j = 0; j < size; j++) {
+                arrays[i].setRawByte(j, data[i * size + j]);
+            }
+        }
+        setDirty(true);
+    }
+
     public Vector3i getChunkWorldPos() {
         return new Vector3i(getChunkWorldPosX(), getChunkWorldPosY(), getChunkWorldPosZ());
     }
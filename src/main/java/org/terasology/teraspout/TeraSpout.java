@@ -3,13 +3,17 @@ package org.terasology.teraspout;
 import gnu.trove.map.TShortObjectMap;
 import gnu.trove.map.hash.TShortObjectHashMap;
 
-import java.util.WeakHashMap;
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.ConcurrentMap;
 
 import org.spout.api.Spout;
 import org.spout.api.material.BlockMaterial;
 import org.spout.api.material.MaterialRegistry;
 import org.spout.engine.world.SpoutChunk;
+import org.terasology.game.CoreRegistry;
 import org.terasology.game.TerasologyEngine;
+import org.terasology.logic.world.ChunkStore;
 
 /**
  * TeraSpout. Links server-side objects with client concepts.
@@ -22,7 +26,8 @@ import org.terasology.game.TerasologyEngine;
 public class TeraSpout {
 	private static TeraSpout _instance;
 
-	private WeakHashMap<SpoutChunk, TeraChunk> chunks = new WeakHashMap<SpoutChunk, TeraChunk>();
+	// A TeraChunk holds its SpoutChunk, so chunks stay here until they are unloaded
+	private ConcurrentMap<SpoutChunk, TeraChunk> chunks = Maps.newConcurrentMap();
 	private TeraBlock[] blocks = new TeraBlock[1 << 16]; // store the blocks by
 															// id
 
@@ -47,12 +52,40 @@ public class TeraSpout {
 		TeraChunk t = chunks.get(chunk);
 		if (t == null) {
 			t = loadChunk(chunk);
+			TeraChunk existing = chunks.putIfAbsent(chunk, t);
+			if (existing != null) {
+				t = existing;
+			}
 		}
 		return t;
 	}
 
+	/**
+	 * Releases the TeraChunk of a SpoutChunk that is no longer used. Its light
+	 * is kept in the chunk store, if one is registered, and its meshes are
+	 * disposed.
+	 * 
+	 * @param chunk
+	 */
+	public void unloadChunk(SpoutChunk chunk) {
+		TeraChunk t = chunks.remove(chunk);
+		if (t == null) {
+			return;
+		}
+		ChunkStore store = CoreRegistry.get(ChunkStore.class);
+		if (store != null) {
+			store.put(t);
+		}
+		t.dispose();
+	}
+
 	private TeraChunk loadChunk(SpoutChunk chunk) {
 		TeraChunk tc = new TeraChunk(chunk);
+		// Reuse the stored light of the chunk if its blocks have not changed
+		ChunkStore store = CoreRegistry.get(ChunkStore.class);
+		if (store != null) {
+			store.restore(tc);
+		}
 		return tc;
 	}
 